@@ -5,6 +5,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import edu.gu.exceptions.AccountInactiveException;
 import edu.gu.exceptions.InsufficientFundsException;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+
 /**
  * Represents a bank account with basic operations such as deposit, withdrawal, and transfer.
  */
@@ -24,8 +28,19 @@ public class Account {
     // Unique identifier of the account owner
     private final String ownerId;
 
-    // Current balance of the account
-    private double balance;
+    // Handle used for lock-free atomic updates of the balance field
+    private static final VarHandle BALANCE;
+
+    static {
+        try {
+            BALANCE = MethodHandles.lookup().findVarHandle(Account.class, "balance", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Current balance of the account in minor units (cents), only updated atomically through BALANCE
+    private volatile long balance;
 
     /**
      * Constructs an Account object.
@@ -35,7 +50,7 @@ public class Account {
      * @param accountName   Name of the account.
      * @param accountType   Type of the account (e.g., Savings, Checking).
      * @param ownerId       Unique identifier of the account owner.
-     * @param balance       Current balance of the account.
+     * @param balance       Current balance of the account as a decimal amount.
      */
     @JsonCreator
     public Account(
@@ -44,7 +59,28 @@ public class Account {
             @JsonProperty("accountName") String accountName,
             @JsonProperty("accountType") AccountType accountType,
             @JsonProperty("ownerId") String ownerId,
-            @JsonProperty("balance") double balance
+            @JsonProperty("balance") BigDecimal balance
+    ) {
+        this(id, accountNumber, accountName, accountType, ownerId, balance == null ? 0 : Money.fromDecimal(balance));
+    }
+
+    /**
+     * Constructs an Account object.
+     *
+     * @param id            Unique identifier for the account.
+     * @param accountNumber Account number associated with the account.
+     * @param accountName   Name of the account.
+     * @param accountType   Type of the account (e.g., Savings, Checking).
+     * @param ownerId       Unique identifier of the account owner.
+     * @param balance       Current balance of the account in minor units.
+     */
+    public Account(
+            String id,
+            String accountNumber,
+            String accountName,
+            AccountType accountType,
+            String ownerId,
+            long balance
     ) {
         this.id = id;
         this.accountNumber = accountNumber;
@@ -85,21 +121,12 @@ public class Account {
     /**
      * Retrieves the current balance of the account.
      *
-     * @return The current balance.
+     * @return The current balance in minor units.
      */
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    /**
-     * Deposits the specified amount into the account.
-     *
-     * @param amount The amount to be deposited.
-     * @return The updated balance after the deposit.
-     * @throws AccountInactiveException If the account is inactive.
-     */
-
-
     /**
      * Retrieves the name of the account.
      *
@@ -118,46 +145,65 @@ public class Account {
         return ownerId;
     }
 
-    public double deposit(double amount) throws AccountInactiveException {
+    /**
+     * Deposits the specified amount into the account without taking any lock.
+     *
+     * @param amount The amount to be deposited in minor units.
+     * @return The updated balance after the deposit.
+     * @throws AccountInactiveException If the account is inactive.
+     */
+    public long deposit(long amount) throws AccountInactiveException {
         if (amount <= 0) {
             throw new IllegalArgumentException("Deposit amount must be greater than 0");
         }
 
-        this.balance += amount;
-        return this.balance;
+        return (long) BALANCE.getAndAdd(this, amount) + amount;
     }
 
     /**
-     * Withdraws the specified amount from the account.
+     * Overwrites the balance with the one recorded in a snapshot, only used while the bank is being restored.
      *
-     * @param amount The amount to be withdrawn.
+     * @param balance The restored balance in minor units.
+     */
+    void restoreBalance(long balance) {
+        BALANCE.setVolatile(this, balance);
+    }
+
+    /**
+     * Withdraws the specified amount from the account without taking any lock.
+     * The balance is re-read and compared-and-set until the update wins, so a concurrent
+     * withdrawal can never drive the balance below zero.
+     *
+     * @param amount The amount to be withdrawn in minor units.
      * @return The updated balance after the withdrawal.
      * @throws InsufficientFundsException If there are insufficient funds in the account.
      * @throws AccountInactiveException   If the account is inactive.
      */
-    public double withdraw(double amount) throws InsufficientFundsException, AccountInactiveException {
+    public long withdraw(long amount) throws InsufficientFundsException, AccountInactiveException {
         if (amount <= 0) {
             throw new IllegalArgumentException("Withdrawal amount must be greater than 0");
         }
 
-        if (amount > balance) {
-            throw new InsufficientFundsException("Insufficient funds");
-        }
-
-        this.balance -= amount;
-        return this.balance;
+        long current;
+        do {
+            current = this.balance;
+            if (amount > current) {
+                throw new InsufficientFundsException("Insufficient funds");
+            }
+        } while (!BALANCE.weakCompareAndSet(this, current, current - amount));
+        return current - amount;
     }
 
     /**
      * Transfers the specified amount from this account to the recipient account.
      *
      * @param recipient The recipient account.
-     * @param amount    The amount to be transferred.
+     * @param amount    The amount to be transferred in minor units.
      * @return The updated balance after the transfer.
      * @throws InsufficientFundsException If there are insufficient funds in the account.
      * @throws AccountInactiveException   If either account is inactive.
      */
-    public double transfer(Account recipient, double amount)
+    public long transfer(Account recipient, long amount)
             throws InsufficientFundsException, AccountInactiveException {
         if (amount <= 0) {
             throw new IllegalArgumentException("Transfer amount must be greater than 0");
@@ -167,10 +213,11 @@ public class Account {
             throw new InsufficientFundsException("Insufficient funds");
         }
 
+        // Withdraw first so a concurrent withdrawal can never leave money created out of thin air
+        long balanceAfterTransfer = this.withdraw(amount);
         recipient.deposit(amount);
-        this.withdraw(amount);
 
-        return this.balance;
+        return balanceAfterTransfer;
     }
 
     /**
@@ -0,0 +1,239 @@
+package edu.gu;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * History of one account: the history log addresses of its transactions in record order, with a parallel
+ * column of their timestamps that time ranges are binary searched in.
+ * <p>
+ * The most recent entries are held on the heap. Every time they fill a chunk of
+ * {@link TransactionArchive#HISTORY_CHUNK_ENTRIES} entries the chunk is moved to the {@link TransactionArchive},
+ * so only the number of each archived chunk stays on the heap. Positions address both tiers as one sequence.
+ * <p>
+ * Transactions recorded concurrently can reach the history in a slightly different order than their clocks were
+ * read, so the indexed timestamps are clamped to never go backwards and stay binary searchable. The largest
+ * amount any timestamp was clamped by is kept, and a range query binary searches the clamped column, then
+ * checks the recorded timestamps, read through the history log, of the entries within that lag of either end
+ * of the range. A transaction is therefore found by its recorded timestamp, and pages stay in record order.
+ * Not thread-safe, callers guard it with the account's lock.
+ */
+final class AccountHistory {
+    // Archive the full chunks of the history are moved to
+    private final TransactionArchive archive;
+
+    // Numbers of the archived chunks, holding the oldest entries in record order
+    private final LongList chunks = new LongList();
+
+    // History log addresses of the transactions after the archived chunks, in record order
+    private final LongList addresses = new LongList();
+
+    // Timestamps of the transactions after the archived chunks in milliseconds since the Unix epoch, each clamped
+    // to the latest timestamp before it so the column is non-decreasing
+    private final LongList timestamps = new LongList();
+
+    // Latest timestamp so far
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    // Largest amount a timestamp was clamped by, the entries within it of a range end may lie on either side
+    private long maxLagMillis;
+
+    /**
+     * Constructs an empty AccountHistory.
+     *
+     * @param archive The archive full chunks of the history are moved to.
+     */
+    AccountHistory(TransactionArchive archive) {
+        this.archive = archive;
+    }
+
+    /**
+     * Appends a transaction to the history.
+     *
+     * @param address         The address of the transaction in the history log.
+     * @param timestampMillis The timestamp of the transaction.
+     */
+    void add(long address, long timestampMillis) {
+        if (timestampMillis < lastTimestamp) {
+            maxLagMillis = Math.max(maxLagMillis, lastTimestamp - timestampMillis);
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestampMillis);
+        addresses.add(address);
+        timestamps.add(lastTimestamp);
+        if (addresses.size() == TransactionArchive.HISTORY_CHUNK_ENTRIES) {
+            chunks.add(archive.storeHistoryChunk(addresses.toArray(), timestamps.toArray()));
+            addresses.clear();
+            timestamps.clear();
+        }
+    }
+
+    /**
+     * Retrieves the number of transactions in the history.
+     *
+     * @return The number of transactions.
+     */
+    int size() {
+        return archivedSize() + addresses.size();
+    }
+
+    /**
+     * Copies the addresses of every transaction.
+     *
+     * @return The addresses in record order.
+     */
+    long[] addresses() {
+        return addresses(0, size());
+    }
+
+    /**
+     * Copies the addresses of the transactions at the given positions of the history.
+     *
+     * @param from The position of the first transaction, inclusive.
+     * @param to   The position of the last transaction, exclusive, clamped to the size of the history.
+     * @return The addresses in record order, empty if the history ends before from.
+     */
+    long[] addresses(int from, int to) {
+        int end = Math.min(to, size());
+        if (from >= end) {
+            return new long[0];
+        }
+        long[] copy = new long[end - from];
+        for (int position = from; position < end; position++) {
+            copy[position - from] = addressAt(position);
+        }
+        return copy;
+    }
+
+    /**
+     * Copies the addresses of a page of the transactions within a time range.
+     *
+     * @param fromMillis  Start of the range, inclusive.
+     * @param toMillis    End of the range, exclusive.
+     * @param offset      Number of transactions of the range to skip.
+     * @param limit       Maximum number of transactions to return.
+     * @param timestampOf Reads the recorded timestamp of the transaction at a history log address.
+     * @return The addresses in record order.
+     */
+    long[] addresses(long fromMillis, long toMillis, int offset, int limit, LongUnaryOperator timestampOf) {
+        if (fromMillis >= toMillis || limit == 0) {
+            return new long[0];
+        }
+        int[] zones = zones(fromMillis, toMillis);
+        LongList page = new LongList();
+        int skip = collect(zones[0], zones[1], fromMillis, toMillis, offset, limit, page, timestampOf);
+
+        // Every entry between the lagging zones is in the range
+        int start = (int) Math.min((long) zones[1] + skip, zones[2]);
+        skip -= start - zones[1];
+        int end = (int) Math.min((long) start + (limit - page.size()), zones[2]);
+        for (int position = start; position < end; position++) {
+            page.add(addressAt(position));
+        }
+
+        collect(zones[2], zones[3], fromMillis, toMillis, skip, limit, page, timestampOf);
+        return page.toArray();
+    }
+
+    /**
+     * Counts the transactions within a time range.
+     *
+     * @param fromMillis  Start of the range, inclusive.
+     * @param toMillis    End of the range, exclusive.
+     * @param timestampOf Reads the recorded timestamp of the transaction at a history log address.
+     * @return The number of transactions.
+     */
+    int count(long fromMillis, long toMillis, LongUnaryOperator timestampOf) {
+        if (fromMillis >= toMillis) {
+            return 0;
+        }
+        int[] zones = zones(fromMillis, toMillis);
+        return countIn(zones[0], zones[1], fromMillis, toMillis, timestampOf) + zones[2] - zones[1]
+                + countIn(zones[2], zones[3], fromMillis, toMillis, timestampOf);
+    }
+
+    // Split the candidate positions of a time range into {start, exact start, exact end, end}: the entries
+    // between the exact bounds are in the range, those before and after them must be checked one by one.
+    // Without any lag both checked zones are empty.
+    private int[] zones(long fromMillis, long toMillis) {
+        int start = lowerBound(fromMillis);
+        int end = lowerBound(saturatedAdd(toMillis, maxLagMillis));
+        int exactStart = lowerBound(saturatedAdd(fromMillis, maxLagMillis));
+        int exactEnd = lowerBound(toMillis);
+        if (exactStart >= exactEnd) {
+            // The range is shorter than the lag, every candidate is checked
+            exactStart = end;
+            exactEnd = end;
+        }
+        return new int[]{start, exactStart, exactEnd, end};
+    }
+
+    // Add the addresses of the positions whose recorded timestamp is in the range to the page, after skipping
+    // the given number of them, until the page holds limit addresses, and return the number left to skip
+    private int collect(int from, int to, long fromMillis, long toMillis, int skip, int limit, LongList page,
+                        LongUnaryOperator timestampOf) {
+        for (int position = from; position < to && page.size() < limit; position++) {
+            long address = addressAt(position);
+            long timestamp = timestampOf.applyAsLong(address);
+            if (timestamp >= fromMillis && timestamp < toMillis) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    page.add(address);
+                }
+            }
+        }
+        return skip;
+    }
+
+    // Count the positions whose recorded timestamp is in the range
+    private int countIn(int from, int to, long fromMillis, long toMillis, LongUnaryOperator timestampOf) {
+        int count = 0;
+        for (int position = from; position < to; position++) {
+            long timestamp = timestampOf.applyAsLong(addressAt(position));
+            if (timestamp >= fromMillis && timestamp < toMillis) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static long saturatedAdd(long millis, long lagMillis) {
+        return millis > Long.MAX_VALUE - lagMillis ? Long.MAX_VALUE : millis + lagMillis;
+    }
+
+    // Number of transactions in the archived chunks
+    private int archivedSize() {
+        return chunks.size() * TransactionArchive.HISTORY_CHUNK_ENTRIES;
+    }
+
+    // Address of the transaction at a position of the history
+    private long addressAt(int position) {
+        int archived = archivedSize();
+        if (position >= archived) {
+            return addresses.get(position - archived);
+        }
+        return archive.historyAddress(chunks.get(position / TransactionArchive.HISTORY_CHUNK_ENTRIES),
+                position % TransactionArchive.HISTORY_CHUNK_ENTRIES);
+    }
+
+    // Position of the first transaction whose timestamp is not less than the key, searching the archived
+    // chunks only when the key is older than the entries on the heap
+    private int lowerBound(long key) {
+        int archived = archivedSize();
+        if (archived == 0 || (addresses.size() > 0 && key > timestamps.get(0))) {
+            return archived + timestamps.lowerBound(key);
+        }
+        int low = 0;
+        int high = archived;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long timestamp = archive.historyTimestamp(chunks.get(middle / TransactionArchive.HISTORY_CHUNK_ENTRIES),
+                    middle % TransactionArchive.HISTORY_CHUNK_ENTRIES);
+            if (timestamp < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == archived ? archived + timestamps.lowerBound(key) : low;
+    }
+}
@@ -0,0 +1,158 @@
+package edu.gu;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped locks guarding balance mutations of accounts.
+ * Every account is mapped to one lock of a fixed-size stripe table by hashing its unique identifier,
+ * so the number of locks stays constant however many accounts the bank holds.
+ */
+public class AccountLocks {
+    // Number of stripes used when none is specified
+    static final int DEFAULT_STRIPES = 256;
+
+    // Table of locks, its length is always a power of two
+    private final ReentrantLock[] stripes;
+
+    // Mask applied to a spread hash to select a stripe
+    private final int mask;
+
+    /**
+     * Constructs an AccountLocks table with the default number of stripes.
+     */
+    public AccountLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Constructs an AccountLocks table.
+     *
+     * @param stripes The requested number of stripes, rounded up to the next power of two.
+     */
+    public AccountLocks(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Number of stripes must be greater than 0");
+        }
+        int size = Integer.highestOneBit(stripes);
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Retrieves the stripe index guarding the account with the given identifier.
+     *
+     * @param accountId The unique identifier of the account.
+     * @return The stripe index.
+     */
+    int stripeOf(String accountId) {
+        int hash = accountId.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Acquires the lock guarding a single account.
+     *
+     * @param accountId The unique identifier of the account.
+     */
+    public void lock(String accountId) {
+        stripes[stripeOf(accountId)].lock();
+    }
+
+    /**
+     * Releases the lock guarding a single account.
+     *
+     * @param accountId The unique identifier of the account.
+     */
+    public void unlock(String accountId) {
+        stripes[stripeOf(accountId)].unlock();
+    }
+
+    /**
+     * Acquires the locks guarding two accounts.
+     * Stripes are always taken in ascending index order, so two transfers in opposite
+     * directions between the same accounts can never deadlock.
+     *
+     * @param firstAccountId  The unique identifier of the first account.
+     * @param secondAccountId The unique identifier of the second account.
+     */
+    public void lockBoth(String firstAccountId, String secondAccountId) {
+        int first = stripeOf(firstAccountId);
+        int second = stripeOf(secondAccountId);
+        if (first == second) {
+            stripes[first].lock();
+        } else {
+            stripes[Math.min(first, second)].lock();
+            stripes[Math.max(first, second)].lock();
+        }
+    }
+
+    /**
+     * Retrieves the distinct stripes guarding a set of accounts, in the ascending order they must be locked in.
+     *
+     * @param accountIds The unique identifiers of the accounts.
+     * @return The sorted, distinct stripe indexes.
+     */
+    int[] stripesOf(Collection<String> accountIds) {
+        int[] indexes = new int[accountIds.size()];
+        int count = 0;
+        for (String accountId : accountIds) {
+            indexes[count++] = stripeOf(accountId);
+        }
+        Arrays.sort(indexes);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || indexes[distinct - 1] != indexes[i]) {
+                indexes[distinct++] = indexes[i];
+            }
+        }
+        return Arrays.copyOf(indexes, distinct);
+    }
+
+    /**
+     * Acquires the locks of the given stripes, which must be sorted as returned by {@link #stripesOf(Collection)},
+     * so batches locking many accounts cannot deadlock with each other or with single transfers.
+     *
+     * @param stripeIndexes The sorted, distinct stripe indexes.
+     */
+    void lockAll(int[] stripeIndexes) {
+        for (int stripe : stripeIndexes) {
+            stripes[stripe].lock();
+        }
+    }
+
+    /**
+     * Releases the locks of the given stripes, in the reverse order of {@link #lockAll(int[])}.
+     *
+     * @param stripeIndexes The sorted, distinct stripe indexes.
+     */
+    void unlockAll(int[] stripeIndexes) {
+        for (int i = stripeIndexes.length - 1; i >= 0; i--) {
+            stripes[stripeIndexes[i]].unlock();
+        }
+    }
+
+    /**
+     * Releases the locks guarding two accounts, in the reverse order of {@link #lockBoth(String, String)}.
+     *
+     * @param firstAccountId  The unique identifier of the first account.
+     * @param secondAccountId The unique identifier of the second account.
+     */
+    public void unlockBoth(String firstAccountId, String secondAccountId) {
+        int first = stripeOf(firstAccountId);
+        int second = stripeOf(secondAccountId);
+        if (first == second) {
+            stripes[first].unlock();
+        } else {
+            stripes[Math.max(first, second)].unlock();
+            stripes[Math.min(first, second)].unlock();
+        }
+    }
+}
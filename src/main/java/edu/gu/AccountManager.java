@@ -4,8 +4,11 @@ import edu.gu.exceptions.AccountInactiveException;
 import edu.gu.exceptions.InsufficientFundsException;
 import edu.gu.exceptions.InvalidAccountNumberException;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages a collection of bank accounts and provides operations to create, retrieve, and manage accounts.
@@ -14,13 +17,36 @@ public class AccountManager implements IAccountManager {
     // List to store the accounts managed by this AccountManager
     private final List<Account> accounts;
 
+    // Index of the managed accounts keyed by their unique identifier
+    private final Map<String, Account> accountsById = new ConcurrentHashMap<>();
+
+    // Index of the managed accounts keyed by their account number
+    private final Map<String, Account> accountsByNumber = new ConcurrentHashMap<>();
+
+    // Allocator of the account numbers of new accounts
+    private final AccountNumberAllocator accountNumbers = new AccountNumberAllocator();
+
     /**
      * Constructs an AccountManager with a list of existing accounts.
      *
      * @param accounts The list of accounts to be managed.
      */
     AccountManager(List<Account> accounts) {
-        this.accounts = accounts;
+        this.accounts = Collections.synchronizedList(accounts);
+        for (Account account : accounts) {
+            index(account);
+        }
+    }
+
+    /**
+     * Adds the account to the id and account number indexes.
+     *
+     * @param account The account to be indexed.
+     */
+    private void index(Account account) {
+        accountsById.put(account.getId(), account);
+        accountsByNumber.put(account.getAccountNumber(), account);
+        accountNumbers.observe(account.getAccountNumber());
     }
 
     /**
@@ -32,16 +58,86 @@ public class AccountManager implements IAccountManager {
      * @return The newly created account.
      */
     public Account createAccount(String accountName, String ownerId, AccountType accountType) {
-        Account newAccount = new Account(
-                UUID.randomUUID().toString(),
-                ((long) (System.nanoTime() * (Math.random() * 1000)) + "").substring(0, 9), // Generate a unique 9 digits Account Number
-                accountName,
-                accountType,
-                ownerId,
-                0
-        );
-        accounts.add(newAccount);
-        return newAccount;
+        String id = UUID.randomUUID().toString();
+        for (int attempt = 0; ; attempt++) {
+            Account newAccount = new Account(
+                    id,
+                    accountNumbers.next(), // Allocate a unique 9 digits Account Number
+                    accountName,
+                    accountType,
+                    ownerId,
+                    0
+            );
+            // The number may belong to an account restored from a previous run or imported
+            if (accountsByNumber.putIfAbsent(newAccount.getAccountNumber(), newAccount) == null) {
+                accountsById.put(id, newAccount);
+                accounts.add(newAccount);
+                return newAccount;
+            }
+            accountNumbers.collided(attempt);
+        }
+    }
+
+    /**
+     * Adds an account loaded from a snapshot or restored from the transaction journal,
+     * unless an account with the same identifier exists.
+     *
+     * @param account The loaded or restored account.
+     * @return True if the account was added; false if it was already managed.
+     * @throws IllegalStateException If another account holds the account number.
+     */
+    boolean restoreAccount(Account account) {
+        if (accountsById.putIfAbsent(account.getId(), account) != null) {
+            return false;
+        }
+        Account holder = accountsByNumber.putIfAbsent(account.getAccountNumber(), account);
+        if (holder != null) {
+            // Release the identifier claimed above, lookups by number keep reaching the account holding it
+            accountsById.remove(account.getId(), account);
+            throw new IllegalStateException(String.format("Account number '%s' of account %s is already held by account %s",
+                    account.getAccountNumber(), account.getId(), holder.getId()));
+        }
+        accountNumbers.observe(account.getAccountNumber());
+        accounts.add(account);
+        return true;
+    }
+
+    /**
+     * Claims the identifier and account number of a bulk-imported account in the indexes, or neither of them.
+     * The batch is added to the managed accounts list afterwards with {@link #addImportedAccounts(List)}.
+     *
+     * @param account The imported account.
+     * @return Null if the account was claimed; otherwise the reason it was rejected.
+     */
+    String importAccount(Account account) {
+        if (accountsById.putIfAbsent(account.getId(), account) != null) {
+            return "Account id '" + account.getId() + "' is already registered";
+        }
+        if (accountsByNumber.putIfAbsent(account.getAccountNumber(), account) != null) {
+            // Release the identifier claimed above
+            accountsById.remove(account.getId(), account);
+            return "Account number '" + account.getAccountNumber() + "' is already registered";
+        }
+        accountNumbers.observe(account.getAccountNumber());
+        return null;
+    }
+
+    /**
+     * Adds a batch of accounts claimed with {@link #importAccount(Account)} to the managed accounts list.
+     *
+     * @param importedAccounts The claimed accounts.
+     */
+    void addImportedAccounts(List<Account> importedAccounts) {
+        accounts.addAll(importedAccounts);
+    }
+
+    /**
+     * Copies the managed accounts.
+     *
+     * @return The accounts, in the order they were added.
+     */
+    Account[] getAccounts() {
+        return accounts.toArray(new Account[0]);
     }
 
     /**
@@ -51,12 +147,7 @@ public class AccountManager implements IAccountManager {
      * @return The account with the specified identifier or null if not found.
      */
     public Account getAccount(String accountId) {
-        for (Account account : this.accounts) {
-            if (account.getId().equals(accountId)) {
-                return account;
-            }
-        }
-        return null; // Account not found
+        return accountId == null ? null : accountsById.get(accountId);
     }
 
     /**
@@ -67,10 +158,9 @@ public class AccountManager implements IAccountManager {
      * @throws InvalidAccountNumberException If no account is found with the specified account number.
      */
     public Account getAccountByNumber(String accountNumber) throws InvalidAccountNumberException {
-        for (Account account : this.accounts) {
-            if (account.getAccountNumber().equals(accountNumber)) {
-                return account;
-            }
+        Account account = accountNumber == null ? null : accountsByNumber.get(accountNumber);
+        if (account != null) {
+            return account;
         }
         throw new InvalidAccountNumberException(String.format("No Account with #%s was found.", accountNumber));
     }
@@ -79,9 +169,9 @@ public class AccountManager implements IAccountManager {
      * Retrieves the balance of an account based on its unique identifier.
      *
      * @param accountId The unique identifier of the account.
-     * @return The balance of the account or -1 if the account is not found.
+     * @return The balance of the account in minor units or -1 if the account is not found.
      */
-    public double getAccountBalance(String accountId) {
+    public long getAccountBalance(String accountId) {
         Account account = getAccount(accountId);
         return (account != null) ? account.getBalance() : -1; // Return -1 if account not found
     }
@@ -90,12 +180,12 @@ public class AccountManager implements IAccountManager {
      * Deposits the specified amount into the account with the given identifier.
      *
      * @param accountId The unique identifier of the account.
-     * @param amount    The amount to be deposited.
+     * @param amount    The amount to be deposited in minor units.
      * @return The updated balance after the deposit.
      * @throws AccountInactiveException      If the account is inactive.
      * @throws InvalidAccountNumberException If no account is found with the specified account number.
      */
-    public double deposit(String accountId, double amount) throws AccountInactiveException, InvalidAccountNumberException {
+    public long deposit(String accountId, long amount) throws AccountInactiveException, InvalidAccountNumberException {
         Account account = getAccount(accountId);
         if (account == null) {
             throw new InvalidAccountNumberException("Invalid account number: " + accountId);
@@ -107,13 +197,13 @@ public class AccountManager implements IAccountManager {
      * Withdraws the specified amount from the account with the given identifier.
      *
      * @param accountId The unique identifier of the account.
-     * @param amount    The amount to be withdrawn.
+     * @param amount    The amount to be withdrawn in minor units.
      * @return The updated balance after the withdrawal.
      * @throws InsufficientFundsException    If there are insufficient funds in the account.
      * @throws AccountInactiveException      If the account is inactive.
      * @throws InvalidAccountNumberException If no account is found with the specified account number.
      */
-    public double withdraw(String accountId, double amount)
+    public long withdraw(String accountId, long amount)
             throws InsufficientFundsException, AccountInactiveException, InvalidAccountNumberException {
         Account account = getAccount(accountId);
         if (account == null) {
@@ -127,13 +217,13 @@ public class AccountManager implements IAccountManager {
      *
      * @param accountId1 The unique identifier of the source account.
      * @param accountId2 The unique identifier of the destination account.
-     * @param amount     The amount to be transferred.
+     * @param amount     The amount to be transferred in minor units.
      * @return The updated balance of the source account after the transfer.
      * @throws InvalidAccountNumberException If either the source or destination account is not found.
      * @throws InsufficientFundsException    If there are insufficient funds in the source account.
      * @throws AccountInactiveException      If either the source or destination account is inactive.
      */
-    public double transfer(String accountId1, String accountId2, double amount)
+    public long transfer(String accountId1, String accountId2, long amount)
             throws InvalidAccountNumberException, InsufficientFundsException, AccountInactiveException {
         Account sourceAccount = getAccount(accountId1);
         Account destinationAccount = getAccount(accountId2);
@@ -0,0 +1,159 @@
+package edu.gu;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates nine-digit account numbers: an eight-digit sequence number followed by its Luhn check digit.
+ * <p>
+ * Numbers are unique by construction within a run. Each thread reserves a block of sequence numbers from a
+ * shared counter with a single atomic add and then allocates from it without any synchronization.
+ * <p>
+ * Accounts restored from a previous run or imported are reported with {@link #observe(String)}, which moves the
+ * shared counter past their sequence number, so a restarted bank continues after the numbers it allocated before
+ * instead of walking into them. Numbers allocated elsewhere can still collide; the caller reports such
+ * collisions with {@link #collided(int)}, which skips an exponentially growing distance ahead, so a dense range
+ * of taken numbers is passed in a logarithmic number of attempts.
+ */
+public class AccountNumberAllocator {
+    // Number of digits of an account number, the last one being the check digit
+    static final int DIGITS = 9;
+
+    // Number of sequence numbers, one per eight-digit payload
+    private static final long SEQUENCE_LIMIT = 100_000_000L;
+
+    // Number of sequence numbers a thread reserves at once when none is specified
+    static final int DEFAULT_BLOCK_SIZE = 1_024;
+
+    // Largest shift applied to the skip distance after consecutive collisions
+    private static final int MAX_SKIP_SHIFT = 16;
+
+    // Next sequence number not reserved by any thread
+    private final AtomicLong nextBlock = new AtomicLong();
+
+    // Sequence numbers a thread reserves at once
+    private final int blockSize;
+
+    // Block of the current thread as {next, end}, an empty block when end has been reached
+    private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Constructs an AccountNumberAllocator reserving blocks of the default size.
+     */
+    public AccountNumberAllocator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Constructs an AccountNumberAllocator.
+     *
+     * @param blockSize Number of sequence numbers a thread reserves at once.
+     */
+    public AccountNumberAllocator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than 0");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocates the next account number of the current thread.
+     *
+     * @return A nine-digit account number with a valid Luhn check digit.
+     * @throws IllegalStateException If every account number has been allocated.
+     */
+    public String next() {
+        long[] current = block.get();
+        if (current[0] == current[1]) {
+            reserve(current);
+        }
+        return format(current[0]++);
+    }
+
+    /**
+     * Reports an account number already taken, by an account restored from a previous run or imported, so the
+     * numbers allocated from then on follow it. Numbers this allocator cannot have produced, those of another
+     * length or with a wrong check digit, are ignored and left to {@link #collided(int)}.
+     *
+     * @param accountNumber The taken account number.
+     */
+    public void observe(String accountNumber) {
+        if (isValid(accountNumber)) {
+            long sequence = Long.parseLong(accountNumber, 0, DIGITS - 1, 10);
+            nextBlock.accumulateAndGet(sequence + 1, Math::max);
+        }
+    }
+
+    /**
+     * Reports that the last number allocated by the current thread is already taken. The rest of the thread's
+     * block is dropped and the shared counter skips ahead by a distance doubling with every consecutive collision.
+     *
+     * @param attempt The number of consecutive collisions before this one, starting at 0.
+     */
+    public void collided(int attempt) {
+        long skip = (long) blockSize << Math.min(attempt, MAX_SKIP_SHIFT);
+        nextBlock.getAndAdd(skip);
+        long[] current = block.get();
+        current[0] = current[1];
+    }
+
+    /**
+     * Checks whether an account number is nine digits long with a valid Luhn check digit.
+     *
+     * @param accountNumber The account number to check.
+     * @return True if the account number is valid; false otherwise.
+     */
+    public static boolean isValid(String accountNumber) {
+        if (accountNumber == null || accountNumber.length() != DIGITS) {
+            return false;
+        }
+        long sequence = 0;
+        for (int i = 0; i < DIGITS - 1; i++) {
+            char digit = accountNumber.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return false;
+            }
+            sequence = sequence * 10 + (digit - '0');
+        }
+        return accountNumber.charAt(DIGITS - 1) == (char) ('0' + checkDigit(sequence));
+    }
+
+    // Reserve the next block of sequence numbers for the current thread
+    private void reserve(long[] current) {
+        long start = nextBlock.getAndAdd(blockSize);
+        if (start >= SEQUENCE_LIMIT) {
+            throw new IllegalStateException("Every account number has been allocated");
+        }
+        current[0] = start;
+        current[1] = Math.min(start + blockSize, SEQUENCE_LIMIT);
+    }
+
+    // Write the eight digits of the sequence number followed by its check digit
+    private static String format(long sequence) {
+        char[] digits = new char[DIGITS];
+        digits[DIGITS - 1] = (char) ('0' + checkDigit(sequence));
+        long remaining = sequence;
+        for (int i = DIGITS - 2; i >= 0; i--) {
+            digits[i] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        return new String(digits);
+    }
+
+    // Luhn check digit of the eight-digit payload, doubling every other digit from the rightmost one
+    private static int checkDigit(long sequence) {
+        int sum = 0;
+        long remaining = sequence;
+        for (int i = 0; i < DIGITS - 1; i++) {
+            int digit = (int) (remaining % 10);
+            remaining /= 10;
+            if (i % 2 == 0) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
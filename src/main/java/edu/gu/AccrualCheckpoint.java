@@ -0,0 +1,169 @@
+package edu.gu;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of the interest accrual of one day, kept as one small file per partition in a directory named after
+ * the day, so an interrupted run resumes where it stopped instead of crediting accounts twice.
+ * <p>
+ * Accounts are credited in a fixed order of their identifiers within a partition. The file of a partition holds
+ * the identifier of the last account whose credit is committed, and the transaction identifiers of the batch in
+ * flight, written before the batch is journaled. After a crash, the transactions of that batch found in the recovered ledger
+ * tell which of its accounts were credited. Files are written to a temporary file, forced and atomically
+ * renamed, like the snapshot checkpoints.
+ */
+final class AccrualCheckpoint {
+    // Pattern of the directory names of the days, and of the partition file names
+    private static final String DAY_DIRECTORY_PREFIX = "accrual-";
+    private static final String PARTITION_FILE_FORMAT = "partition-%04d.ckpt";
+
+    // Marks a partition file, so a foreign file is never taken for progress
+    private static final int MAGIC = 0x41435231;
+
+    // Directory of the partition files of the day
+    private final Path directory;
+
+    private AccrualCheckpoint(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the checkpoint of a day, creating its directory if needed.
+     *
+     * @param root The directory holding the checkpoints of every day.
+     * @param date The day of the accrual.
+     * @return The checkpoint.
+     * @throws IOException If the directory cannot be created.
+     */
+    static AccrualCheckpoint open(Path root, LocalDate date) throws IOException {
+        Path directory = root.resolve(DAY_DIRECTORY_PREFIX + date);
+        Files.createDirectories(directory);
+        return new AccrualCheckpoint(directory);
+    }
+
+    /**
+     * Lists the days with a checkpoint, complete or not.
+     *
+     * @param root The directory holding the checkpoints of every day.
+     * @return The days in chronological order, empty if the directory does not exist.
+     * @throws IOException If the directory cannot be listed.
+     */
+    static List<LocalDate> listDays(Path root) throws IOException {
+        List<LocalDate> days = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return days;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, DAY_DIRECTORY_PREFIX + "*")) {
+            for (Path directory : stream) {
+                days.add(LocalDate.parse(directory.getFileName().toString().substring(DAY_DIRECTORY_PREFIX.length())));
+            }
+        }
+        days.sort(null);
+        return days;
+    }
+
+    /**
+     * Reads the progress of a partition.
+     *
+     * @param partition The partition.
+     * @return The progress, empty if the partition was never started.
+     * @throws IOException If the file cannot be read or is not a partition file.
+     */
+    Progress read(int partition) throws IOException {
+        Path file = directory.resolve(String.format(PARTITION_FILE_FORMAT, partition));
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(in)) {
+            if (data.readInt() != MAGIC) {
+                throw new IOException("Not an accrual checkpoint: " + file);
+            }
+            boolean complete = data.readBoolean();
+            String cursor = data.readBoolean() ? data.readUTF() : null;
+            long creditedAccounts = data.readLong();
+            long creditedAmount = data.readLong();
+            long[] pending = new long[data.readInt()];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = data.readLong();
+            }
+            return new Progress(complete, cursor, creditedAccounts, creditedAmount, pending);
+        } catch (NoSuchFileException e) {
+            return Progress.NOT_STARTED;
+        }
+    }
+
+    /**
+     * Durably replaces the progress of a partition.
+     *
+     * @param partition The partition.
+     * @param progress  The new progress.
+     * @throws IOException If the file cannot be written.
+     */
+    void write(int partition, Progress progress) throws IOException {
+        Path file = directory.resolve(String.format(PARTITION_FILE_FORMAT, partition));
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeBoolean(progress.complete);
+            data.writeBoolean(progress.cursor != null);
+            if (progress.cursor != null) {
+                data.writeUTF(progress.cursor);
+            }
+            data.writeLong(progress.creditedAccounts);
+            data.writeLong(progress.creditedAmount);
+            data.writeInt(progress.pending.length);
+            for (long id : progress.pending) {
+                data.writeLong(id);
+            }
+            data.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Progress of a partition.
+     */
+    static final class Progress {
+        // Progress of a partition never started
+        static final Progress NOT_STARTED = new Progress(false, null, 0, 0, new long[0]);
+
+        // Whether every account of the partition was credited
+        final boolean complete;
+
+        // Identifier of the last account whose credit is committed, or null if none is
+        final String cursor;
+
+        // Number of accounts credited and interest credited in minor units, by the committed batches
+        final long creditedAccounts;
+        final long creditedAmount;
+
+        // Transaction identifiers of the batch in flight, credited to accounts after the cursor
+        final long[] pending;
+
+        Progress(boolean complete, String cursor, long creditedAccounts, long creditedAmount, long[] pending) {
+            this.complete = complete;
+            this.cursor = cursor;
+            this.creditedAccounts = creditedAccounts;
+            this.creditedAmount = creditedAmount;
+            this.pending = pending;
+        }
+    }
+}
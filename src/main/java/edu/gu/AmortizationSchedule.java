@@ -0,0 +1,106 @@
+package edu.gu;
+
+/**
+ * Monthly amortization table of a fixed-payment loan, stored as primitive columns rather than one object per
+ * row. Amounts are in the units of the loan, millions for mortgage applications.
+ * <p>
+ * The columns are generated from the closed form of the remaining balance, {@code B(k) = A - C * (1 + r)^k}
+ * with {@code A = M / r} and {@code C = M / r - P}, so every row is computed independently of the previous one
+ * and the loops filling the columns are simple enough for the JIT to vectorize.
+ */
+public final class AmortizationSchedule {
+    private final double payment;
+    private final double[] interest;
+    private final double[] principal;
+    private final double[] balance;
+
+    private AmortizationSchedule(double payment, double[] interest, double[] principal, double[] balance) {
+        this.payment = payment;
+        this.interest = interest;
+        this.principal = principal;
+        this.balance = balance;
+    }
+
+    /**
+     * Generates the schedule of a loan.
+     *
+     * @param loanAmount  The amount borrowed.
+     * @param ratePercent The annual interest rate in percent, compounded monthly.
+     * @param termMonths  The number of monthly payments.
+     * @return The schedule.
+     */
+    public static AmortizationSchedule of(double loanAmount, double ratePercent, int termMonths) {
+        if (termMonths <= 0) {
+            throw new IllegalArgumentException("Term must be greater than 0");
+        }
+        double rate = ratePercent / 100 / 12;
+        double payment = MortgageRiskEngine.monthlyPayment(loanAmount, ratePercent, termMonths);
+        double[] interest = new double[termMonths];
+        double[] principal = new double[termMonths];
+        double[] balance = new double[termMonths];
+
+        if (rate == 0) {
+            for (int month = 0; month < termMonths; month++) {
+                principal[month] = payment;
+                balance[month] = loanAmount - (month + 1) * payment;
+            }
+        } else {
+            // Growth factors (1 + r)^(k + 1), then the closed form of the balance after each payment
+            double growth = 1;
+            for (int month = 0; month < termMonths; month++) {
+                growth *= 1 + rate;
+                balance[month] = growth;
+            }
+            double a = payment / rate;
+            double c = a - loanAmount;
+            for (int month = 0; month < termMonths; month++) {
+                balance[month] = a - c * balance[month];
+            }
+            // Interest accrues on the balance before each payment, the rest of the payment repays principal
+            interest[0] = rate * loanAmount;
+            for (int month = 1; month < termMonths; month++) {
+                interest[month] = rate * balance[month - 1];
+            }
+            for (int month = 0; month < termMonths; month++) {
+                principal[month] = payment - interest[month];
+            }
+        }
+        // The last payment clears the loan, whatever the rounding of the columns
+        balance[termMonths - 1] = 0;
+        return new AmortizationSchedule(payment, interest, principal, balance);
+    }
+
+    // Fixed monthly payment
+    public double getPayment() {
+        return payment;
+    }
+
+    // Number of monthly payments
+    public int getTermMonths() {
+        return balance.length;
+    }
+
+    // Interest part of the payment of a month, counted from 0
+    public double getInterest(int month) {
+        return interest[month];
+    }
+
+    // Principal part of the payment of a month, counted from 0
+    public double getPrincipal(int month) {
+        return principal[month];
+    }
+
+    // Balance remaining after the payment of a month, counted from 0
+    public double getBalance(int month) {
+        return balance[month];
+    }
+
+    // Interest paid over the whole term
+    public double getTotalInterest() {
+        double total = 0;
+        for (double monthInterest : interest) {
+            total += monthInterest;
+        }
+        return total;
+    }
+}
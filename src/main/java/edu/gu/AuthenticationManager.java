@@ -2,8 +2,11 @@ package edu.gu;
 
 import edu.gu.exceptions.InvalidCredentialsException;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Manages user authentication and registration.
@@ -12,13 +15,36 @@ public class AuthenticationManager implements IAuthenticationManager {
     // List to store registered users
     private final List<User> users;
 
+    // Index of the registered users keyed by their username, claimed first when registering
+    private final Map<String, User> usersByUsername = new ConcurrentHashMap<>();
+
+    // Index of the registered users keyed by their email address
+    private final Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+
+    // Index of the registered users keyed by their unique identifier
+    private final Map<String, User> usersById = new ConcurrentHashMap<>();
+
     /**
      * Constructs an AuthenticationManager with a list of existing users.
      *
      * @param users The list of users to be managed.
      */
     public AuthenticationManager(List<User> users) {
-        this.users = users;
+        this.users = Collections.synchronizedList(users);
+        for (User user : users) {
+            index(user);
+        }
+    }
+
+    /**
+     * Adds the user to the username, email and id indexes.
+     *
+     * @param user The user to be indexed.
+     */
+    private void index(User user) {
+        usersByUsername.put(user.getUsername(), user);
+        usersByEmail.put(user.getEmail(), user);
+        usersById.put(user.getId(), user);
     }
 
     /**
@@ -46,16 +72,10 @@ public class AuthenticationManager implements IAuthenticationManager {
      * @return The registered user or null if registration fails.
      */
     private User registerUser(User user) {
-        // Check if the username or email is already registered
-        for (User registeredUser : users) {
-            if (registeredUser.getUsername().equals(user.getUsername())) {
-                System.out.println("Username '" + user.getUsername() + "' is already taken");
-                return null;
-            }
-            if (registeredUser.getEmail().equals(user.getEmail())) {
-                System.out.println("Email '" + user.getEmail() + "' is already registered");
-                return null;
-            }
+        String rejection = claim(user);
+        if (rejection != null) {
+            System.out.println(rejection);
+            return null;
         }
 
         // If username and email are unique, add the user to the registered users list
@@ -63,6 +83,60 @@ public class AuthenticationManager implements IAuthenticationManager {
         return user;
     }
 
+    /**
+     * Claims the username, email and identifier of a user in the indexes, or none of them.
+     * Each claim is atomic, so of two concurrent sign-ups with the same username or email only one wins.
+     *
+     * @param user The user to be claimed.
+     * @return Null if the user was claimed; otherwise the reason it was rejected.
+     */
+    private String claim(User user) {
+        if (usersByUsername.putIfAbsent(user.getUsername(), user) != null) {
+            return "Username '" + user.getUsername() + "' is already taken";
+        }
+        if (usersByEmail.putIfAbsent(user.getEmail(), user) != null) {
+            // Release the username claimed above
+            usersByUsername.remove(user.getUsername(), user);
+            return "Email '" + user.getEmail() + "' is already registered";
+        }
+        if (usersById.putIfAbsent(user.getId(), user) != null) {
+            usersByUsername.remove(user.getUsername(), user);
+            usersByEmail.remove(user.getEmail(), user);
+            return "User id '" + user.getId() + "' is already registered";
+        }
+        return null;
+    }
+
+    /**
+     * Claims a bulk-imported user in the indexes, it becomes visible to logins straight away.
+     * The batch is added to the registered users list afterwards with {@link #addImportedUsers(List)}.
+     *
+     * @param user The imported user.
+     * @return Null if the user was claimed; otherwise the reason it was rejected.
+     */
+    String importUser(User user) {
+        return claim(user);
+    }
+
+    /**
+     * Adds a batch of users claimed with {@link #importUser(User)} to the registered users list.
+     *
+     * @param importedUsers The claimed users.
+     */
+    void addImportedUsers(List<User> importedUsers) {
+        users.addAll(importedUsers);
+    }
+
+    /**
+     * Adds a user loaded from a snapshot, the snapshot is trusted to hold unique usernames and emails.
+     *
+     * @param user The loaded user.
+     */
+    void addUser(User user) {
+        index(user);
+        users.add(user);
+    }
+
     /**
      * Retrieves a user based on their username.
      *
@@ -70,12 +144,17 @@ public class AuthenticationManager implements IAuthenticationManager {
      * @return The user with the specified username or null if not found.
      */
     public User getUserByUsername(String username) {
-        for (User user : users) {
-            if (user.getUsername().equals(username)) {
-                return user;
-            }
-        }
-        return null;
+        return username == null ? null : usersByUsername.get(username);
+    }
+
+    /**
+     * Retrieves a user based on their unique identifier.
+     *
+     * @param userId The unique identifier to search for.
+     * @return The user with the specified identifier or null if not found.
+     */
+    public User getUserById(String userId) {
+        return userId == null ? null : usersById.get(userId);
     }
 
     /**
@@ -87,10 +166,9 @@ public class AuthenticationManager implements IAuthenticationManager {
      * @throws InvalidCredentialsException If no user is found with the provided credentials.
      */
     public User loginUser(String username, String password) throws InvalidCredentialsException {
-        for (User user : users) {
-            if (user.getUsername().equals(username) && user.getPassword().equals(password)) {
-                return user;
-            }
+        User user = getUserByUsername(username);
+        if (user != null && user.getPassword().equals(password)) {
+            return user;
         }
         throw new InvalidCredentialsException("User not found with the provided credentials");
     }
@@ -103,11 +181,7 @@ public class AuthenticationManager implements IAuthenticationManager {
      * @return True if the provided credentials are valid; false otherwise.
      */
     public boolean verifyCredentials(String username, String password) {
-        for (User user : users) {
-            if (user.getUsername().equals(username)) {
-                return user.getPassword().equals(password);
-            }
-        }
-        return false;
+        User user = getUserByUsername(username);
+        return user != null && user.getPassword().equals(password);
     }
 }
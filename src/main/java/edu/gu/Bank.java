@@ -2,8 +2,17 @@ package edu.gu;
 
 import edu.gu.exceptions.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Represents a bank with various functionalities such as managing accounts, authentication, transactions, and mortgages.
@@ -13,6 +22,21 @@ class Bank {
     private static AuthenticationManager authenticationManager;
     private static TransactionManager transactionManager;
     private static MortgageManager mortgageManager;
+    private static MortgageRiskEngine mortgageRiskEngine;
+    private static MortgageDecisionStage mortgageDecisionStage;
+    private static InterestAccrualEngine interestAccrualEngine;
+    // Pool the interest accrual blocks on its fsyncs and journal commits in, apart from the common pool
+    private static ForkJoinPool interestAccrualPool;
+    private static TransactionJournal transactionJournal;
+    private static TransactionLog transactionLog;
+    private static TransactionArchive transactionArchive;
+    private static SnapshotStore snapshotStore;
+    private static ChangeTracker changeTracker;
+    private static IdempotencyCache idempotencyCache;
+    // Number of journal records covered by the restored snapshots, replay resumes after them
+    private static long snapshotJournalRecords;
+    // Held from a cut until its checkpoint is published, so checkpoints are written in the order of their cuts
+    private static final Object checkpointLock = new Object();
     private final String name;
     private final String location;
 
@@ -25,12 +49,343 @@ class Bank {
      * @param users    The list of registered users.
      */
     public Bank(String name, String location, List<Account> accounts, List<User> users) {
+        this(name, location, accounts, users, null);
+    }
+
+    /**
+     * Constructs a Bank object that journals its ledger to a write-ahead journal.
+     *
+     * @param name     The name of the bank.
+     * @param location The location of the bank.
+     * @param accounts The list of existing accounts.
+     * @param users    The list of registered users.
+     * @param journal  The journal transactions and new accounts are appended to, or null to keep them in memory only.
+     */
+    public Bank(String name, String location, List<Account> accounts, List<User> users, TransactionJournal journal) {
+        this(name, location, accounts, users, journal, TransactionLog.inMemory());
+    }
+
+    /**
+     * Constructs a Bank object that journals its ledger and keeps account histories in the given log.
+     *
+     * @param name       The name of the bank.
+     * @param location   The location of the bank.
+     * @param accounts   The list of existing accounts.
+     * @param users      The list of registered users.
+     * @param journal    The journal transactions and new accounts are appended to, or null to keep them in memory only.
+     * @param historyLog The log account histories are stored in and read back from.
+     */
+    public Bank(String name, String location, List<Account> accounts, List<User> users,
+                TransactionJournal journal, TransactionLog historyLog) {
+        this(name, location, accounts, users, journal, historyLog, null);
+    }
+
+    /**
+     * Constructs a Bank object that journals its ledger, keeps account histories in the given log and writes
+     * incremental snapshots of its state to the given store.
+     *
+     * @param name       The name of the bank.
+     * @param location   The location of the bank.
+     * @param accounts   The list of existing accounts.
+     * @param users      The list of registered users.
+     * @param journal    The journal transactions and new accounts are appended to, or null to keep them in memory only.
+     * @param historyLog The log account histories are stored in and read back from.
+     * @param snapshots  The store checkpoints are written to, or null to disable snapshots.
+     */
+    public Bank(String name, String location, List<Account> accounts, List<User> users,
+                TransactionJournal journal, TransactionLog historyLog, SnapshotStore snapshots) {
+        this(name, location, accounts, users, journal, historyLog, snapshots, TransactionArchive.inMemory());
+    }
+
+    /**
+     * Constructs a Bank object that journals its ledger, keeps account histories in the given log, writes
+     * incremental snapshots of its state to the given store and keeps only its recent transactions on the heap,
+     * spilling older ones to the given archive.
+     *
+     * @param name       The name of the bank.
+     * @param location   The location of the bank.
+     * @param accounts   The list of existing accounts.
+     * @param users      The list of registered users.
+     * @param journal    The journal transactions and new accounts are appended to, or null to keep them in memory only.
+     * @param historyLog The log account histories are stored in and read back from.
+     * @param snapshots  The store checkpoints are written to, or null to disable snapshots.
+     * @param archive    The archive transactions leaving the hot window are spilled to.
+     */
+    public Bank(String name, String location, List<Account> accounts, List<User> users,
+                TransactionJournal journal, TransactionLog historyLog, SnapshotStore snapshots,
+                TransactionArchive archive) {
         this.name = name;
         this.location = location;
+        changeTracker = snapshots == null ? null : new ChangeTracker(historyLog);
         accountManager = new AccountManager(accounts);
         authenticationManager = new AuthenticationManager(users);
-        transactionManager = new TransactionManager();
-        mortgageManager = new MortgageManager();
+        transactionManager = new TransactionManager(new AccountLocks(), journal, historyLog, changeTracker, archive);
+        mortgageManager = new MortgageManager(changeTracker);
+        mortgageRiskEngine = new MortgageRiskEngine(ForkJoinPool.commonPool(), MortgageRiskEngine.DEFAULT_TERM_MONTHS);
+        mortgageDecisionStage = new MortgageDecisionStage(mortgageManager, mortgageRiskEngine,
+                MortgageDecisionRules.defaults(), MortgageDecisionStage.DEFAULT_BATCH_SIZE);
+        if (interestAccrualPool != null) {
+            interestAccrualPool.shutdown();
+        }
+        interestAccrualPool = InterestAccrualEngine.newPool(Runtime.getRuntime().availableProcessors());
+        interestAccrualEngine = new InterestAccrualEngine(accountManager, transactionManager, interestAccrualPool,
+                InterestRates.defaults(), InterestAccrualEngine.DEFAULT_BATCH_SIZE);
+        idempotencyCache = new IdempotencyCache();
+        transactionJournal = journal;
+        transactionLog = historyLog;
+        transactionArchive = archive;
+        snapshotStore = snapshots;
+        snapshotJournalRecords = 0;
+    }
+
+    /**
+     * Streams the users and accounts of a data snapshot into the bank, one record at a time.
+     *
+     * @param snapshot The snapshot file, in the layout of data.json.
+     * @return The number of records loaded and the load rate.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public StreamingDataLoader.LoadReport loadData(Path snapshot) throws IOException {
+        return new StreamingDataLoader(1_000_000, System.out)
+                .load(snapshot, authenticationManager::addUser, accountManager::restoreAccount);
+    }
+
+    /**
+     * Imports users and accounts in bulk from a file in the layout of data.json, validating them in parallel.
+     * Invalid and duplicate records are rejected and reported, and when the bank writes snapshots the import
+     * is persisted with a checkpoint once it completes.
+     *
+     * @param file The file to import.
+     * @return The number of records imported and rejected, the first rejections and the import rate.
+     * @throws IOException If the file cannot be read or the checkpoint cannot be written.
+     */
+    public BulkImporter.ImportReport bulkImport(Path file) throws IOException {
+        BulkImporter.ImportReport report = newBulkImporter().importFile(file);
+        checkpoint();
+        return report;
+    }
+
+    /**
+     * Imports users and then accounts in bulk, validating them in parallel.
+     * Invalid and duplicate records are rejected and reported, and when the bank writes snapshots the import
+     * is persisted with a checkpoint once it completes.
+     *
+     * @param users    The user records.
+     * @param accounts The account records, their owners must be registered or among the user records.
+     * @return The number of records imported and rejected, the first rejections and the import rate.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public BulkImporter.ImportReport bulkImport(Iterator<BulkImporter.UserRecord> users,
+                                                Iterator<BulkImporter.AccountRecord> accounts) throws IOException {
+        BulkImporter.ImportReport report = newBulkImporter().importRecords(users, accounts);
+        checkpoint();
+        return report;
+    }
+
+    // Create an importer validating on the common fork-join pool
+    private BulkImporter newBulkImporter() {
+        return new BulkImporter(authenticationManager, accountManager, transactionJournal, changeTracker, ForkJoinPool.commonPool(),
+                BulkImporter.DEFAULT_BATCH_SIZE, BulkImporter.DEFAULT_MAX_REJECTIONS);
+    }
+
+    /**
+     * Applies the snapshot chain on top of the loaded data, restoring the users, accounts, transactions and
+     * mortgage applications it holds. Must be called before {@link #recoverFromJournal()}, which then only
+     * replays the journal records written after the last checkpoint.
+     *
+     * @return The number of journal records covered by the snapshots.
+     * @throws IOException If a checkpoint cannot be read.
+     */
+    public long restoreSnapshots() throws IOException {
+        if (snapshotStore == null) {
+            return 0;
+        }
+        snapshotJournalRecords = snapshotStore.restore(new SnapshotStore.Restorer() {
+            @Override
+            public void user(User user) {
+                if (authenticationManager.getUserByUsername(user.getUsername()) == null) {
+                    authenticationManager.addUser(user);
+                }
+            }
+
+            @Override
+            public void account(Account account) {
+                Account existing = accountManager.getAccount(account.getId());
+                if (existing == null) {
+                    accountManager.restoreAccount(account);
+                } else {
+                    existing.restoreBalance(account.getBalance());
+                }
+            }
+
+            @Override
+            public void transaction(Transaction transaction) {
+                transactionManager.restoreTransaction(transaction);
+            }
+
+            @Override
+            public void mortgageApplication(String id, String applicantId, double propertyValue, double loanAmount,
+                                            double interestRate, MortgageApplicationStatus status,
+                                            long submittedMillis, boolean referred) {
+                User applicant = authenticationManager.getUserById(applicantId);
+                if (applicant == null) {
+                    System.out.printf("Skipped mortgage application #%s: Unknown applicant\n", id);
+                    return;
+                }
+                mortgageManager.restoreApplication(
+                        new MortgageApplication(id, applicant, propertyValue, loanAmount, interestRate, status,
+                                submittedMillis, referred));
+            }
+        });
+        // The restored transactions are in the snapshots already, the next checkpoint starts after them
+        changeTracker.transactionsRestored();
+        return snapshotJournalRecords;
+    }
+
+    /**
+     * Writes a checkpoint of everything that changed since the previous one. Ledger updates are held back only
+     * while the changed accounts are copied, the checkpoint itself is written while the bank keeps serving.
+     * Checkpoints are written one at a time, and the changes of a checkpoint that fails are kept for the next one.
+     *
+     * @return The path of the checkpoint written, or null if the bank does not write snapshots or nothing changed.
+     * @throws IOException If the journal cannot be synced or the checkpoint cannot be written.
+     */
+    public Path checkpoint() throws IOException {
+        if (snapshotStore == null) {
+            return null;
+        }
+        synchronized (checkpointLock) {
+            ChangeTracker.Cut cut = changeTracker.cut(accountManager::getAccount, mortgageManager::findApplicationById,
+                    transactionJournal);
+            Path checkpoint;
+            try {
+                if (transactionJournal != null) {
+                    // The cut counts records that may still be queued, they must be durable before a checkpoint covers them
+                    transactionJournal.sync();
+                }
+                checkpoint = snapshotStore.write(cut);
+            } catch (IOException | RuntimeException e) {
+                changeTracker.revert(cut);
+                throw e;
+            }
+            // The checkpoint is published, a failed compaction leaves the chain as it is
+            snapshotStore.compactIfDue();
+            return checkpoint;
+        }
+    }
+
+    /**
+     * Replays the write-ahead journal on top of the loaded accounts, rebuilding the accounts opened at runtime,
+     * their balances and the transaction history. Records covered by the restored snapshots are skipped.
+     * Must be called before the bank serves any request, which it must not do if this throws.
+     *
+     * @return The number of journal records replayed.
+     * @throws IOException If the journal cannot be read, holds fewer records than the snapshots cover, or holds
+     *                     a record that cannot be replayed on the restored ledger.
+     */
+    public long recoverFromJournal() throws IOException {
+        long journalRecords = transactionJournal == null ? 0 : transactionJournal.getRecordCount();
+        if (journalRecords < snapshotJournalRecords) {
+            // Records the snapshots build on are missing, replaying what is left would not rebuild the ledger
+            throw new IOException(String.format("The snapshots cover %d journal records but the journal holds %d",
+                    snapshotJournalRecords, journalRecords));
+        }
+        if (transactionJournal == null) {
+            return 0;
+        }
+        return transactionJournal.replay(new TransactionJournal.Listener() {
+            @Override
+            public void accountOpened(Account account) {
+                accountManager.restoreAccount(account);
+            }
+
+            @Override
+            public void transactionRecorded(Transaction transaction) {
+                Account account = accountManager.getAccount(transaction.getAccountId());
+                Account recipientAccount = transaction instanceof TransferTransaction
+                        ? accountManager.getAccount(((TransferTransaction) transaction).getRecipientAccountId())
+                        : null;
+                try {
+                    if (account == null || (transaction instanceof TransferTransaction && recipientAccount == null)) {
+                        throw new InvalidAccountNumberException("Unknown account");
+                    }
+                    transactionManager.replayTransaction(transaction, account, recipientAccount);
+                } catch (Exception e) {
+                    // The ledger no longer matches the journal, serving on top of it would build on a wrong state
+                    throw new IllegalStateException(String.format("Journaled transaction #%s cannot be replayed: %s",
+                            transaction.getId(), e.getMessage()), e);
+                }
+            }
+        }, snapshotJournalRecords);
+    }
+
+    /**
+     * Retrieves the group-commit metrics of the write-ahead journal.
+     *
+     * @return The journal metrics, or null if the bank does not journal its ledger.
+     */
+    public JournalMetrics getJournalMetrics() {
+        return transactionJournal == null ? null : transactionJournal.getMetrics();
+    }
+
+    /**
+     * Stops the interest accrual pool, forces and closes the write-ahead journal, if any, the history log and the
+     * transaction archive.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    public void shutdown() throws IOException {
+        interestAccrualPool.shutdown();
+        if (transactionJournal != null) {
+            transactionJournal.close();
+        }
+        transactionLog.close();
+        transactionArchive.close();
+    }
+
+    /**
+     * Spills the transactions that left the hot window, because newer ones pushed them out or because they aged,
+     * to the archive. Their records stay in the history log, so account histories and lookups by identifier
+     * still find them.
+     *
+     * @return The number of transactions spilled.
+     */
+    public int compactHistory() {
+        return transactionManager.compactHistory();
+    }
+
+    /**
+     * Credits a day of interest to every account whose type earns interest and was not credited for that day
+     * yet, resuming the run of the day if it was interrupted.
+     *
+     * @param date                The day the interest is accrued for.
+     * @param checkpointDirectory The directory holding the accrual checkpoints.
+     * @return The report of the accrual.
+     * @throws IOException If the checkpoint cannot be read or written.
+     */
+    public InterestAccrualEngine.AccrualReport accrueInterest(LocalDate date, Path checkpointDirectory) throws IOException {
+        return interestAccrualEngine.accrue(date, checkpointDirectory);
+    }
+
+    /**
+     * Completes the interest accruals of earlier days that were interrupted midway. Must run after the journal
+     * was recovered, which tells the credits of the interrupted batches that were committed.
+     *
+     * @param checkpointDirectory The directory holding the accrual checkpoints.
+     * @return The reports of the completed accruals.
+     * @throws IOException If a checkpoint cannot be read or written.
+     */
+    public List<InterestAccrualEngine.AccrualReport> resumeInterestAccruals(Path checkpointDirectory) throws IOException {
+        return interestAccrualEngine.resumeInterrupted(checkpointDirectory);
+    }
+
+    /**
+     * Replaces the interest rates applied by the next accruals.
+     *
+     * @param rates The new rates.
+     */
+    public void setInterestRates(InterestRates rates) {
+        interestAccrualEngine.setRates(rates);
     }
 
     /**
@@ -94,31 +449,73 @@ class Bank {
      * @return The newly created user.
      */
     public User createUser(String username, String password, String email, User.Role role) {
-        return authenticationManager.createUser(username, password, email, role);
+        User user = authenticationManager.createUser(username, password, email, role);
+        if (user != null && changeTracker != null) {
+            changeTracker.userCreated(user);
+        }
+        return user;
     }
 
     /**
      * Records a withdrawal transaction for the specified account.
      *
      * @param account The account from which the withdrawal is made.
-     * @param amount  The amount of the withdrawal.
+     * @param amount  The amount of the withdrawal in minor units.
+     * @return The recorded withdrawal transaction.
      * @throws InsufficientFundsException If there are insufficient funds in the account.
      * @throws AccountInactiveException   If the account is inactive.
      */
-    public void withdrawFromAccount(Account account, double amount) throws InsufficientFundsException, AccountInactiveException {
-        transactionManager.recordTransaction(account, TransactionType.WITHDRAWAL, amount);
+    public Transaction withdrawFromAccount(Account account, long amount) throws InsufficientFundsException, AccountInactiveException {
+        return transactionManager.recordTransaction(account, TransactionType.WITHDRAWAL, amount);
+    }
+
+    /**
+     * Records a withdrawal transaction for the specified account once per idempotency key.
+     * A retry with the same key returns the original transaction without touching the balance.
+     *
+     * @param account        The account from which the withdrawal is made.
+     * @param amount         The amount of the withdrawal in minor units.
+     * @param idempotencyKey The key identifying the request across retries.
+     * @return The withdrawal transaction recorded by the first request with this key.
+     * @throws InsufficientFundsException If there are insufficient funds in the account.
+     * @throws AccountInactiveException   If the account is inactive.
+     * @throws IllegalArgumentException   If the key was used for a different request.
+     */
+    public Transaction withdrawFromAccount(Account account, long amount, String idempotencyKey)
+            throws InsufficientFundsException, AccountInactiveException {
+        return idempotencyCache.execute(idempotencyKey, fingerprint(TransactionType.WITHDRAWAL, account, null, amount),
+                () -> withdrawFromAccount(account, amount));
     }
 
     /**
      * Records a deposit transaction for the specified account.
      *
      * @param account The account to which the deposit is made.
-     * @param amount  The amount of the deposit.
+     * @param amount  The amount of the deposit in minor units.
+     * @return The recorded deposit transaction.
      * @throws AccountInactiveException   If the account is inactive.
      * @throws InsufficientFundsException If there are insufficient funds in the account.
      */
-    public void depositToAccount(Account account, double amount) throws AccountInactiveException, InsufficientFundsException {
-        transactionManager.recordTransaction(account, TransactionType.DEPOSIT, amount);
+    public Transaction depositToAccount(Account account, long amount) throws AccountInactiveException, InsufficientFundsException {
+        return transactionManager.recordTransaction(account, TransactionType.DEPOSIT, amount);
+    }
+
+    /**
+     * Records a deposit transaction for the specified account once per idempotency key.
+     * A retry with the same key returns the original transaction without touching the balance.
+     *
+     * @param account        The account to which the deposit is made.
+     * @param amount         The amount of the deposit in minor units.
+     * @param idempotencyKey The key identifying the request across retries.
+     * @return The deposit transaction recorded by the first request with this key.
+     * @throws AccountInactiveException   If the account is inactive.
+     * @throws InsufficientFundsException If there are insufficient funds in the account.
+     * @throws IllegalArgumentException   If the key was used for a different request.
+     */
+    public Transaction depositToAccount(Account account, long amount, String idempotencyKey)
+            throws AccountInactiveException, InsufficientFundsException {
+        return idempotencyCache.execute(idempotencyKey, fingerprint(TransactionType.DEPOSIT, account, null, amount),
+                () -> depositToAccount(account, amount));
     }
 
     /**
@@ -126,12 +523,78 @@ class Bank {
      *
      * @param senderAccount   The account from which the transfer is made.
      * @param receiverAccount The account to which the transfer is made.
-     * @param amount          The amount of the transfer.
+     * @param amount          The amount of the transfer in minor units.
+     * @return The recorded transfer transaction.
      * @throws InsufficientFundsException If there are insufficient funds in the sender account.
      * @throws AccountInactiveException   If either the sender or receiver account is inactive.
      */
-    public void transfer(Account senderAccount, Account receiverAccount, double amount) throws InsufficientFundsException, AccountInactiveException {
-        transactionManager.recordTransaction(senderAccount, receiverAccount, TransactionType.TRANSFER, amount);
+    public Transaction transfer(Account senderAccount, Account receiverAccount, long amount) throws InsufficientFundsException, AccountInactiveException {
+        return transactionManager.recordTransaction(senderAccount, receiverAccount, TransactionType.TRANSFER, amount);
+    }
+
+    /**
+     * Records a transfer transaction from one account to another once per idempotency key.
+     * A retry with the same key returns the original transaction without touching the balances.
+     *
+     * @param senderAccount   The account from which the transfer is made.
+     * @param receiverAccount The account to which the transfer is made.
+     * @param amount          The amount of the transfer in minor units.
+     * @param idempotencyKey  The key identifying the request across retries.
+     * @return The transfer transaction recorded by the first request with this key.
+     * @throws InsufficientFundsException If there are insufficient funds in the sender account.
+     * @throws AccountInactiveException   If either the sender or receiver account is inactive.
+     * @throws IllegalArgumentException   If the key was used for a different request.
+     */
+    public Transaction transfer(Account senderAccount, Account receiverAccount, long amount, String idempotencyKey)
+            throws InsufficientFundsException, AccountInactiveException {
+        return idempotencyCache.execute(idempotencyKey,
+                fingerprint(TransactionType.TRANSFER, senderAccount, receiverAccount, amount),
+                () -> transfer(senderAccount, receiverAccount, amount));
+    }
+
+    /**
+     * Executes a batch of transfers, such as a payroll run, under a single acquisition of the accounts' locks.
+     * Every account number is resolved once, and the transfers of the executed legs are journaled together.
+     *
+     * @param legs The transfers to execute, in order, each leg sees the balances left by the previous ones.
+     * @param mode Whether to execute all the legs or none of them, or every leg that can be executed.
+     * @return The transaction recorded or the reason of the failure of every leg.
+     */
+    public BatchTransfer.Result transferBatch(List<BatchTransfer.Leg> legs, BatchTransfer.Mode mode) {
+        int size = legs.size();
+        Account[] senderAccounts = new Account[size];
+        Account[] recipientAccounts = new Account[size];
+        long[] amounts = new long[size];
+        String[] failures = new String[size];
+
+        // Resolve every distinct account number once
+        Map<String, Account> resolved = new HashMap<>();
+        for (int leg = 0; leg < size; leg++) {
+            BatchTransfer.Leg transfer = legs.get(leg);
+            senderAccounts[leg] = resolved.computeIfAbsent(transfer.getSenderAccountNumber(), this::findAccountByNumber);
+            recipientAccounts[leg] = resolved.computeIfAbsent(transfer.getRecipientAccountNumber(), this::findAccountByNumber);
+            amounts[leg] = transfer.getAmount();
+            if (senderAccounts[leg] == null) {
+                failures[leg] = "Unknown sender account number " + transfer.getSenderAccountNumber();
+            } else if (recipientAccounts[leg] == null) {
+                failures[leg] = "Unknown recipient account number " + transfer.getRecipientAccountNumber();
+            }
+        }
+        return transactionManager.recordTransfers(senderAccounts, recipientAccounts, amounts, failures, mode);
+    }
+
+    // Find an account by its number, null if there is none
+    private Account findAccountByNumber(String accountNumber) {
+        try {
+            return accountManager.getAccountByNumber(accountNumber);
+        } catch (InvalidAccountNumberException e) {
+            return null;
+        }
+    }
+
+    // Describe a request, so an idempotency key reused for a different request is detected
+    private static String fingerprint(TransactionType type, Account account, Account recipientAccount, long amount) {
+        return type + ":" + account.getId() + ":" + (recipientAccount == null ? "" : recipientAccount.getId()) + ":" + amount;
     }
 
     /**
@@ -157,6 +620,112 @@ class Bank {
         return mortgageManager.findApplicationsByStatus(MortgageApplicationStatus.PENDING);
     }
 
+    /**
+     * Retrieves a list of rejected mortgage applications.
+     *
+     * @return The list of rejected mortgage applications.
+     */
+    public List<MortgageApplication> getRejectedMortgageApplications() {
+        return mortgageManager.findApplicationsByStatus(MortgageApplicationStatus.REJECTED);
+    }
+
+    /**
+     * Approves or rejects the clear-cut pending mortgage applications with the decision rules, referring the
+     * borderline ones to credit employees.
+     *
+     * @return The number of applications approved or rejected.
+     */
+    public int runMortgageDecisions() {
+        return mortgageDecisionStage.run();
+    }
+
+    /**
+     * Replaces the rules deciding mortgage applications automatically.
+     *
+     * @param rules The new rules.
+     */
+    public void setMortgageDecisionRules(MortgageDecisionRules rules) {
+        mortgageDecisionStage.setRules(rules);
+    }
+
+    /**
+     * Retrieves the metrics of the automatic mortgage decisioning.
+     *
+     * @return The metrics.
+     */
+    public MortgageDecisionMetrics getMortgageDecisionMetrics() {
+        return mortgageDecisionStage.getMetrics();
+    }
+
+    /**
+     * Scores every pending mortgage application that has no score yet, in parallel, so credit employees review
+     * them with their risk metrics at hand.
+     *
+     * @return The number of applications scored.
+     */
+    public int scorePendingMortgageApplications() {
+        return mortgageRiskEngine.scoreAll(mortgageManager.findApplicationsByStatus(MortgageApplicationStatus.PENDING));
+    }
+
+    /**
+     * Retrieves the risk metrics of a mortgage application, scoring it if it has no score yet.
+     *
+     * @param application The application.
+     * @return The risk metrics of the application.
+     */
+    public MortgageRiskScore getMortgageRiskScore(MortgageApplication application) {
+        return mortgageRiskEngine.score(application);
+    }
+
+    /**
+     * Generates the monthly amortization schedule of the loan of a mortgage application.
+     *
+     * @param application The application, usually an approved one.
+     * @return The schedule over the term of the loan.
+     */
+    public AmortizationSchedule getAmortizationSchedule(MortgageApplication application) {
+        return mortgageRiskEngine.schedule(application);
+    }
+
+    /**
+     * Projects the monthly cash flows of every approved mortgage, month 0 being the first payment of each.
+     *
+     * @return The projection of the approved mortgages.
+     */
+    public PortfolioProjection projectApprovedMortgages() {
+        return mortgageRiskEngine.project(mortgageManager.findApplicationsByStatus(MortgageApplicationStatus.APPROVED));
+    }
+
+    /**
+     * Approves a pending mortgage application.
+     *
+     * @param application The application to approve.
+     * @return True if the application was approved; false if it was no longer pending.
+     */
+    public boolean approveMortgageApplication(MortgageApplication application) {
+        return mortgageManager.approveApplication(application);
+    }
+
+    /**
+     * Rejects a pending mortgage application.
+     *
+     * @param application The application to reject.
+     * @return True if the application was rejected; false if it was no longer pending.
+     */
+    public boolean rejectMortgageApplication(MortgageApplication application) {
+        return mortgageManager.rejectApplication(application);
+    }
+
+    /**
+     * Cancels a pending or approved mortgage application.
+     *
+     * @param application The application to cancel.
+     * @return True if the application was cancelled; false if it was rejected or cancelled already.
+     */
+    public boolean cancelMortgageApplication(MortgageApplication application) {
+        return mortgageManager.cancelApplication(application);
+    }
+
     /**
      * Retrieves a mortgage application based on its unique identifier.
      *
@@ -171,10 +740,72 @@ class Bank {
      * Retrieves a list of transactions based on its account unique identifier.
      *
      * @param account The account to which the deposit is made.
-     * @return The list of transactions belonging to this account.
+     * @return The list of transactions belonging to this account, as views over the history log.
+     */
+    public List<TransactionView> getAccountTransactions(Account account) {
+        return transactionManager.getAccountTransactions(account.getId());
+    }
+
+    /**
+     * Retrieves a page of the transactions of an account, in the order they were recorded. Page N of size M
+     * starts at cursor N * M, and every page carries the cursor of the next one.
+     *
+     * @param account  The account whose transactions are retrieved.
+     * @param cursor   The cursor where the page starts, 0 for the first page.
+     * @param pageSize The maximum number of transactions in the page.
+     * @return The page, with the cursor of the next page.
+     */
+    public TransactionPage getAccountTransactionPage(Account account, long cursor, int pageSize) {
+        return transactionManager.getAccountTransactionPage(account.getId(), cursor, pageSize);
+    }
+
+    /**
+     * Streams the transactions of an account in the order they were recorded, reading the history log lazily.
+     *
+     * @param account The account whose transactions are streamed.
+     * @return A sequential stream of the transactions, as views over the history log.
+     */
+    public Stream<TransactionView> streamAccountTransactions(Account account) {
+        return transactionManager.streamAccountTransactions(account.getId());
+    }
+
+    /**
+     * Retrieves a page of the transactions of an account within a time range, in the order they were recorded.
+     * Finding the range costs a binary search over the account's history, so the cost depends on the page size
+     * rather than on the length of the history.
+     *
+     * @param account    The account whose transactions are retrieved.
+     * @param fromMillis Start of the range in milliseconds since the Unix epoch, inclusive.
+     * @param toMillis   End of the range in milliseconds since the Unix epoch, exclusive.
+     * @param offset     Number of transactions of the range to skip.
+     * @param limit      Maximum number of transactions to retrieve.
+     * @return The transactions of the page, as views over the history log.
+     */
+    public List<TransactionView> getAccountTransactions(Account account, long fromMillis, long toMillis,
+                                                        int offset, int limit) {
+        return transactionManager.getAccountTransactions(account.getId(), fromMillis, toMillis, offset, limit);
+    }
+
+    /**
+     * Counts the transactions of an account within a time range, for instance to size the pages of a statement.
+     *
+     * @param account    The account whose transactions are counted.
+     * @param fromMillis Start of the range in milliseconds since the Unix epoch, inclusive.
+     * @param toMillis   End of the range in milliseconds since the Unix epoch, exclusive.
+     * @return The number of transactions within the range.
+     */
+    public int countAccountTransactions(Account account, long fromMillis, long toMillis) {
+        return transactionManager.countAccountTransactions(account.getId(), fromMillis, toMillis);
+    }
+
+    /**
+     * Walks the transactions of an account in the order they were recorded, through a single reused view.
+     *
+     * @param account The account whose transactions are walked.
+     * @param action  The action applied to each transaction, it must not keep the view once it returns.
      */
-    public List<Transaction> getAccountTransactions(Account account) {
-        return transactionManager.getTransactions().stream().filter(transaction -> transaction.getAccountId().equals(account.getId()) || ((TransferTransaction) transaction).getRecipientAccountId().equals(account.getId())).collect(Collectors.toList());
+    public void forEachAccountTransaction(Account account, Consumer<TransactionView> action) {
+        transactionManager.forEachAccountTransaction(account.getId(), action);
     }
 
     /**
@@ -184,12 +815,38 @@ class Bank {
      * @param ownerId The account's owner ID.
      * @param accountType The account type.
      * @return The newly created account.
+     * @throws IllegalArgumentException If the bank is journaled and the account name is too long to journal.
      */
     public Account createAccount(
             String accountName,
             String ownerId,
             AccountType accountType) {
-        return accountManager.createAccount(accountName, ownerId, accountType);
+        if (transactionJournal != null && !TransactionJournal.isJournalable(accountName)) {
+            throw new IllegalArgumentException("Account name is too long to journal");
+        }
+        // Open and journal the account inside a ledger update, so a checkpoint either covers both or neither
+        Account account;
+        CompletableFuture<Void> commit = null;
+        if (changeTracker != null) {
+            changeTracker.enter();
+        }
+        try {
+            account = accountManager.createAccount(accountName, ownerId, accountType);
+            if (transactionJournal != null) {
+                commit = transactionJournal.appendAccountOpened(account);
+            }
+            if (changeTracker != null) {
+                changeTracker.accountChanged(account.getId());
+            }
+        } finally {
+            if (changeTracker != null) {
+                changeTracker.exit();
+            }
+        }
+        if (commit != null) {
+            TransactionJournal.await(commit);
+        }
+        return account;
     }
 
 
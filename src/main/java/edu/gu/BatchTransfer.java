@@ -0,0 +1,142 @@
+package edu.gu;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Types of a batch transfer: its legs, how failing legs are handled and the per-leg outcome.
+ */
+public final class BatchTransfer {
+    private BatchTransfer() {
+    }
+
+    /**
+     * How a batch handles legs that cannot be executed.
+     */
+    public enum Mode {
+        // Execute every leg or none of them
+        ALL_OR_NOTHING,
+        // Execute every leg that can be executed and report the others
+        BEST_EFFORT
+    }
+
+    /**
+     * One transfer of a batch, between two accounts identified by their account numbers.
+     */
+    public static final class Leg {
+        private final String senderAccountNumber;
+        private final String recipientAccountNumber;
+        private final long amount;
+
+        /**
+         * Constructs a Leg.
+         *
+         * @param senderAccountNumber    The account number of the sender.
+         * @param recipientAccountNumber The account number of the recipient.
+         * @param amount                 The amount of the transfer in minor units.
+         */
+        public Leg(String senderAccountNumber, String recipientAccountNumber, long amount) {
+            this.senderAccountNumber = senderAccountNumber;
+            this.recipientAccountNumber = recipientAccountNumber;
+            this.amount = amount;
+        }
+
+        // Account number of the sender
+        public String getSenderAccountNumber() {
+            return senderAccountNumber;
+        }
+
+        // Account number of the recipient
+        public String getRecipientAccountNumber() {
+            return recipientAccountNumber;
+        }
+
+        // Amount of the transfer in minor units
+        public long getAmount() {
+            return amount;
+        }
+    }
+
+    /**
+     * Outcome of a batch, leg by leg in the order the legs were given.
+     */
+    public static final class Result {
+        private final Transaction[] transactions;
+        private final String[] failures;
+
+        Result(Transaction[] transactions, String[] failures) {
+            this.transactions = transactions;
+            this.failures = failures;
+        }
+
+        /**
+         * Retrieves the number of legs of the batch.
+         *
+         * @return The number of legs.
+         */
+        public int getLegCount() {
+            return transactions.length;
+        }
+
+        /**
+         * Checks whether a leg was executed.
+         *
+         * @param leg The index of the leg.
+         * @return True if the leg was executed; false otherwise.
+         */
+        public boolean isExecuted(int leg) {
+            return transactions[leg] != null;
+        }
+
+        /**
+         * Retrieves the transaction recorded for a leg.
+         *
+         * @param leg The index of the leg.
+         * @return The transfer transaction, or null if the leg was not executed.
+         */
+        public Transaction getTransaction(int leg) {
+            return transactions[leg];
+        }
+
+        /**
+         * Retrieves the reason a leg was not executed.
+         *
+         * @param leg The index of the leg.
+         * @return The reason, or null if the leg was executed.
+         */
+        public String getFailure(int leg) {
+            return failures[leg];
+        }
+
+        /**
+         * Retrieves the transactions recorded for the executed legs.
+         *
+         * @return The transfer transactions, in leg order.
+         */
+        public List<Transaction> getTransactions() {
+            List<Transaction> executed = new ArrayList<>();
+            for (Transaction transaction : transactions) {
+                if (transaction != null) {
+                    executed.add(transaction);
+                }
+            }
+            return Collections.unmodifiableList(executed);
+        }
+
+        /**
+         * Retrieves the number of executed legs.
+         *
+         * @return The number of executed legs.
+         */
+        public int getExecutedCount() {
+            int executed = 0;
+            for (Transaction transaction : transactions) {
+                if (transaction != null) {
+                    executed++;
+                }
+            }
+            return executed;
+        }
+    }
+}
@@ -0,0 +1,580 @@
+package edu.gu;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Imports users and accounts in bulk, for onboarding a migrated customer base.
+ * <p>
+ * Records are read into batches on the calling thread. Each batch is validated on a {@link ForkJoinPool} by
+ * splitting it into leaves, which check the fields and claim the usernames, emails, identifiers and account
+ * numbers atomically in the managers' indexes, so duplicates are rejected however the batch is split. The
+ * accepted records of a batch are then appended to the managers in one go, while the next batch is being read.
+ * <p>
+ * The accepted accounts of a batch are journaled with a single append, and each batch is registered inside a
+ * ledger update, so a snapshot cut either covers a batch, its journal records included, or none of it.
+ * Imported users, like users registered one at a time, are only persisted by snapshots.
+ * <p>
+ * Batches run one after the other, so an account is accepted only if its owner is imported in an earlier
+ * batch or already registered. Every rejected record is counted, and the first ones are kept with their reason.
+ */
+public class BulkImporter {
+    // Number of records in a batch when none is specified
+    static final int DEFAULT_BATCH_SIZE = 65_536;
+
+    // Number of rejections kept in the report when none is specified
+    static final int DEFAULT_MAX_REJECTIONS = 1_000;
+
+    // Number of records a fork-join leaf validates on its own
+    private static final int LEAF_SIZE = 1_024;
+
+    private final AuthenticationManager authenticationManager;
+    private final AccountManager accountManager;
+
+    // Journal the imported accounts are appended to, or null when not journaling
+    private final TransactionJournal journal;
+
+    // Tracker the imported records are reported to so the next snapshot writes them, or null
+    private final ChangeTracker changeTracker;
+
+    // Pool the batches are validated on
+    private final ForkJoinPool pool;
+
+    private final int batchSize;
+    private final int maxRejections;
+
+    // Readers binding a single JSON object to a user or an account record
+    private final ObjectReader userReader;
+    private final ObjectReader accountReader;
+
+    /**
+     * Constructs a BulkImporter.
+     *
+     * @param authenticationManager The manager users are imported into.
+     * @param accountManager        The manager accounts are imported into.
+     * @param journal               The journal imported accounts are appended to, or null.
+     * @param changeTracker         The tracker imported records are reported to, or null.
+     * @param pool                  The pool batches are validated on.
+     * @param batchSize             The number of records in a batch.
+     * @param maxRejections         The number of rejections kept in the report.
+     */
+    BulkImporter(AuthenticationManager authenticationManager, AccountManager accountManager, TransactionJournal journal,
+                 ChangeTracker changeTracker, ForkJoinPool pool, int batchSize, int maxRejections) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.authenticationManager = authenticationManager;
+        this.accountManager = accountManager;
+        this.journal = journal;
+        this.changeTracker = changeTracker;
+        this.pool = pool;
+        this.batchSize = batchSize;
+        this.maxRejections = maxRejections;
+        ObjectMapper mapper = new ObjectMapper();
+        this.userReader = mapper.readerFor(UserRecord.class);
+        this.accountReader = mapper.readerFor(AccountRecord.class);
+    }
+
+    /**
+     * Imports the users and then the accounts of the given record streams.
+     *
+     * @param users    The user records.
+     * @param accounts The account records.
+     * @return The import report.
+     */
+    public ImportReport importRecords(Iterator<UserRecord> users, Iterator<AccountRecord> accounts) {
+        Run run = new Run();
+        while (users.hasNext()) {
+            run.addUser(users.next());
+        }
+        while (accounts.hasNext()) {
+            run.addAccount(accounts.next());
+        }
+        return run.finish();
+    }
+
+    /**
+     * Imports the users and accounts of a file in the layout of data.json, streamed in file order.
+     *
+     * @param file The file to import.
+     * @return The import report.
+     * @throws IOException If the file cannot be read or is not valid JSON.
+     */
+    public ImportReport importFile(Path file) throws IOException {
+        Run run = new Run();
+        try (JsonParser parser = userReader.getFactory().createParser(file.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Import file must start with an object: " + file);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("users".equals(field) && value == JsonToken.START_ARRAY) {
+                    // A null element reads as a null record, rejected like any invalid one
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        run.addUser(userReader.readValue(parser, UserRecord.class));
+                    }
+                } else if ("accounts".equals(field) && value == JsonToken.START_ARRAY) {
+                    // A null element reads as a null record, rejected like any invalid one
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        run.addAccount(accountReader.readValue(parser, AccountRecord.class));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return run.finish();
+    }
+
+    // Reason a user record is invalid, or null if it is valid and its keys were claimed
+    private String importUser(UserRecord record, User[] accepted, int index) {
+        if (record == null) {
+            // A null element of the array
+            return "Missing record";
+        }
+        if (isBlank(record.id)) {
+            return "Missing id";
+        }
+        if (isBlank(record.username)) {
+            return "Missing username";
+        }
+        if (isBlank(record.password)) {
+            return "Missing password";
+        }
+        if (isBlank(record.email) || record.email.indexOf('@') < 0) {
+            return "Invalid email '" + record.email + "'";
+        }
+        User.Role role;
+        try {
+            role = User.Role.valueOf(record.role);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return "Unknown role '" + record.role + "'";
+        }
+        User user = new User(record.id, record.username, record.password, record.email, role);
+        String rejection = authenticationManager.importUser(user);
+        if (rejection == null) {
+            accepted[index] = user;
+        }
+        return rejection;
+    }
+
+    // Reason an account record is invalid, or null if it is valid and its keys were claimed
+    private String importAccount(AccountRecord record, Account[] accepted, int index) {
+        if (record == null) {
+            // A null element of the array
+            return "Missing record";
+        }
+        if (isBlank(record.id)) {
+            return "Missing id";
+        }
+        if (isBlank(record.accountNumber)) {
+            return "Missing account number";
+        }
+        if (isBlank(record.accountName)) {
+            return "Missing account name";
+        }
+        if (journal != null && (!TransactionJournal.isJournalable(record.id)
+                || !TransactionJournal.isJournalable(record.accountName)
+                || !TransactionJournal.isJournalable(record.ownerId))) {
+            return "Id, account name or owner too long to journal";
+        }
+        AccountType accountType;
+        try {
+            accountType = AccountType.valueOf(record.accountType);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return "Unknown account type '" + record.accountType + "'";
+        }
+        long balance;
+        try {
+            balance = record.balance == null ? 0 : Money.parse(record.balance);
+        } catch (IllegalArgumentException e) {
+            return "Invalid balance '" + record.balance + "'";
+        }
+        if (balance < 0) {
+            return "Negative balance '" + record.balance + "'";
+        }
+        if (isBlank(record.ownerId) || authenticationManager.getUserById(record.ownerId) == null) {
+            return "Unknown owner '" + record.ownerId + "'";
+        }
+        Account account = new Account(record.id, record.accountNumber, record.accountName, accountType,
+                record.ownerId, balance);
+        String rejection = accountManager.importAccount(account);
+        if (rejection == null) {
+            accepted[index] = account;
+        }
+        return rejection;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * State of one import: the batch being read, the batch being validated and the running totals.
+     * The totals are only updated by one batch at a time.
+     */
+    private final class Run {
+        private final long startNanos = System.nanoTime();
+        private final List<Rejection> rejections = new ArrayList<>();
+
+        private UserRecord[] userBatch;
+        private AccountRecord[] accountBatch;
+        private int batchLength;
+
+        // Number of records read so far, used as the position of a rejected record
+        private long position;
+
+        // Batch being validated while the next one is read
+        private ForkJoinTask<?> pending;
+
+        private long importedUsers;
+        private long importedAccounts;
+        private long rejected;
+
+        void addUser(UserRecord record) {
+            if (accountBatch != null) {
+                flush();
+            }
+            if (userBatch == null) {
+                userBatch = new UserRecord[batchSize];
+            }
+            userBatch[batchLength++] = record;
+            if (batchLength == batchSize) {
+                flush();
+            }
+        }
+
+        void addAccount(AccountRecord record) {
+            if (userBatch != null) {
+                flush();
+            }
+            if (accountBatch == null) {
+                accountBatch = new AccountRecord[batchSize];
+            }
+            accountBatch[batchLength++] = record;
+            if (batchLength == batchSize) {
+                flush();
+            }
+        }
+
+        // Wait for the previous batch, then hand the current one to the pool
+        private void flush() {
+            await();
+            long firstPosition = position;
+            int length = batchLength;
+            position += length;
+            if (userBatch != null) {
+                UserRecord[] records = userBatch;
+                pending = pool.submit(() -> validateUsers(records, length, firstPosition));
+            } else if (accountBatch != null) {
+                AccountRecord[] records = accountBatch;
+                pending = pool.submit(() -> validateAccounts(records, length, firstPosition));
+            }
+            userBatch = null;
+            accountBatch = null;
+            batchLength = 0;
+        }
+
+        private void await() {
+            if (pending != null) {
+                pending.join();
+                pending = null;
+            }
+        }
+
+        ImportReport finish() {
+            flush();
+            await();
+            return new ImportReport(importedUsers, importedAccounts, rejected,
+                    Collections.unmodifiableList(rejections), System.nanoTime() - startNanos);
+        }
+
+        private void validateUsers(UserRecord[] records, int length, long firstPosition) {
+            String[] reasons = new String[length];
+            User[] accepted = new User[length];
+            new Leaves(length, index -> reasons[index] = importUser(records[index], accepted, index)).invoke();
+
+            List<User> users = new ArrayList<>(length);
+            for (int index = 0; index < length; index++) {
+                if (accepted[index] != null) {
+                    users.add(accepted[index]);
+                } else {
+                    reject(firstPosition + index, "user", records[index] == null ? null : records[index].id, reasons[index]);
+                }
+            }
+            enterUpdate();
+            try {
+                if (changeTracker != null) {
+                    users.forEach(changeTracker::userCreated);
+                }
+                authenticationManager.addImportedUsers(users);
+            } finally {
+                exitUpdate();
+            }
+            importedUsers += users.size();
+        }
+
+        private void validateAccounts(AccountRecord[] records, int length, long firstPosition) {
+            String[] reasons = new String[length];
+            Account[] accepted = new Account[length];
+            new Leaves(length, index -> reasons[index] = importAccount(records[index], accepted, index)).invoke();
+
+            List<Account> accounts = new ArrayList<>(length);
+            for (int index = 0; index < length; index++) {
+                if (accepted[index] != null) {
+                    accounts.add(accepted[index]);
+                } else {
+                    reject(firstPosition + index, "account", records[index] == null ? null : records[index].id, reasons[index]);
+                }
+            }
+            CompletableFuture<Void> commit = null;
+            enterUpdate();
+            try {
+                if (journal != null) {
+                    commit = journal.appendAccountsOpened(accounts);
+                }
+                if (changeTracker != null) {
+                    for (Account account : accounts) {
+                        changeTracker.accountChanged(account.getId());
+                    }
+                }
+                accountManager.addImportedAccounts(accounts);
+            } finally {
+                exitUpdate();
+            }
+            // Wait for durability outside the update, so a cut is not held back by the commit
+            if (commit != null) {
+                TransactionJournal.await(commit);
+            }
+            importedAccounts += accounts.size();
+        }
+
+        // Enter a ledger update a snapshot cut will not split
+        private void enterUpdate() {
+            if (changeTracker != null) {
+                changeTracker.enter();
+            }
+        }
+
+        private void exitUpdate() {
+            if (changeTracker != null) {
+                changeTracker.exit();
+            }
+        }
+
+        private void reject(long recordPosition, String kind, String id, String reason) {
+            rejected++;
+            if (rejections.size() < maxRejections) {
+                rejections.add(new Rejection(recordPosition, kind, id, reason == null ? "Missing record" : reason));
+            }
+        }
+    }
+
+    /**
+     * Applies an action to every index of a batch, splitting the range in halves down to leaves of
+     * {@link #LEAF_SIZE} indexes that run in parallel.
+     */
+    private static final class Leaves extends RecursiveAction {
+        private final int from;
+        private final int to;
+        private final IndexAction action;
+
+        Leaves(int length, IndexAction action) {
+            this(0, length, action);
+        }
+
+        private Leaves(int from, int to, IndexAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int index = from; index < to; index++) {
+                    action.apply(index);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Leaves(from, middle, action), new Leaves(middle, to, action));
+        }
+    }
+
+    // Action applied to one index of a batch
+    private interface IndexAction {
+        void apply(int index);
+    }
+
+    /**
+     * A user record to import, with its fields as found in the source.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static final class UserRecord {
+        private final String id;
+        private final String username;
+        private final String password;
+        private final String email;
+        private final String role;
+
+        @JsonCreator
+        public UserRecord(
+                @JsonProperty("id") String id,
+                @JsonProperty("username") String username,
+                @JsonProperty("password") String password,
+                @JsonProperty("email") String email,
+                @JsonProperty("role") String role
+        ) {
+            this.id = id;
+            this.username = username;
+            this.password = password;
+            this.email = email;
+            this.role = role;
+        }
+    }
+
+    /**
+     * An account record to import, with its fields as found in the source.
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static final class AccountRecord {
+        private final String id;
+        private final String accountNumber;
+        private final String accountName;
+        private final String accountType;
+        private final String ownerId;
+        private final String balance;
+
+        @JsonCreator
+        public AccountRecord(
+                @JsonProperty("id") String id,
+                @JsonProperty("accountNumber") String accountNumber,
+                @JsonProperty("accountName") String accountName,
+                @JsonProperty("accountType") String accountType,
+                @JsonProperty("ownerId") String ownerId,
+                @JsonProperty("balance") String balance
+        ) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.accountName = accountName;
+            this.accountType = accountType;
+            this.ownerId = ownerId;
+            this.balance = balance;
+        }
+    }
+
+    /**
+     * A record that was not imported, and why.
+     */
+    public static final class Rejection {
+        private final long position;
+        private final String kind;
+        private final String id;
+        private final String reason;
+
+        Rejection(long position, String kind, String id, String reason) {
+            this.position = position;
+            this.kind = kind;
+            this.id = id;
+            this.reason = reason;
+        }
+
+        // Position of the record in the import, starting at 0
+        public long getPosition() {
+            return position;
+        }
+
+        // Kind of the record, user or account
+        public String getKind() {
+            return kind;
+        }
+
+        // Identifier of the record, if it has one
+        public String getId() {
+            return id;
+        }
+
+        // Reason the record was rejected
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %s %s: %s", position, kind, id, reason);
+        }
+    }
+
+    /**
+     * Summary of a completed import.
+     */
+    public static final class ImportReport {
+        private final long users;
+        private final long accounts;
+        private final long rejected;
+        private final List<Rejection> rejections;
+        private final long elapsedNanos;
+
+        ImportReport(long users, long accounts, long rejected, List<Rejection> rejections, long elapsedNanos) {
+            this.users = users;
+            this.accounts = accounts;
+            this.rejected = rejected;
+            this.rejections = rejections;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Number of users imported
+        public long getUsers() {
+            return users;
+        }
+
+        // Number of accounts imported
+        public long getAccounts() {
+            return accounts;
+        }
+
+        // Number of records rejected
+        public long getRejected() {
+            return rejected;
+        }
+
+        // The first rejected records, in import order
+        public List<Rejection> getRejections() {
+            return rejections;
+        }
+
+        // Number of records read, imported or rejected
+        public long getRecords() {
+            return users + accounts + rejected;
+        }
+
+        // Import rate in records read per second
+        public double getRecordsPerSecond() {
+            return StreamingDataLoader.LoadReport.rate(getRecords(), elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d users and %d accounts, rejected %d records, in %.1f s (%.0f records/s)",
+                    users, accounts, rejected, elapsedNanos / 1_000_000_000.0, getRecordsPerSecond());
+        }
+    }
+}
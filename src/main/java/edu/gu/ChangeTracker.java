@@ -0,0 +1,243 @@
+package edu.gu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Tracks what changed since the last snapshot, so a snapshot only rewrites the accounts and mortgage applications
+ * that changed and appends the users and transactions that are new.
+ * <p>
+ * New transactions are tracked as a range of the history log rather than kept on the heap: every recorded
+ * transaction is appended to the log inside a ledger update, so the log end at a cut separates the
+ * transactions of that cut from those of the next one, however long the interval between cuts.
+ * <p>
+ * Ledger updates run inside {@link #enter()} and {@link #exit()}, which share a read lock. Taking a
+ * {@link #cut(Function, TransactionJournal)} holds the write lock only while the changed accounts are copied,
+ * so the pause is proportional to the write volume since the last snapshot, not to the size of the bank.
+ */
+public class ChangeTracker {
+    // Read-locked by ledger updates, write-locked while a cut is taken
+    private final ReentrantReadWriteLock cutLock = new ReentrantReadWriteLock();
+
+    // Identifiers of the accounts whose balance changed or that were opened since the last cut
+    private volatile Set<String> changedAccountIds = ConcurrentHashMap.newKeySet();
+
+    // Log the recorded transactions are appended to
+    private final TransactionLog historyLog;
+
+    // End address of the history log at the last cut, the transactions appended after it are new, guarded by cutLock
+    private long transactionsFrom;
+
+    // Users registered since the last cut
+    private final Queue<User> newUsers = new ConcurrentLinkedQueue<>();
+
+    // Identifiers of the mortgage applications submitted, referred or whose status changed since the last cut
+    private volatile Set<String> changedApplicationIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructs a ChangeTracker tracking the transactions recorded in the given log.
+     *
+     * @param historyLog The log every recorded transaction is appended to.
+     */
+    public ChangeTracker(TransactionLog historyLog) {
+        this.historyLog = historyLog;
+        this.transactionsFrom = historyLog.getEndAddress();
+    }
+
+    /**
+     * Enters a ledger update, which a cut will not split.
+     */
+    public void enter() {
+        cutLock.readLock().lock();
+    }
+
+    /**
+     * Exits a ledger update.
+     */
+    public void exit() {
+        cutLock.readLock().unlock();
+    }
+
+    /**
+     * Marks an account as changed, called inside a ledger update.
+     *
+     * @param accountId The unique identifier of the changed account.
+     */
+    public void accountChanged(String accountId) {
+        changedAccountIds.add(accountId);
+    }
+
+    /**
+     * Treats the transactions in the history log so far as already snapshotted, called once the snapshots
+     * restored them at startup.
+     */
+    public void transactionsRestored() {
+        cutLock.writeLock().lock();
+        try {
+            transactionsFrom = historyLog.getEndAddress();
+        } finally {
+            cutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records a newly registered user.
+     *
+     * @param user The registered user.
+     */
+    public void userCreated(User user) {
+        newUsers.add(user);
+    }
+
+    /**
+     * Marks a mortgage application as changed, called once it was submitted, referred or its status changed.
+     *
+     * @param applicationId The unique identifier of the changed application.
+     */
+    public void applicationChanged(String applicationId) {
+        changedApplicationIds.add(applicationId);
+    }
+
+    /**
+     * Takes a consistent point-in-time copy of everything that changed since the previous cut and starts tracking anew.
+     *
+     * @param accounts     Resolves an account by its unique identifier.
+     * @param applications Resolves a mortgage application by its unique identifier.
+     * @param journal      The journal whose position the cut covers, or null when the ledger is not journaled.
+     * @return The changes since the previous cut.
+     */
+    public Cut cut(Function<String, Account> accounts, Function<String, MortgageApplication> applications,
+                   TransactionJournal journal) {
+        cutLock.writeLock().lock();
+        try {
+            Set<String> changed = changedAccountIds;
+            changedAccountIds = ConcurrentHashMap.newKeySet();
+
+            // Copy the changed accounts, the copies keep the balances of the cut while the originals move on
+            List<Account> accountCopies = new ArrayList<>(changed.size());
+            for (String accountId : changed) {
+                Account account = accounts.apply(accountId);
+                if (account != null) {
+                    accountCopies.add(new Account(account.getId(), account.getAccountNumber(), account.getAccountName(),
+                            account.getAccountType(), account.getOwnerId(), account.getBalance()));
+                }
+            }
+
+            // A status or referral changes before the application is marked, so a mark taken here sees the change
+            Set<String> changedApplications = changedApplicationIds;
+            changedApplicationIds = ConcurrentHashMap.newKeySet();
+            List<MortgageApplication> applicationCopies = new ArrayList<>(changedApplications.size());
+            for (String applicationId : changedApplications) {
+                MortgageApplication application = applications.apply(applicationId);
+                if (application != null) {
+                    applicationCopies.add(new MortgageApplication(application.getId(), application.getApplicant(),
+                            application.getPropertyValue(), application.getLoanAmount(), application.getInterestRate(),
+                            application.getApplicationStatus(), application.getSubmittedMillis(),
+                            application.isReferred()));
+                }
+            }
+
+            long transactionsTo = historyLog.getEndAddress();
+            Cut cut = new Cut(drain(newUsers), accountCopies, applicationCopies, historyLog, transactionsFrom,
+                    transactionsTo, journal == null ? 0 : journal.getRecordCount());
+            transactionsFrom = transactionsTo;
+            return cut;
+        } finally {
+            cutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges back the changes of a cut that could not be written, so the next cut captures them again.
+     * Must be called before any later cut is taken.
+     *
+     * @param cut The cut that was not written.
+     */
+    public void revert(Cut cut) {
+        cutLock.writeLock().lock();
+        try {
+            // The next cut copies the current balances of these accounts, which include the reverted changes
+            for (Account account : cut.accounts) {
+                changedAccountIds.add(account.getId());
+            }
+            for (MortgageApplication application : cut.applications) {
+                changedApplicationIds.add(application.getId());
+            }
+            newUsers.addAll(cut.users);
+            transactionsFrom = cut.transactionsFrom;
+        } finally {
+            cutLock.writeLock().unlock();
+        }
+    }
+
+    // Move the queued elements to a list
+    private static <T> List<T> drain(Queue<T> queue) {
+        List<T> drained = new ArrayList<>();
+        for (T element = queue.poll(); element != null; element = queue.poll()) {
+            drained.add(element);
+        }
+        return drained;
+    }
+
+    /**
+     * Changes captured between two cuts.
+     */
+    public static final class Cut {
+        private final List<User> users;
+        private final List<Account> accounts;
+        private final List<MortgageApplication> applications;
+        private final TransactionLog historyLog;
+        private final long transactionsFrom;
+        private final long transactionsTo;
+        private final long journalRecords;
+
+        Cut(List<User> users, List<Account> accounts, List<MortgageApplication> applications, TransactionLog historyLog,
+            long transactionsFrom, long transactionsTo, long journalRecords) {
+            this.users = users;
+            this.accounts = accounts;
+            this.applications = applications;
+            this.historyLog = historyLog;
+            this.transactionsFrom = transactionsFrom;
+            this.transactionsTo = transactionsTo;
+            this.journalRecords = journalRecords;
+        }
+
+        // Users registered since the previous cut
+        public List<User> getUsers() {
+            return users;
+        }
+
+        // Copies of the accounts that changed since the previous cut, with their balances at the cut
+        public List<Account> getAccounts() {
+            return accounts;
+        }
+
+        // Copies of the mortgage applications submitted or whose status changed since the previous cut, with their
+        // status at the cut
+        public List<MortgageApplication> getMortgageApplications() {
+            return applications;
+        }
+
+        // Walk the transactions recorded since the previous cut, in record order, read from the history log
+        public void forEachTransaction(Consumer<TransactionView> action) {
+            historyLog.forEach(transactionsFrom, transactionsTo, action);
+        }
+
+        // Whether a transaction was recorded since the previous cut
+        public boolean hasTransactions() {
+            return transactionsFrom != transactionsTo;
+        }
+
+        // Number of journal records the cut covers
+        public long getJournalRecords() {
+            return journalRecords;
+        }
+    }
+}
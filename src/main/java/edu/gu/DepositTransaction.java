@@ -12,14 +12,27 @@ public class DepositTransaction extends Transaction {
      * Constructs a DepositTransaction object.
      *
      * @param accountId The unique identifier of the account involved in the deposit.
-     * @param amount    The amount of the deposit.
+     * @param amount    The amount of the deposit in minor units.
      */
-    public DepositTransaction(String accountId, double amount) {
+    public DepositTransaction(String accountId, long amount) {
         // Call the constructor of the superclass (Transaction)
         super(TransactionType.DEPOSIT, amount, accountId);
         this.accountId = accountId;
     }
 
+    /**
+     * Restores a DepositTransaction read back from the journal.
+     *
+     * @param id        The original unique identifier of the transaction.
+     * @param timestamp The original timestamp of the transaction, in milliseconds since the Unix epoch.
+     * @param accountId The unique identifier of the account involved in the deposit.
+     * @param amount    The amount of the deposit in minor units.
+     */
+    DepositTransaction(long id, long timestamp, String accountId, long amount) {
+        super(id, timestamp, TransactionType.DEPOSIT, amount, accountId);
+        this.accountId = accountId;
+    }
+
     /**
      * Retrieves the account ID associated with the deposit transaction.
      *
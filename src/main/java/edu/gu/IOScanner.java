@@ -30,6 +30,16 @@ public class IOScanner {
         return scanner.nextDouble();
     }
 
+    /**
+     * Reads a decimal money amount from the console.
+     *
+     * @return The amount entered by the user in minor units.
+     * @throws IllegalArgumentException If the input is not a valid amount.
+     */
+    public static long readAmount() {
+        return Money.parse(scanner.next());
+    }
+
     /**
      * Reads a line of text from the console.
      *
@@ -15,11 +15,12 @@ public interface ITransactionManager {
      * @param senderAccount    The account initiating the transaction.
      * @param recipientAccount The account receiving the transaction.
      * @param transactionType  The type of transaction (e.g., deposit, withdrawal, transfer).
-     * @param amount           The amount involved in the transaction.
+     * @param amount           The amount involved in the transaction in minor units.
+     * @return The recorded transaction.
      * @throws InsufficientFundsException If there are insufficient funds in the sender account.
      * @throws AccountInactiveException   If either the sender or recipient account is inactive.
      */
-    void recordTransaction(Account senderAccount, Account recipientAccount, TransactionType transactionType, double amount)
+    Transaction recordTransaction(Account senderAccount, Account recipientAccount, TransactionType transactionType, long amount)
             throws InsufficientFundsException, AccountInactiveException;
 
     /**
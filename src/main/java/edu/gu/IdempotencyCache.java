@@ -0,0 +1,183 @@
+package edu.gu;
+
+import edu.gu.exceptions.AccountInactiveException;
+import edu.gu.exceptions.InsufficientFundsException;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Remembers the transactions recorded for recent idempotency keys, so a retried request returns the
+ * original transaction instead of executing again.
+ * <p>
+ * The first request with a key claims it atomically and executes. Concurrent duplicates wait for its
+ * outcome, later duplicates get the recorded transaction straight away. A request rejected by validation
+ * releases its key, as it changed no balance, so it may be retried. Any other failure, such as the journal
+ * failing after the balances changed, is kept as the outcome of the key and replayed to duplicates.
+ * <p>
+ * Keys are kept in insertion order and evicted once they are older than the time to live or when more than
+ * the maximum number of keys are held, so memory stays bounded under any load.
+ */
+public class IdempotencyCache {
+    // Defaults of the cache bounds
+    static final int DEFAULT_MAX_KEYS = 100_000;
+    static final long DEFAULT_TIME_TO_LIVE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    // Entries keyed by idempotency key
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    // Entries in insertion order, for eviction
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    // Number of entries in the insertion order queue
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final int maxKeys;
+    private final long timeToLiveNanos;
+
+    /**
+     * Constructs an IdempotencyCache with the default bounds.
+     */
+    public IdempotencyCache() {
+        this(DEFAULT_MAX_KEYS, DEFAULT_TIME_TO_LIVE_MILLIS);
+    }
+
+    /**
+     * Constructs an IdempotencyCache.
+     *
+     * @param maxKeys          Maximum number of keys remembered.
+     * @param timeToLiveMillis Time a key is remembered for.
+     */
+    public IdempotencyCache(int maxKeys, long timeToLiveMillis) {
+        if (maxKeys <= 0 || timeToLiveMillis <= 0) {
+            throw new IllegalArgumentException("Maximum number of keys and time to live must be greater than 0");
+        }
+        this.maxKeys = maxKeys;
+        this.timeToLiveNanos = TimeUnit.MILLISECONDS.toNanos(timeToLiveMillis);
+    }
+
+    /**
+     * Executes a request once per idempotency key.
+     *
+     * @param key         The idempotency key chosen by the client, or null to execute without deduplication.
+     * @param fingerprint A description of the request, a key reused for a different request is rejected.
+     * @param request     The request to execute.
+     * @return The transaction recorded by the request, or by the first request with the same key.
+     * @throws InsufficientFundsException If the request fails for lack of funds.
+     * @throws AccountInactiveException   If the request fails for an inactive account.
+     * @throws IllegalArgumentException   If the key was used for a different request.
+     */
+    public Transaction execute(String key, String fingerprint, Request request)
+            throws InsufficientFundsException, AccountInactiveException {
+        if (key == null) {
+            return request.execute();
+        }
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, fingerprint, now);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, entry)) != null) {
+            if (now - existing.createdNanos <= timeToLiveNanos) {
+                if (!existing.fingerprint.equals(fingerprint)) {
+                    throw new IllegalArgumentException("Idempotency key '" + key + "' was used for a different request");
+                }
+                return awaitOutcome(existing);
+            }
+            // The key expired but was not evicted yet
+            entries.remove(key, existing);
+        }
+
+        insertionOrder.add(entry);
+        size.incrementAndGet();
+        evict(now);
+
+        try {
+            Transaction transaction = request.execute();
+            entry.outcome.complete(transaction);
+            return transaction;
+        } catch (InsufficientFundsException | AccountInactiveException | IllegalArgumentException e) {
+            // Nothing was recorded, release the key so the request can be retried
+            entries.remove(key, entry);
+            entry.outcome.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            entry.outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the number of keys currently remembered.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    // Drop the oldest entries while they are expired or the cache holds too many
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (size.get() > maxKeys || now - oldest.createdNanos > timeToLiveNanos)) {
+            // Another thread may have evicted the peeked entry meanwhile, the one polled is as old
+            Entry evicted = insertionOrder.poll();
+            if (evicted != null) {
+                size.decrementAndGet();
+                entries.remove(evicted.key, evicted);
+            }
+        }
+    }
+
+    // Wait for the outcome of the request that claimed the key and replay it
+    private static Transaction awaitOutcome(Entry entry) throws InsufficientFundsException, AccountInactiveException {
+        try {
+            return entry.outcome.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InsufficientFundsException) {
+                throw (InsufficientFundsException) cause;
+            }
+            if (cause instanceof AccountInactiveException) {
+                throw (AccountInactiveException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A request recording a transaction.
+     */
+    public interface Request {
+        /**
+         * Executes the request.
+         *
+         * @return The recorded transaction.
+         * @throws InsufficientFundsException If there are insufficient funds.
+         * @throws AccountInactiveException   If an account is inactive.
+         */
+        Transaction execute() throws InsufficientFundsException, AccountInactiveException;
+    }
+
+    // Outcome of the first request with a key
+    private static final class Entry {
+        private final String key;
+        private final String fingerprint;
+        private final long createdNanos;
+        private final CompletableFuture<Transaction> outcome = new CompletableFuture<>();
+
+        Entry(String key, String fingerprint, long createdNanos) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+            this.createdNanos = createdNanos;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package edu.gu;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * End-of-day interest accrual: credits a day of interest to every account whose type earns interest, as
+ * {@link DepositTransaction}s recorded in batches with a single journal append each.
+ * <p>
+ * The accounts are split into a fixed number of partitions by the hash of their identifier, and the
+ * partitions are credited in parallel on a {@link ForkJoinPool} of their own, see {@link #newPool(int)}, since
+ * a partition blocks on a checkpoint fsync and a journal commit per batch. Each partition durably records its
+ * progress in an {@link AccrualCheckpoint}, so a run interrupted midway, by a crash or a shutdown, is resumed from the last
+ * committed batch once the journal has been recovered, and running a day again never credits an account twice.
+ * Interest is computed on the balance of an account when its batch is credited.
+ */
+public class InterestAccrualEngine {
+    // Number of accounts credited with a single journal append when none is specified
+    static final int DEFAULT_BATCH_SIZE = 4_096;
+
+    // Number of partitions the accounts are split into, fixed so a resumed run splits them the same way
+    static final int PARTITIONS = 256;
+
+    private final AccountManager accountManager;
+    private final TransactionManager transactionManager;
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    // Held while a day is accrued, so two runs never credit the same day concurrently
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    // Rates applied by the next run
+    private volatile InterestRates rates;
+
+    /**
+     * Creates a pool to credit partitions on, with named daemon workers, so the accrual blocks its own
+     * threads only.
+     *
+     * @param parallelism The number of partitions credited at a time.
+     * @return The pool.
+     */
+    public static ForkJoinPool newPool(int parallelism) {
+        AtomicInteger workers = new AtomicInteger();
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            worker.setName("bankea-interest-accrual-" + workers.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        }, null, false);
+    }
+
+    /**
+     * Constructs an InterestAccrualEngine.
+     *
+     * @param accountManager     The manager holding the accounts.
+     * @param transactionManager The manager recording the interest credits.
+     * @param pool               The pool partitions are credited on.
+     * @param rates              The interest rates per account type.
+     * @param batchSize          The number of accounts credited with a single journal append.
+     */
+    public InterestAccrualEngine(AccountManager accountManager, TransactionManager transactionManager,
+                                 ForkJoinPool pool, InterestRates rates, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.accountManager = accountManager;
+        this.transactionManager = transactionManager;
+        this.pool = pool;
+        this.rates = rates;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Replaces the interest rates, applied from the next run on.
+     *
+     * @param rates The new rates.
+     */
+    public void setRates(InterestRates rates) {
+        this.rates = rates;
+    }
+
+    /**
+     * Retrieves the interest rates applied.
+     *
+     * @return The rates.
+     */
+    public InterestRates getRates() {
+        return rates;
+    }
+
+    /**
+     * Credits a day of interest to every account that earns interest and was not credited for that day yet.
+     *
+     * @param date           The day the interest is accrued for.
+     * @param checkpointRoot The directory holding the accrual checkpoints.
+     * @return The report of the run, counting the credits of earlier interrupted runs of the day.
+     * @throws IOException If the checkpoint cannot be read or written.
+     */
+    public AccrualReport accrue(LocalDate date, Path checkpointRoot) throws IOException {
+        runLock.lock();
+        try {
+            long start = System.nanoTime();
+            AccrualCheckpoint checkpoint = AccrualCheckpoint.open(checkpointRoot, date);
+            InterestRates runRates = rates;
+
+            // Group the accounts that earn interest by partition with a counting sort
+            Account[] accounts = accountManager.getAccounts();
+            int[] bounds = new int[PARTITIONS + 1];
+            for (Account account : accounts) {
+                if (runRates.earnsInterest(account.getAccountType())) {
+                    bounds[partitionOf(account.getId()) + 1]++;
+                }
+            }
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                bounds[partition + 1] += bounds[partition];
+            }
+            Account[] grouped = new Account[bounds[PARTITIONS]];
+            int[] next = Arrays.copyOf(bounds, PARTITIONS);
+            for (Account account : accounts) {
+                if (runRates.earnsInterest(account.getAccountType())) {
+                    grouped[next[partitionOf(account.getId())]++] = account;
+                }
+            }
+            // Let the copy be collected while the partitions run, it is as large as the bank
+            accounts = null;
+
+            List<Partition> partitions = new ArrayList<>(PARTITIONS);
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                partitions.add(new Partition(checkpoint, runRates, partition, grouped, bounds[partition], bounds[partition + 1]));
+            }
+            for (Partition partition : partitions) {
+                pool.execute(partition);
+            }
+
+            // Wait for every partition before reporting a failure, so no partition outlives the run
+            long creditedAccounts = 0;
+            long creditedAmount = 0;
+            int resumedPartitions = 0;
+            RuntimeException failure = null;
+            for (Partition partition : partitions) {
+                try {
+                    long[] result = partition.join();
+                    creditedAccounts += result[0];
+                    creditedAmount += result[1];
+                    resumedPartitions += (int) result[2];
+                } catch (RuntimeException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) failure).getCause();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return new AccrualReport(date, grouped.length, creditedAccounts, creditedAmount, resumedPartitions,
+                    System.nanoTime() - start);
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    /**
+     * Completes the runs of earlier days that were interrupted midway, oldest first.
+     *
+     * @param checkpointRoot The directory holding the accrual checkpoints.
+     * @return The reports of the completed runs, empty if no run was interrupted.
+     * @throws IOException If a checkpoint cannot be read or written.
+     */
+    public List<AccrualReport> resumeInterrupted(Path checkpointRoot) throws IOException {
+        List<AccrualReport> reports = new ArrayList<>();
+        for (LocalDate date : AccrualCheckpoint.listDays(checkpointRoot)) {
+            if (!isComplete(AccrualCheckpoint.open(checkpointRoot, date))) {
+                reports.add(accrue(date, checkpointRoot));
+            }
+        }
+        return reports;
+    }
+
+    // Check whether every partition of a day was credited
+    private static boolean isComplete(AccrualCheckpoint checkpoint) throws IOException {
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (!checkpoint.read(partition).complete) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Partition of an account, spreading the hash so the partitions are even
+    private static int partitionOf(String accountId) {
+        int hash = accountId.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), PARTITIONS);
+    }
+
+    // Order accounts are credited in within a partition: by the hash of their identifier, then by identifier,
+    // so most comparisons are between integers
+    private static int compareIds(String first, String second) {
+        int byHash = Integer.compare(first.hashCode(), second.hashCode());
+        return byHash != 0 ? byHash : first.compareTo(second);
+    }
+
+    // Credits the accounts of one partition, returning {accounts credited, interest credited, resumed 0 or 1}
+    private final class Partition extends RecursiveTask<long[]> {
+        private final AccrualCheckpoint checkpoint;
+        private final InterestRates rates;
+        private final int partition;
+        private final Account[] accounts;
+        private final int from;
+        private final int to;
+
+        Partition(AccrualCheckpoint checkpoint, InterestRates rates, int partition, Account[] accounts, int from, int to) {
+            this.checkpoint = checkpoint;
+            this.rates = rates;
+            this.partition = partition;
+            this.accounts = accounts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            try {
+                return credit();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private long[] credit() throws IOException {
+            AccrualCheckpoint.Progress progress = checkpoint.read(partition);
+            if (progress.complete) {
+                return new long[]{progress.creditedAccounts, progress.creditedAmount, 1};
+            }
+            boolean resumed = progress != AccrualCheckpoint.Progress.NOT_STARTED;
+            long creditedAccounts = progress.creditedAccounts;
+            long creditedAmount = progress.creditedAmount;
+
+            // The credits of the batch in flight that reached the journal were recovered with it
+            Set<String> alreadyCredited = new HashSet<>();
+            for (long id : progress.pending) {
+                Transaction credit = transactionManager.findTransaction(id);
+                if (credit != null) {
+                    alreadyCredited.add(credit.getAccountId());
+                    creditedAccounts++;
+                    creditedAmount += credit.getAmount();
+                }
+            }
+
+            Arrays.sort(accounts, from, to, (first, second) -> compareIds(first.getId(), second.getId()));
+            String cursor = progress.cursor;
+            int index = cursor == null ? from : firstAfter(cursor);
+            Account[] batchAccounts = new Account[batchSize];
+            DepositTransaction[] batch = new DepositTransaction[batchSize];
+            while (index < to) {
+                int end = Math.min(index + batchSize, to);
+                int count = 0;
+                long amount = 0;
+                for (; index < end; index++) {
+                    Account account = accounts[index];
+                    long interest = rates.dailyInterest(account.getAccountType(), account.getBalance());
+                    if (interest > 0 && !alreadyCredited.contains(account.getId())) {
+                        batchAccounts[count] = account;
+                        batch[count] = new DepositTransaction(account.getId(), interest);
+                        amount += interest;
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    long[] pending = new long[count];
+                    for (int i = 0; i < count; i++) {
+                        pending[i] = batch[i].getIdValue();
+                    }
+                    // Record the batch in flight before it is journaled, committing the previous one
+                    checkpoint.write(partition, new AccrualCheckpoint.Progress(false, cursor, creditedAccounts,
+                            creditedAmount, pending));
+                    transactionManager.recordDeposits(batchAccounts, batch, count);
+                    creditedAccounts += count;
+                    creditedAmount += amount;
+                    Arrays.fill(batchAccounts, 0, count, null);
+                    Arrays.fill(batch, 0, count, null);
+                }
+                cursor = accounts[end - 1].getId();
+            }
+            checkpoint.write(partition, new AccrualCheckpoint.Progress(true, cursor, creditedAccounts, creditedAmount,
+                    new long[0]));
+            return new long[]{creditedAccounts, creditedAmount, resumed ? 1 : 0};
+        }
+
+        // Position of the first account of the partition ordered after the cursor
+        private int firstAfter(String cursor) {
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareIds(accounts[middle].getId(), cursor) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Outcome of the accrual of a day.
+     */
+    public static final class AccrualReport {
+        private final LocalDate date;
+        private final long eligibleAccounts;
+        private final long creditedAccounts;
+        private final long creditedAmount;
+        private final int resumedPartitions;
+        private final long elapsedNanos;
+
+        AccrualReport(LocalDate date, long eligibleAccounts, long creditedAccounts, long creditedAmount,
+                      int resumedPartitions, long elapsedNanos) {
+            this.date = date;
+            this.eligibleAccounts = eligibleAccounts;
+            this.creditedAccounts = creditedAccounts;
+            this.creditedAmount = creditedAmount;
+            this.resumedPartitions = resumedPartitions;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Day the interest was accrued for
+        public LocalDate getDate() {
+            return date;
+        }
+
+        // Number of accounts whose type earns interest
+        public long getEligibleAccounts() {
+            return eligibleAccounts;
+        }
+
+        // Number of accounts credited for the day, including by interrupted runs
+        public long getCreditedAccounts() {
+            return creditedAccounts;
+        }
+
+        // Interest credited for the day in minor units, including by interrupted runs
+        public long getCreditedAmount() {
+            return creditedAmount;
+        }
+
+        // Number of partitions an earlier run of the day had started or completed
+        public int getResumedPartitions() {
+            return resumedPartitions;
+        }
+
+        // Accrual rate in eligible accounts walked per second
+        public double getAccountsPerSecond() {
+            return StreamingDataLoader.LoadReport.rate(eligibleAccounts, elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Accrued interest for %s: credited %s to %d of %d accounts, %d partitions resumed, "
+                            + "in %.1f s (%.0f accounts/s)", date, Money.toDecimal(creditedAmount).toPlainString(),
+                    creditedAccounts, eligibleAccounts, resumedPartitions, elapsedNanos / 1_000_000_000.0,
+                    getAccountsPerSecond());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package edu.gu;
+
+import java.math.BigInteger;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Annual interest rates paid per account type, in basis points, accrued daily on the actual/365 basis.
+ * Account types without a rate earn no interest. A day of interest is rounded down to the minor unit, so the
+ * bank never credits more than accrued.
+ */
+public final class InterestRates {
+    // Defaults of the annual rates in basis points
+    static final int DEFAULT_SAVINGS_BASIS_POINTS = 150;
+    static final int DEFAULT_INVESTMENT_BASIS_POINTS = 300;
+
+    // Number of basis points in one, and of days in the year of the accrual basis
+    private static final long BASIS_POINTS = 10_000;
+    private static final long DAYS_PER_YEAR = 365;
+
+    private final Map<AccountType, Integer> basisPoints = new EnumMap<>(AccountType.class);
+
+    /**
+     * Constructs InterestRates.
+     *
+     * @param savingsBasisPoints    Annual rate of SAVINGS accounts in basis points.
+     * @param investmentBasisPoints Annual rate of INVESTMENT accounts in basis points.
+     */
+    public InterestRates(int savingsBasisPoints, int investmentBasisPoints) {
+        if (savingsBasisPoints < 0 || investmentBasisPoints < 0) {
+            throw new IllegalArgumentException("Interest rates must not be negative");
+        }
+        basisPoints.put(AccountType.SAVINGS, savingsBasisPoints);
+        basisPoints.put(AccountType.INVESTMENT, investmentBasisPoints);
+    }
+
+    /**
+     * Creates the rates with the default values.
+     *
+     * @return The default rates.
+     */
+    public static InterestRates defaults() {
+        return new InterestRates(DEFAULT_SAVINGS_BASIS_POINTS, DEFAULT_INVESTMENT_BASIS_POINTS);
+    }
+
+    /**
+     * Retrieves the annual rate of an account type.
+     *
+     * @param accountType The account type.
+     * @return The rate in basis points, 0 if the type earns no interest.
+     */
+    public int getBasisPoints(AccountType accountType) {
+        return accountType == null ? 0 : basisPoints.getOrDefault(accountType, 0);
+    }
+
+    /**
+     * Checks whether an account type earns interest.
+     *
+     * @param accountType The account type.
+     * @return True if its rate is greater than 0; false otherwise.
+     */
+    public boolean earnsInterest(AccountType accountType) {
+        return getBasisPoints(accountType) > 0;
+    }
+
+    /**
+     * Computes one day of interest on a balance.
+     *
+     * @param accountType The type of the account.
+     * @param balance     The balance in minor units.
+     * @return The interest in minor units, 0 for an empty balance.
+     */
+    public long dailyInterest(AccountType accountType, long balance) {
+        int rate = getBasisPoints(accountType);
+        if (rate == 0 || balance <= 0) {
+            return 0;
+        }
+        try {
+            return Math.multiplyExact(balance, rate) / (BASIS_POINTS * DAYS_PER_YEAR);
+        } catch (ArithmeticException e) {
+            // Only balances too large for the product to fit in a long get here
+            return BigInteger.valueOf(balance).multiply(BigInteger.valueOf(rate))
+                    .divide(BigInteger.valueOf(BASIS_POINTS * DAYS_PER_YEAR)).longValueExact();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SAVINGS %d bp, INVESTMENT %d bp", getBasisPoints(AccountType.SAVINGS),
+                getBasisPoints(AccountType.INVESTMENT));
+    }
+}
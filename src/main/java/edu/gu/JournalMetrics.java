@@ -0,0 +1,133 @@
+package edu.gu;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the group-commit writer of the transaction journal.
+ * Batch sizes and commit latencies are kept in power-of-two histograms so recording is allocation free.
+ */
+public class JournalMetrics {
+    // Number of histogram buckets, bucket i counts values in [2^(i-1), 2^i)
+    private static final int BUCKETS = 32;
+
+    // Distribution of the number of records written per batch
+    private final AtomicLongArray batchSizes = new AtomicLongArray(BUCKETS);
+
+    // Distribution of commit latencies in microseconds, from enqueue until the record is durable
+    private final AtomicLongArray commitLatenciesMicros = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder totalCommitLatencyNanos = new LongAdder();
+    private final AtomicLong maxCommitLatencyNanos = new AtomicLong();
+
+    /**
+     * Records a batch made durable by one fsync.
+     *
+     * @param size The number of records in the batch.
+     */
+    void recordBatch(int size) {
+        batches.increment();
+        records.add(size);
+        batchSizes.incrementAndGet(bucketOf(size));
+    }
+
+    /**
+     * Records the commit latency of records appended together.
+     *
+     * @param latencyNanos The time from enqueueing the records until they were durable.
+     * @param count        The number of records appended together, each counted with that latency.
+     */
+    void recordCommitLatency(long latencyNanos, int count) {
+        totalCommitLatencyNanos.add(latencyNanos * count);
+        maxCommitLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+        commitLatenciesMicros.addAndGet(bucketOf(latencyNanos / 1_000), count);
+    }
+
+    /**
+     * Retrieves the number of batches committed.
+     *
+     * @return The number of batches.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Retrieves the number of records committed.
+     *
+     * @return The number of records.
+     */
+    public long getRecords() {
+        return records.sum();
+    }
+
+    /**
+     * Retrieves the mean number of records per batch.
+     *
+     * @return The mean batch size, or 0 if nothing was committed.
+     */
+    public double getMeanBatchSize() {
+        long batchCount = getBatches();
+        return batchCount == 0 ? 0 : (double) getRecords() / batchCount;
+    }
+
+    /**
+     * Retrieves the mean commit latency.
+     *
+     * @return The mean commit latency in microseconds, or 0 if nothing was committed.
+     */
+    public double getMeanCommitLatencyMicros() {
+        long recordCount = getRecords();
+        return recordCount == 0 ? 0 : totalCommitLatencyNanos.sum() / 1_000.0 / recordCount;
+    }
+
+    /**
+     * Retrieves the highest commit latency observed.
+     *
+     * @return The maximum commit latency in microseconds.
+     */
+    public double getMaxCommitLatencyMicros() {
+        return maxCommitLatencyNanos.get() / 1_000.0;
+    }
+
+    /**
+     * Retrieves the batch size histogram, entry i counting batches of size [2^(i-1), 2^i).
+     *
+     * @return A copy of the histogram counts.
+     */
+    public long[] getBatchSizeHistogram() {
+        return snapshot(batchSizes);
+    }
+
+    /**
+     * Retrieves the commit latency histogram, entry i counting latencies of [2^(i-1), 2^i) microseconds.
+     *
+     * @return A copy of the histogram counts.
+     */
+    public long[] getCommitLatencyHistogram() {
+        return snapshot(commitLatenciesMicros);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batches=%d records=%d meanBatch=%.1f meanCommit=%.1fus maxCommit=%.1fus",
+                getBatches(), getRecords(), getMeanBatchSize(), getMeanCommitLatencyMicros(), getMaxCommitLatencyMicros());
+    }
+
+    // Select the power-of-two bucket of a non-negative value
+    private static int bucketOf(long value) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(0, value)));
+    }
+
+    // Copy the histogram counts
+    private static long[] snapshot(AtomicLongArray histogram) {
+        long[] counts = new long[histogram.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,106 @@
+package edu.gu;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive longs, used for indexes that would otherwise box every entry.
+ * Not thread-safe, callers guard it with the lock of whatever it indexes.
+ */
+final class LongList {
+    // Backing array, only the first size entries are in use
+    private long[] values;
+
+    // Number of entries in use
+    private int size;
+
+    /**
+     * Constructs an empty LongList.
+     */
+    LongList() {
+        this.values = new long[8];
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value The value to append.
+     */
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Retrieves the value at the given index.
+     *
+     * @param index The index of the value.
+     * @return The value.
+     */
+    long get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return values[index];
+    }
+
+    /**
+     * Retrieves the number of values in the list.
+     *
+     * @return The size of the list.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every value, keeping the capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the values into a new array.
+     *
+     * @return The values in insertion order.
+     */
+    long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Copies a range of the values into a new array.
+     *
+     * @param from The index of the first value, inclusive.
+     * @param to   The index of the last value, exclusive.
+     * @return The values in insertion order.
+     */
+    long[] toArray(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") out of bounds for size " + size);
+        }
+        return Arrays.copyOfRange(values, from, to);
+    }
+
+    /**
+     * Finds the first value not less than the key, the values must be in non-decreasing order.
+     *
+     * @param key The value to search for.
+     * @return The index of the first value not less than the key, or the size if there is none.
+     */
+    int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
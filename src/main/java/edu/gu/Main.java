@@ -1,16 +1,26 @@
 package edu.gu;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import edu.gu.exceptions.InvalidCredentialsException;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class Main {
 
+    // Number of transactions shown per page of an account history
+    private static final int TRANSACTIONS_PAGE_SIZE = 10;
+
     // The main bank instance for the application
     private final Bank bank;
     // The currently authenticated user
@@ -19,18 +29,258 @@ public class Main {
     public Main() {
         Bank bank;
         Locale.setDefault(Locale.ENGLISH);
+        TransactionJournal journal = openJournal();
+        TransactionLog historyLog = openHistoryLog();
+        TransactionArchive archive = openTransactionArchive();
+        SnapshotStore snapshots = openSnapshotStore();
+
+        // Create Bank instance and stream the data from the JSON file into it
+        bank = new Bank("Bankea", "Main street", new ArrayList<>(), new ArrayList<>(), journal, historyLog, snapshots,
+                archive);
+        Path dataPath = Path.of(System.getProperty("bankea.data.path", "data.json"));
+        if (Files.exists(dataPath)) {
+            try {
+                bank.loadData(dataPath);
+            } catch (IOException | RuntimeException e) {
+                // A partial load would be mixed with the journal and snapshots of previous runs, so stop here
+                abortStartup("Failed to load demo data!", e);
+            }
+        } else {
+            System.out.printf("No demo data found at %s\n", dataPath);
+        }
 
         try {
-            // Read data from the JSON file and create Bank instance
-            ObjectMapper mapper = new ObjectMapper();
-            JsonData data = mapper.readValue(new File("data.json"), JsonData.class);
-            bank = new Bank("Bankea", "Main street", data.accounts, data.users);
-        } catch (IOException e) {
-            // Handle exceptions when reading data file
-            System.out.print("Failed to load demo data!\n");
-            bank = new Bank("Bankea", "Main street", new ArrayList<>(), new ArrayList<>());
+            // Apply the snapshots of previous runs, the journal replay then resumes after them
+            bank.restoreSnapshots();
+        } catch (IOException | RuntimeException e) {
+            // Replaying the whole journal on top of partly restored snapshots would apply transactions twice
+            abortStartup("Failed to restore the snapshots!", e);
+        }
+
+        try {
+            // Replay the journal to restore the activity of previous runs
+            long replayed = bank.recoverFromJournal();
+            if (replayed > 0) {
+                System.out.printf("Recovered %d journaled records\n", replayed);
+            }
+        } catch (IOException | RuntimeException e) {
+            abortStartup("Failed to replay the transaction journal!", e);
         }
         this.bank = bank;
+        scheduleCheckpoints(bank);
+        scheduleHistoryCompaction(bank);
+        scheduleMortgageDecisions(bank);
+        scheduleInterestAccrual(bank);
+    }
+
+    // Method to stop the program when the bank state could not be fully recovered, before any request is served
+    // or any record is appended on top of it
+    private static void abortStartup(String message, Exception e) {
+        System.out.printf("%s %s\n", message, e.getMessage());
+        System.exit(1);
+    }
+
+    // Method to open the snapshot store configured through system properties
+    private static SnapshotStore openSnapshotStore() {
+        String path = System.getProperty("bankea.snapshot.path", "snapshots");
+        try {
+            int compactionThreshold = Integer.parseInt(System.getProperty("bankea.snapshot.compactAfter",
+                    String.valueOf(SnapshotStore.DEFAULT_COMPACTION_THRESHOLD)));
+            return new SnapshotStore(Path.of(path), compactionThreshold);
+        } catch (IOException | IllegalArgumentException e) {
+            // Handle exceptions when opening the snapshot store, recovery then relies on the journal alone
+            System.out.printf("Failed to open the snapshot store %s: %s\n", path, e.getMessage());
+            return null;
+        }
+    }
+
+    // Method to write checkpoints in the background at the interval configured through system properties
+    private static void scheduleCheckpoints(Bank bank) {
+        long intervalSeconds = Long.getLong("bankea.snapshot.intervalSeconds", 0);
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bankea-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                bank.checkpoint();
+            } catch (IOException e) {
+                System.out.printf("Failed to write a checkpoint: %s\n", e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Method to spill the transactions leaving the hot window to the archive in the background, at the interval
+    // configured through system properties
+    private static void scheduleHistoryCompaction(Bank bank) {
+        long intervalSeconds = Long.getLong("bankea.history.compactIntervalSeconds", 10);
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bankea-history-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                bank.compactHistory();
+            } catch (UncheckedIOException e) {
+                System.out.printf("Failed to archive transactions: %s\n", e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Method to decide the clear-cut pending mortgage applications in the background, with the rules and at the
+    // interval configured through system properties. Automatic decisioning is opt-in, it only runs once an
+    // interval is set
+    private static void scheduleMortgageDecisions(Bank bank) {
+        long intervalSeconds = Long.getLong("bankea.mortgage.decisionIntervalSeconds", 0);
+        if (intervalSeconds <= 0) {
+            return;
+        }
+        try {
+            bank.setMortgageDecisionRules(new MortgageDecisionRules(
+                    Double.parseDouble(System.getProperty("bankea.mortgage.approveLoanToValue",
+                            String.valueOf(MortgageDecisionRules.DEFAULT_APPROVE_LOAN_TO_VALUE))),
+                    Double.parseDouble(System.getProperty("bankea.mortgage.approveLoanAmount",
+                            String.valueOf(MortgageDecisionRules.DEFAULT_APPROVE_LOAN_AMOUNT))),
+                    Integer.parseInt(System.getProperty("bankea.mortgage.approveRiskScore",
+                            String.valueOf(MortgageDecisionRules.DEFAULT_APPROVE_RISK_SCORE))),
+                    Double.parseDouble(System.getProperty("bankea.mortgage.rejectLoanToValue",
+                            String.valueOf(MortgageDecisionRules.DEFAULT_REJECT_LOAN_TO_VALUE))),
+                    Double.parseDouble(System.getProperty("bankea.mortgage.rejectLoanAmount",
+                            String.valueOf(MortgageDecisionRules.DEFAULT_REJECT_LOAN_AMOUNT)))));
+        } catch (IllegalArgumentException e) {
+            // Handle invalid rules, the default ones stay in place
+            System.out.printf("Invalid mortgage decision rules, using the defaults: %s\n", e.getMessage());
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bankea-mortgage-decisions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                bank.runMortgageDecisions();
+            } catch (RuntimeException e) {
+                // Keep deciding on the next run, a failing run must not cancel the schedule
+                System.out.printf("Failed to decide mortgage applications: %s\n", e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // Method to accrue interest in the background at the end of every day, with the rates and checkpoint directory
+    // configured through system properties, after completing the accruals a previous run left interrupted. The
+    // accrual is opt-in, it only runs once bankea.interest.enabled is set to true
+    private static void scheduleInterestAccrual(Bank bank) {
+        if (!Boolean.parseBoolean(System.getProperty("bankea.interest.enabled", "false"))) {
+            return;
+        }
+        Path checkpoints = Path.of(System.getProperty("bankea.interest.path", "interest"));
+        try {
+            bank.setInterestRates(new InterestRates(
+                    Integer.parseInt(System.getProperty("bankea.interest.savingsBasisPoints",
+                            String.valueOf(InterestRates.DEFAULT_SAVINGS_BASIS_POINTS))),
+                    Integer.parseInt(System.getProperty("bankea.interest.investmentBasisPoints",
+                            String.valueOf(InterestRates.DEFAULT_INVESTMENT_BASIS_POINTS)))));
+        } catch (IllegalArgumentException e) {
+            // Handle invalid rates, the default ones stay in place
+            System.out.printf("Invalid interest rates, using the defaults: %s\n", e.getMessage());
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bankea-interest-accrual");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(() -> {
+            try {
+                for (InterestAccrualEngine.AccrualReport report : bank.resumeInterestAccruals(checkpoints)) {
+                    System.out.printf("Resumed interrupted accrual. %s\n", report);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.printf("Failed to resume the interest accrual: %s\n", e.getMessage());
+            }
+        });
+        scheduleEndOfDay(scheduler, bank, checkpoints);
+    }
+
+    // Method to accrue the interest of the current day at the next midnight, then schedule the following day.
+    // The delay is measured between instants in the system time zone, so a day that is 23 or 25 hours long
+    // because of a daylight saving change still ends at midnight
+    private static void scheduleEndOfDay(ScheduledExecutorService scheduler, Bank bank, Path checkpoints) {
+        ZonedDateTime now = ZonedDateTime.now();
+        LocalDate today = now.toLocalDate();
+        ZonedDateTime midnight = today.plusDays(1).atStartOfDay(now.getZone());
+        scheduler.schedule(() -> {
+            try {
+                bank.accrueInterest(today, checkpoints);
+            } catch (IOException | RuntimeException e) {
+                // The checkpoint keeps the progress, the accrual is completed at the next start
+                System.out.printf("Failed to accrue interest: %s\n", e.getMessage());
+            }
+            scheduleEndOfDay(scheduler, bank, checkpoints);
+        }, Duration.between(now, midnight).toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // Method to open the transaction archive configured through system properties, next to the history log
+    private static TransactionArchive openTransactionArchive() {
+        String path = System.getProperty("bankea.history.path", "history");
+        try {
+            int hotTransactions = Integer.parseInt(System.getProperty("bankea.history.hotTransactions",
+                    String.valueOf(TransactionArchive.DEFAULT_HOT_TRANSACTIONS)));
+            long hotAgeMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(System.getProperty("bankea.history.hotAgeSeconds",
+                    String.valueOf(TimeUnit.MILLISECONDS.toSeconds(TransactionArchive.DEFAULT_HOT_AGE_MILLIS)))));
+            return new TransactionArchive(Path.of(path), hotTransactions, hotAgeMillis);
+        } catch (IOException | IllegalArgumentException e) {
+            // Handle exceptions when opening the archive, spilled transactions are then indexed in direct memory
+            System.out.printf("Failed to open the transaction archive %s: %s\n", path, e.getMessage());
+            return TransactionArchive.inMemory();
+        }
+    }
+
+    // Method to open the memory-mapped history log configured through system properties
+    private static TransactionLog openHistoryLog() {
+        String path = System.getProperty("bankea.history.path", "history");
+        try {
+            int segmentSize = Integer.parseInt(System.getProperty("bankea.history.segmentBytes",
+                    String.valueOf(TransactionLog.DEFAULT_SEGMENT_SIZE)));
+            return new TransactionLog(Path.of(path), segmentSize);
+        } catch (IOException | IllegalArgumentException e) {
+            // Handle exceptions when opening the history log, histories are then kept in direct memory
+            System.out.printf("Failed to open the history log %s: %s\n", path, e.getMessage());
+            return TransactionLog.inMemory();
+        }
+    }
+
+    // Method to open the write-ahead journal configured through system properties
+    private static TransactionJournal openJournal() {
+        String path = System.getProperty("bankea.journal.path", "ledger.wal");
+        try {
+            TransactionJournal.FsyncPolicy fsyncPolicy = TransactionJournal.FsyncPolicy.valueOf(
+                    System.getProperty("bankea.journal.fsync", TransactionJournal.FsyncPolicy.PER_TRANSACTION.name()));
+            long syncIntervalMillis = Long.parseLong(System.getProperty("bankea.journal.syncIntervalMillis", "100"));
+            int groupCommitMaxBatch = Integer.parseInt(System.getProperty("bankea.journal.groupCommitMaxBatch",
+                    String.valueOf(TransactionJournal.DEFAULT_GROUP_COMMIT_MAX_BATCH)));
+            long groupCommitMaxWaitMicros = Long.parseLong(System.getProperty("bankea.journal.groupCommitMaxWaitMicros",
+                    String.valueOf(TransactionJournal.DEFAULT_GROUP_COMMIT_MAX_WAIT_MICROS)));
+            TransactionJournal journal = new TransactionJournal(Path.of(path), fsyncPolicy, syncIntervalMillis,
+                    groupCommitMaxBatch, groupCommitMaxWaitMicros);
+            // The ledger no longer matches the journal once a record fails to be written, so stop the program
+            journal.setFailureHandler(failure -> {
+                System.out.printf("The transaction journal %s failed, stopping: %s\n", path, failure.getMessage());
+                System.exit(1);
+            });
+            return journal;
+        } catch (IOException | IllegalArgumentException e) {
+            // Handle exceptions when opening the journal, the bank then runs in memory only
+            System.out.printf("Failed to open the transaction journal %s: %s\n", path, e.getMessage());
+            return null;
+        }
     }
 
     // Main method to start the application
@@ -69,6 +319,18 @@ public class Main {
         System.out.printf(" Property Value %s (in millions)\n", application.getPropertyValue());
         System.out.printf(" Requested Loan amount %s (in millions)\n", application.getLoanAmount());
         System.out.printf(" Proposed Interest Rate %%%s\n", application.getInterestRate());
+        MortgageRiskScore riskScore = application.getRiskScore();
+        if (riskScore != null) {
+            System.out.printf(" Risk score %d/100, loan-to-value %.1f%%\n", riskScore.getRiskScore(),
+                    riskScore.getLoanToValue() * 100);
+            System.out.printf(" Monthly payment %.6f over %d months (in millions)\n", riskScore.getMonthlyPayment(),
+                    riskScore.getTermMonths());
+            System.out.printf(" Debt service %.2f%% of the property value per year\n",
+                    riskScore.getDebtServiceToValue() * 100);
+        }
+        if (application.isReferred()) {
+            System.out.println(" Referred for manual review");
+        }
         System.out.println("------------------------------------");
     }
 
@@ -376,7 +638,7 @@ public class Main {
         } else {
             // Display account balance and prompt for additional actions
             System.out.println("------------------------------------");
-            System.out.printf("Current Balance for Account #%s is SEK %s%n", account.getAccountNumber(), account.getBalance());
+            System.out.printf("Current Balance for Account #%s is SEK %s%n", account.getAccountNumber(), Money.format(account.getBalance()));
             System.out.println("------------------------------------");
             System.out.println("Would you like to use another service?");
         }
@@ -396,18 +658,32 @@ public class Main {
             System.out.println("Invalid Account. Please try again!");
             System.out.println("------------------------------------");
         } else {
-            // Display account transactions
-            List<Transaction> transactions = bank.getAccountTransactions(account);
-            if (transactions.isEmpty()) {
-                System.out.println("------------------------------------");
-                System.out.println("No Transactions!");
-                System.out.println("------------------------------------");
-            } else {
-                transactions.forEach(transaction -> {
+            // Display account transactions straight from the history log, one page at a time
+            long cursor = 0;
+            int page = 1;
+            while (cursor != TransactionPage.END) {
+                TransactionPage transactions = bank.getAccountTransactionPage(account, cursor, TRANSACTIONS_PAGE_SIZE);
+                if (transactions.getTotalTransactions() == 0) {
+                    System.out.println("------------------------------------");
+                    System.out.println("No Transactions!");
+                    System.out.println("------------------------------------");
+                    break;
+                }
+                for (TransactionView transaction : transactions.getTransactions()) {
                     System.out.println("------------------------------------");
                     System.out.println(transaction.toString());
                     System.out.println("------------------------------------");
-                });
+                }
+                int pages = (transactions.getTotalTransactions() + TRANSACTIONS_PAGE_SIZE - 1) / TRANSACTIONS_PAGE_SIZE;
+                System.out.printf("Page %d of %d\n", page, pages);
+                cursor = transactions.getNextCursor();
+                if (cursor != TransactionPage.END) {
+                    System.out.println("Press Enter to show the next page, or enter q to stop:");
+                    if (IOScanner.readLine().trim().equalsIgnoreCase("q")) {
+                        break;
+                    }
+                    page++;
+                }
             }
 
             System.out.println("Would you like to use another service?");
@@ -442,13 +718,13 @@ public class Main {
             // Prompt user for withdrawal amount
             System.out.println("------------------------------------");
             System.out.println("Enter amount to withdraw: ");
-            double amount = IOScanner.readDouble();
+            long amount = IOScanner.readAmount();
 
             // Withdraw funds from the specified account and display success message
             bank.withdrawFromAccount(account, amount);
             System.out.println("------------------------------------");
-            System.out.printf("Successful Withdrawal for SEK %s\n", amount);
-            System.out.printf("Current Balance for Account #%s is SEK %s%n", account.getAccountNumber(), account.getBalance());
+            System.out.printf("Successful Withdrawal for SEK %s\n", Money.format(amount));
+            System.out.printf("Current Balance for Account #%s is SEK %s%n", account.getAccountNumber(), Money.format(account.getBalance()));
             System.out.println("------------------------------------");
             System.out.println("Would you like to use another service?");
             displayUserMenu();
@@ -475,13 +751,13 @@ public class Main {
             // Prompt user for deposit amount
             System.out.println("------------------------------------");
             System.out.println("Enter amount to deposit: ");
-            double amount = IOScanner.readDouble();
+            long amount = IOScanner.readAmount();
 
             // Deposit funds into the specified account and display success message
             bank.depositToAccount(account, amount);
             System.out.println("------------------------------------");
-            System.out.printf("Successful deposit for SEK %s\n", amount);
-            System.out.printf("Current Balance for Account #%s is SEK %s%n", account.getAccountNumber(), account.getBalance());
+            System.out.printf("Successful deposit for SEK %s\n", Money.format(amount));
+            System.out.printf("Current Balance for Account #%s is SEK %s%n", account.getAccountNumber(), Money.format(account.getBalance()));
             System.out.println("------------------------------------");
             System.out.println("Would you like to use another service?");
             displayUserMenu();
@@ -516,13 +792,13 @@ public class Main {
             }
             // Prompt user for transfer amount
             System.out.println("Enter amount to transfer: ");
-            double amount = IOScanner.readDouble();
+            long amount = IOScanner.readAmount();
 
             // Transfer funds between specified accounts and display success message
             bank.transfer(senderAccount, receiverAccount, amount);
             System.out.println("------------------------------------");
-            System.out.printf("Successful Transfer for SEK %s from account #%s to account #%s\n", amount, senderAccount.getAccountNumber(), receiverAccount.getAccountNumber());
-            System.out.printf("Current Balance for Account #%s is SEK %s%n", senderAccount.getAccountNumber(), senderAccount.getBalance());
+            System.out.printf("Successful Transfer for SEK %s from account #%s to account #%s\n", Money.format(amount), senderAccount.getAccountNumber(), receiverAccount.getAccountNumber());
+            System.out.printf("Current Balance for Account #%s is SEK %s%n", senderAccount.getAccountNumber(), Money.format(senderAccount.getBalance()));
             System.out.println("------------------------------------");
             System.out.println("Would you like to use another service?");
             displayUserMenu();
@@ -582,6 +858,8 @@ public class Main {
             System.out.println("################################");
             System.out.println("Review Mortgage Applications");
             System.out.println("################################");
+            // Score the applications submitted since the last review before listing them
+            bank.scorePendingMortgageApplications();
             List<MortgageApplication> applications = bank.getPendingMortgageApplications();
 
             // Check if there are pending mortgage applications
@@ -593,6 +871,7 @@ public class Main {
             for (MortgageApplication application : applications) {
                 displayMortgageApplication(application);
             }
+            System.out.printf("Automatic decisions: %s\n", bank.getMortgageDecisionMetrics());
 
             // Prompt user for options to handle applications
             System.out.println("------------------------------------");
@@ -601,7 +880,7 @@ public class Main {
             switch (choice) {
                 case 0 -> displayUserMenu();
                 case 1 -> handleMortgageApplication();
-                case 2 -> throw new Exception("Not Implemented!");
+                case 2 -> viewRejectedMortgageApplications();
                 default -> {
                     System.out.println("Invalid choice. Please enter a valid option.");
                     reviewMortgageApplications();
@@ -619,6 +898,25 @@ public class Main {
         }
     }
 
+    // Method to list the rejected mortgage applications
+    private void viewRejectedMortgageApplications() {
+        System.out.println("------------------------------------");
+        List<MortgageApplication> applications = bank.getRejectedMortgageApplications();
+        if (applications.isEmpty()) {
+            System.out.println("**No rejected Mortgage Applications**");
+        }
+        for (MortgageApplication application : applications) {
+            displayMortgageApplication(application);
+        }
+        System.out.println("0. Back to menu\n1. Review pending Applications");
+        int choice = readUserChoice();
+        if (choice == 1) {
+            reviewMortgageApplications();
+        } else {
+            displayUserMenu();
+        }
+    }
+
     // Method to handle a specific mortgage application
     private void handleMortgageApplication() {
         System.out.println("------------------------------------");
@@ -630,26 +928,34 @@ public class Main {
             application = bank.getMortgageApplicationById(applicationID);
         } while (application == null);
 
-        // Display details of the application
+        // Display details of the application with its risk metrics
+        bank.getMortgageRiskScore(application);
         displayMortgageApplication(application);
 
         // Prompt user for approval, rejection, or cancellation
         System.out.println("0. Back\n1. Approve Application\n2. Reject Application\n3. Cancel Application");
         int choice = readUserChoice();
+        boolean decided;
         switch (choice) {
-            case 1 -> {
-                application.approve();
-                System.out.printf("Application #%s is now %s\n", application.getId(), application.getApplicationStatus());
-            }
-            case 2 -> {
-                application.reject();
-                System.out.printf("Application #%s is now %s\n", application.getId(), application.getApplicationStatus());
+            case 1 -> decided = bank.approveMortgageApplication(application);
+            case 2 -> decided = bank.rejectMortgageApplication(application);
+            case 3 -> decided = bank.cancelMortgageApplication(application);
+            default -> {
+                displayUserMenu();
+                return;
             }
-            case 3 -> {
-                application.cancel();
-                System.out.printf("Application #%s is now %s\n", application.getId(), application.getApplicationStatus());
+        }
+        if (decided) {
+            System.out.printf("Application #%s is now %s\n", application.getId(), application.getApplicationStatus());
+            if (application.getApplicationStatus() == MortgageApplicationStatus.APPROVED) {
+                AmortizationSchedule schedule = bank.getAmortizationSchedule(application);
+                System.out.printf(" %d monthly payments of %.6f, first one %.6f interest and %.6f principal\n",
+                        schedule.getTermMonths(), schedule.getPayment(), schedule.getInterest(0), schedule.getPrincipal(0));
+                System.out.printf(" Total interest %.6f (in millions)\n", schedule.getTotalInterest());
             }
-            default -> displayUserMenu();
+        } else {
+            // The application was decided before, possibly by another credit employee meanwhile
+            System.out.printf("Application #%s is already %s\n", application.getId(), application.getApplicationStatus());
         }
         displayUserMenu();
     }
@@ -665,8 +971,18 @@ public class Main {
 
     // Method to exit the program
     private void exitProgram() {
-        // Close IO scanner and exit the program
+        // Close IO scanner and the journal, then exit the program
         IOScanner.close();
+        try {
+            bank.checkpoint();
+        } catch (IOException e) {
+            System.out.printf("Failed to write a checkpoint: %s\n", e.getMessage());
+        }
+        try {
+            bank.shutdown();
+        } catch (IOException e) {
+            System.out.printf("Failed to close the transaction journal: %s\n", e.getMessage());
+        }
         System.out.println("Thank you for using Bankea.");
         System.exit(0);
     }
@@ -0,0 +1,70 @@
+package edu.gu;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Conversions between decimal amounts and the fixed-point representation used by the ledger.
+ * Every balance and transaction amount is held as a {@code long} number of minor units (cents),
+ * so ledger arithmetic is exact and never allocates.
+ */
+public final class Money {
+    // Number of decimal places of the minor unit
+    public static final int SCALE = 2;
+
+    // Number of minor units in one major unit
+    public static final long MINOR_UNITS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converts a decimal amount to minor units.
+     *
+     * @param amount The decimal amount, e.g. 5000.25.
+     * @return The amount in minor units, e.g. 500025.
+     * @throws IllegalArgumentException If the amount has more decimals than the minor unit or does not fit in a long.
+     */
+    public static long fromDecimal(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid amount: " + amount.toPlainString());
+        }
+    }
+
+    /**
+     * Parses a decimal amount entered as text to minor units.
+     *
+     * @param text The decimal amount as text, e.g. "12.50".
+     * @return The amount in minor units.
+     * @throws IllegalArgumentException If the text is not a valid amount.
+     */
+    public static long parse(String text) {
+        try {
+            return fromDecimal(new BigDecimal(text.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid amount: " + text);
+        }
+    }
+
+    /**
+     * Converts an amount in minor units to a decimal amount.
+     *
+     * @param minorUnits The amount in minor units.
+     * @return The decimal amount.
+     */
+    public static BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Formats an amount in minor units for display, e.g. 500025 as "5000.25".
+     *
+     * @param minorUnits The amount in minor units.
+     * @return The formatted amount.
+     */
+    public static String format(long minorUnits) {
+        return toDecimal(minorUnits).toPlainString();
+    }
+}
@@ -19,8 +19,18 @@ public class MortgageApplication {
     // Interest rate specified in the mortgage application
     private final double interestRate;
 
-    // Status of the mortgage application (e.g., PENDING, APPROVED, REJECTED, CANCELLED)
-    private MortgageApplicationStatus applicationStatus;
+    // Status of the mortgage application (e.g., PENDING, APPROVED, REJECTED, CANCELLED), changed by the
+    // MortgageManager so the application always sits in the partition of its status
+    private volatile MortgageApplicationStatus applicationStatus;
+
+    // Risk metrics of the application, computed once by the MortgageRiskEngine, or null until then
+    private volatile MortgageRiskScore riskScore;
+
+    // Time the application was submitted in milliseconds since the Unix epoch, kept across snapshots
+    private final long submittedMillis;
+
+    // Whether the automatic decisioning left the application to a credit employee
+    private volatile boolean referred;
 
     // Constructor to initialize a mortgage application
     public MortgageApplication(User applicant, double propertyValue, double loanAmount, double interestRate) {
@@ -35,6 +45,21 @@ public class MortgageApplication {
 
         // Set the initial application status to PENDING
         this.applicationStatus = MortgageApplicationStatus.PENDING;
+        this.submittedMillis = System.currentTimeMillis();
+    }
+
+    // Constructor restoring a mortgage application from a snapshot with its original identifier, status,
+    // submission time and referral
+    MortgageApplication(String id, User applicant, double propertyValue, double loanAmount, double interestRate,
+                        MortgageApplicationStatus applicationStatus, long submittedMillis, boolean referred) {
+        this.id = id;
+        this.applicant = applicant;
+        this.propertyValue = propertyValue;
+        this.loanAmount = loanAmount;
+        this.interestRate = interestRate;
+        this.applicationStatus = applicationStatus;
+        this.submittedMillis = submittedMillis;
+        this.referred = referred;
     }
 
     // Getter method for retrieving the unique identifier of the mortgage application
@@ -68,10 +93,35 @@ public class MortgageApplication {
     }
 
     // Setter method for updating the application status
-    public void setApplicationStatus(MortgageApplicationStatus applicationStatus) {
+    void setApplicationStatus(MortgageApplicationStatus applicationStatus) {
         this.applicationStatus = applicationStatus;
     }
 
+    // Getter method for retrieving the risk metrics of the application, null until it is scored
+    public MortgageRiskScore getRiskScore() {
+        return riskScore;
+    }
+
+    // Setter method for caching the risk metrics of the application
+    void setRiskScore(MortgageRiskScore riskScore) {
+        this.riskScore = riskScore;
+    }
+
+    // Getter method for retrieving the time the application was submitted in milliseconds since the Unix epoch
+    public long getSubmittedMillis() {
+        return submittedMillis;
+    }
+
+    // Getter method for checking whether the automatic decisioning left the application to a credit employee
+    public boolean isReferred() {
+        return referred;
+    }
+
+    // Setter method for marking the application as left to a credit employee
+    void setReferred(boolean referred) {
+        this.referred = referred;
+    }
+
     // Method to check if the mortgage application is incomplete
     public boolean isIncomplete() {
         // Check if any of the required fields is null or has an invalid value
@@ -79,19 +129,19 @@ public class MortgageApplication {
     }
 
     // Method to approve the mortgage application
-    public void approve() {
+    void approve() {
         // Perform approval logic (can be extended as needed)
         this.applicationStatus = MortgageApplicationStatus.APPROVED;
     }
 
     // Method to reject the mortgage application
-    public void reject() {
+    void reject() {
         // Perform rejection logic (can be extended as needed)
         this.applicationStatus = MortgageApplicationStatus.REJECTED;
     }
 
     // Method to cancel the mortgage application
-    public void cancel() {
+    void cancel() {
         // Perform cancellation logic (can be extended as needed)
         this.applicationStatus = MortgageApplicationStatus.CANCELLED;
     }
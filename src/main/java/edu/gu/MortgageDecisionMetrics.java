@@ -0,0 +1,134 @@
+package edu.gu;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the automatic mortgage decisioning: how many applications it evaluated and how it decided them,
+ * how fast it processes its batches, and how long applications waited from submission until it decided them.
+ */
+public class MortgageDecisionMetrics {
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder approved = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder referred = new LongAdder();
+    private final LongAdder totalBatchNanos = new LongAdder();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+    private final LongAdder totalDecisionLatencyMillis = new LongAdder();
+    private final AtomicLong maxDecisionLatencyMillis = new AtomicLong();
+
+    /**
+     * Records a processed batch.
+     *
+     * @param size          The number of applications evaluated in the batch.
+     * @param durationNanos The time the batch took.
+     */
+    void recordBatch(int size, long durationNanos) {
+        batches.increment();
+        evaluated.add(size);
+        totalBatchNanos.add(durationNanos);
+        maxBatchNanos.accumulateAndGet(durationNanos, Math::max);
+    }
+
+    /**
+     * Records the decision of an application.
+     *
+     * @param decision      The decision applied.
+     * @param latencyMillis The time from the submission of the application until it was decided.
+     */
+    void recordDecision(MortgageDecisionRules.Decision decision, long latencyMillis) {
+        switch (decision) {
+            case APPROVE -> approved.increment();
+            case REJECT -> rejected.increment();
+            case REFER -> {
+                referred.increment();
+                return;
+            }
+        }
+        totalDecisionLatencyMillis.add(latencyMillis);
+        maxDecisionLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+    }
+
+    // Number of batches processed
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    // Number of applications evaluated
+    public long getEvaluated() {
+        return evaluated.sum();
+    }
+
+    // Number of applications approved automatically
+    public long getApproved() {
+        return approved.sum();
+    }
+
+    // Number of applications rejected automatically
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // Number of applications referred to a credit employee
+    public long getReferred() {
+        return referred.sum();
+    }
+
+    /**
+     * Retrieves the throughput of the batches, while they run.
+     *
+     * @return The applications evaluated per second of batch processing, or 0 if none was.
+     */
+    public double getApplicationsPerSecond() {
+        long nanos = totalBatchNanos.sum();
+        return nanos == 0 ? 0 : getEvaluated() * 1_000_000_000.0 / nanos;
+    }
+
+    /**
+     * Retrieves the mean time a batch took.
+     *
+     * @return The mean batch latency in milliseconds, or 0 if no batch was processed.
+     */
+    public double getMeanBatchLatencyMillis() {
+        long batchCount = getBatches();
+        return batchCount == 0 ? 0 : totalBatchNanos.sum() / 1_000_000.0 / batchCount;
+    }
+
+    /**
+     * Retrieves the longest time a batch took.
+     *
+     * @return The maximum batch latency in milliseconds.
+     */
+    public double getMaxBatchLatencyMillis() {
+        return maxBatchNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Retrieves the mean time from submission until an automatic decision.
+     *
+     * @return The mean decision latency in milliseconds, or 0 if nothing was decided.
+     */
+    public double getMeanDecisionLatencyMillis() {
+        long decided = getApproved() + getRejected();
+        return decided == 0 ? 0 : (double) totalDecisionLatencyMillis.sum() / decided;
+    }
+
+    /**
+     * Retrieves the longest time from submission until an automatic decision.
+     *
+     * @return The maximum decision latency in milliseconds.
+     */
+    public long getMaxDecisionLatencyMillis() {
+        return maxDecisionLatencyMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("evaluated=%d approved=%d rejected=%d referred=%d throughput=%.0f/s meanBatch=%.2fms "
+                        + "maxBatch=%.2fms meanDecision=%.0fms maxDecision=%dms",
+                getEvaluated(), getApproved(), getRejected(), getReferred(), getApplicationsPerSecond(),
+                getMeanBatchLatencyMillis(), getMaxBatchLatencyMillis(), getMeanDecisionLatencyMillis(),
+                getMaxDecisionLatencyMillis());
+    }
+}
@@ -0,0 +1,90 @@
+package edu.gu;
+
+/**
+ * Thresholds the automatic decisioning applies to pending mortgage applications. An application is rejected
+ * when its loan-to-value or its loan amount is beyond the rejection limits, approved when its loan-to-value,
+ * loan amount and risk score are all within the approval limits, and referred to a credit employee otherwise.
+ * Amounts are in the units of the applications, millions.
+ */
+public final class MortgageDecisionRules {
+    /**
+     * Outcome of the rules for an application.
+     */
+    public enum Decision {
+        // Clear-cut, approved without a credit employee
+        APPROVE,
+        // Clear-cut, rejected without a credit employee
+        REJECT,
+        // Borderline, left to a credit employee
+        REFER
+    }
+
+    // Defaults of the thresholds
+    static final double DEFAULT_APPROVE_LOAN_TO_VALUE = 0.60;
+    static final double DEFAULT_APPROVE_LOAN_AMOUNT = 2.0;
+    static final int DEFAULT_APPROVE_RISK_SCORE = 50;
+    static final double DEFAULT_REJECT_LOAN_TO_VALUE = 0.95;
+    static final double DEFAULT_REJECT_LOAN_AMOUNT = 20.0;
+
+    private final double approveLoanToValue;
+    private final double approveLoanAmount;
+    private final int approveRiskScore;
+    private final double rejectLoanToValue;
+    private final double rejectLoanAmount;
+
+    /**
+     * Constructs MortgageDecisionRules.
+     *
+     * @param approveLoanToValue Highest loan-to-value approved automatically.
+     * @param approveLoanAmount  Highest loan amount approved automatically.
+     * @param approveRiskScore   Highest risk score approved automatically.
+     * @param rejectLoanToValue  Loan-to-value above which applications are rejected automatically.
+     * @param rejectLoanAmount   Loan amount above which applications are rejected automatically.
+     */
+    public MortgageDecisionRules(double approveLoanToValue, double approveLoanAmount, int approveRiskScore,
+                                 double rejectLoanToValue, double rejectLoanAmount) {
+        if (approveLoanToValue > rejectLoanToValue || approveLoanAmount > rejectLoanAmount) {
+            throw new IllegalArgumentException("Approval limits must not exceed rejection limits");
+        }
+        this.approveLoanToValue = approveLoanToValue;
+        this.approveLoanAmount = approveLoanAmount;
+        this.approveRiskScore = approveRiskScore;
+        this.rejectLoanToValue = rejectLoanToValue;
+        this.rejectLoanAmount = rejectLoanAmount;
+    }
+
+    /**
+     * Creates the rules with the default thresholds.
+     *
+     * @return The default rules.
+     */
+    public static MortgageDecisionRules defaults() {
+        return new MortgageDecisionRules(DEFAULT_APPROVE_LOAN_TO_VALUE, DEFAULT_APPROVE_LOAN_AMOUNT,
+                DEFAULT_APPROVE_RISK_SCORE, DEFAULT_REJECT_LOAN_TO_VALUE, DEFAULT_REJECT_LOAN_AMOUNT);
+    }
+
+    /**
+     * Applies the rules to an application.
+     *
+     * @param application The application.
+     * @param riskScore   The risk metrics of the application.
+     * @return The decision.
+     */
+    public Decision decide(MortgageApplication application, MortgageRiskScore riskScore) {
+        double loanAmount = application.getLoanAmount();
+        if (riskScore.getLoanToValue() > rejectLoanToValue || loanAmount > rejectLoanAmount) {
+            return Decision.REJECT;
+        }
+        if (riskScore.getLoanToValue() <= approveLoanToValue && loanAmount <= approveLoanAmount
+                && riskScore.getRiskScore() <= approveRiskScore) {
+            return Decision.APPROVE;
+        }
+        return Decision.REFER;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("approve LTV<=%.2f, loan<=%s, risk<=%d; reject LTV>%.2f or loan>%s",
+                approveLoanToValue, approveLoanAmount, approveRiskScore, rejectLoanToValue, rejectLoanAmount);
+    }
+}
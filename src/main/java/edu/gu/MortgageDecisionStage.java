@@ -0,0 +1,126 @@
+package edu.gu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Background stage deciding the clear-cut pending mortgage applications with the {@link MortgageDecisionRules},
+ * so credit employees only review the borderline ones.
+ * <p>
+ * A run takes the pending applications that were not referred yet, scores them in parallel with the
+ * {@link MortgageRiskEngine} and decides them, a batch at a time. Decisions go through the
+ * {@link MortgageManager} transitions, so an application a credit employee decides meanwhile is left as they
+ * decided it. Referred applications are marked, and later runs skip them.
+ */
+public class MortgageDecisionStage {
+    // Number of applications of a batch when none is specified
+    static final int DEFAULT_BATCH_SIZE = 1_024;
+
+    private final MortgageManager mortgageManager;
+    private final MortgageRiskEngine riskEngine;
+    private final int batchSize;
+    private final MortgageDecisionMetrics metrics = new MortgageDecisionMetrics();
+
+    // Held while a run is in progress, so runs never overlap
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    // Rules applied by the next batch
+    private volatile MortgageDecisionRules rules;
+
+    /**
+     * Constructs a MortgageDecisionStage.
+     *
+     * @param mortgageManager The manager holding the applications.
+     * @param riskEngine      The engine scoring the applications.
+     * @param rules           The rules deciding the applications.
+     * @param batchSize       The number of applications of a batch.
+     */
+    public MortgageDecisionStage(MortgageManager mortgageManager, MortgageRiskEngine riskEngine,
+                                 MortgageDecisionRules rules, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.mortgageManager = mortgageManager;
+        this.riskEngine = riskEngine;
+        this.rules = rules;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Replaces the rules, applied from the next batch on. Referred applications are not evaluated again.
+     *
+     * @param rules The new rules.
+     */
+    public void setRules(MortgageDecisionRules rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Retrieves the rules applied.
+     *
+     * @return The rules.
+     */
+    public MortgageDecisionRules getRules() {
+        return rules;
+    }
+
+    /**
+     * Retrieves the metrics of the stage.
+     *
+     * @return The metrics, updated as batches complete.
+     */
+    public MortgageDecisionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Decides the pending applications not referred yet. Returns at once if another run is in progress.
+     *
+     * @return The number of applications approved or rejected.
+     */
+    public int run() {
+        if (!runLock.tryLock()) {
+            return 0;
+        }
+        try {
+            List<MortgageApplication> unreviewed = new ArrayList<>();
+            for (MortgageApplication application : mortgageManager.findApplicationsByStatus(MortgageApplicationStatus.PENDING)) {
+                if (!application.isReferred()) {
+                    unreviewed.add(application);
+                }
+            }
+            int decided = 0;
+            for (int from = 0; from < unreviewed.size(); from += batchSize) {
+                decided += decide(unreviewed.subList(from, Math.min(from + batchSize, unreviewed.size())));
+            }
+            return decided;
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    // Score a batch in parallel, then decide its applications, returning the number approved or rejected
+    private int decide(List<MortgageApplication> batch) {
+        long start = System.nanoTime();
+        MortgageDecisionRules batchRules = rules;
+        riskEngine.scoreAll(batch);
+        int decided = 0;
+        for (MortgageApplication application : batch) {
+            MortgageDecisionRules.Decision decision = batchRules.decide(application, riskEngine.score(application));
+            boolean applied = switch (decision) {
+                case APPROVE -> mortgageManager.approveApplication(application);
+                case REJECT -> mortgageManager.rejectApplication(application);
+                case REFER -> mortgageManager.referApplication(application);
+            };
+            if (applied) {
+                metrics.recordDecision(decision, System.currentTimeMillis() - application.getSubmittedMillis());
+                if (decision != MortgageDecisionRules.Decision.REFER) {
+                    decided++;
+                }
+            }
+        }
+        metrics.recordBatch(batch.size(), System.nanoTime() - start);
+        return decided;
+    }
+}
@@ -3,22 +3,43 @@ package edu.gu;
 import edu.gu.exceptions.IncompleteApplicationException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 // Class responsible for managing mortgage applications
 public class MortgageManager implements IMortgageManager {
-    // List to store all mortgage applications
-    private final List<MortgageApplication> mortgageApplications;
+    // Map to store all mortgage applications by their unique identifier
+    private final Map<String, MortgageApplication> applicationsById;
 
-    // Constructor to initialize the MortgageManager
+    // Applications partitioned by status, each partition in the order its applications entered it
+    private final Map<MortgageApplicationStatus, Map<String, MortgageApplication>> applicationsByStatus;
+
+    // Tracker submitted applications and status changes are reported to so the next snapshot writes them, or null
+    private final ChangeTracker changeTracker;
+
+    // Constructor to initialize a MortgageManager whose applications are not snapshotted
     public MortgageManager() {
-        // Initialize the list of mortgage applications
-        this.mortgageApplications = new ArrayList<>();
+        this(null);
+    }
+
+    // Constructor to initialize a MortgageManager reporting its changes to the given tracker, or to none if null
+    public MortgageManager(ChangeTracker changeTracker) {
+        this.changeTracker = changeTracker;
+        // Initialize the index and one partition per status
+        this.applicationsById = new ConcurrentHashMap<>();
+        this.applicationsByStatus = new EnumMap<>(MortgageApplicationStatus.class);
+        for (MortgageApplicationStatus status : MortgageApplicationStatus.values()) {
+            this.applicationsByStatus.put(status, Collections.synchronizedMap(new LinkedHashMap<>()));
+        }
     }
 
-    // Getter method to retrieve the list of mortgage applications
+    // Getter method to retrieve a copy of every mortgage application
     public List<MortgageApplication> getMortgageApplications() {
-        return mortgageApplications;
+        return new ArrayList<>(applicationsById.values());
     }
 
     // Method to submit a new mortgage application
@@ -32,43 +53,108 @@ public class MortgageManager implements IMortgageManager {
             throw new IncompleteApplicationException("Incomplete application. Please provide all required information");
         }
 
-        // Add the application to the list of mortgage applications
-        mortgageApplications.add(application);
+        // Index the application and add it to the partition of its status
+        synchronized (application) {
+            applicationsById.put(application.getId(), application);
+            applicationsByStatus.get(application.getApplicationStatus()).put(application.getId(), application);
+        }
+        changed(application);
 
         // Return the submitted application
         return application;
     }
 
-    // Method to find a mortgage application by its unique identifier
-    public MortgageApplication findApplicationById(String applicationId) {
-        // Iterate through the list of mortgage applications
-        for (MortgageApplication application : mortgageApplications) {
-            // Check if the current application's ID matches the specified ID
-            if (application.getId().equals(applicationId)) {
-                // Return the matching application
-                return application;
+    // Method to restore a mortgage application from a snapshot, replacing an earlier copy with the same identifier
+    void restoreApplication(MortgageApplication application) {
+        MortgageApplication existing = applicationsById.put(application.getId(), application);
+        if (existing != null) {
+            synchronized (existing) {
+                applicationsByStatus.get(existing.getApplicationStatus()).remove(existing.getId());
             }
         }
+        synchronized (application) {
+            applicationsByStatus.get(application.getApplicationStatus()).put(application.getId(), application);
+        }
+    }
 
-        // Return null if no matching application is found
-        return null;
+    // Method to find a mortgage application by its unique identifier, null if there is none
+    public MortgageApplication findApplicationById(String applicationId) {
+        return applicationId == null ? null : applicationsById.get(applicationId);
     }
 
-    // Method to find mortgage applications with a specific status
+    // Method to find mortgage applications with a specific status, costing the size of its partition only
     public List<MortgageApplication> findApplicationsByStatus(MortgageApplicationStatus status) {
-        // List to store matching applications
-        List<MortgageApplication> matchingApplications = new ArrayList<>();
-
-        // Iterate through the list of mortgage applications
-        for (MortgageApplication application : mortgageApplications) {
-            // Check if the current application has the specified status
-            if (application.getApplicationStatus().equals(status)) {
-                // Add the matching application to the list
-                matchingApplications.add(application);
+        Map<String, MortgageApplication> partition = applicationsByStatus.get(status);
+        synchronized (partition) {
+            return new ArrayList<>(partition.values());
+        }
+    }
+
+    // Method to count the mortgage applications with a specific status
+    public int countApplicationsByStatus(MortgageApplicationStatus status) {
+        return applicationsByStatus.get(status).size();
+    }
+
+    // Method to approve a pending mortgage application, returns false if it was no longer pending
+    public boolean approveApplication(MortgageApplication application) {
+        return transition(application, MortgageApplicationStatus.APPROVED, MortgageApplicationStatus.PENDING);
+    }
+
+    // Method to reject a pending mortgage application, returns false if it was no longer pending
+    public boolean rejectApplication(MortgageApplication application) {
+        return transition(application, MortgageApplicationStatus.REJECTED, MortgageApplicationStatus.PENDING);
+    }
+
+    // Method to cancel a pending or approved mortgage application, returns false if it was already decided otherwise
+    public boolean cancelApplication(MortgageApplication application) {
+        return transition(application, MortgageApplicationStatus.CANCELLED,
+                MortgageApplicationStatus.PENDING, MortgageApplicationStatus.APPROVED);
+    }
+
+    // Method to leave a pending mortgage application to a credit employee, returns false if it was no longer pending
+    boolean referApplication(MortgageApplication application) {
+        synchronized (application) {
+            if (application.getApplicationStatus() != MortgageApplicationStatus.PENDING
+                    || applicationsById.get(application.getId()) != application) {
+                return false;
+            }
+            application.setReferred(true);
+            changed(application);
+            return true;
+        }
+    }
+
+    // Move an application to the partition of its new status if its current status is one of the allowed ones.
+    // Transitions of an application are serialized on it, so of two concurrent decisions only the first applies
+    // and the status and the partition holding the application always change together.
+    private boolean transition(MortgageApplication application, MortgageApplicationStatus target,
+                               MortgageApplicationStatus... allowed) {
+        synchronized (application) {
+            MortgageApplicationStatus current = application.getApplicationStatus();
+            boolean isAllowed = false;
+            for (MortgageApplicationStatus status : allowed) {
+                isAllowed |= status == current;
+            }
+            if (!isAllowed || applicationsById.get(application.getId()) != application) {
+                return false;
             }
+            applicationsByStatus.get(current).remove(application.getId());
+            switch (target) {
+                case APPROVED -> application.approve();
+                case REJECTED -> application.reject();
+                case CANCELLED -> application.cancel();
+                default -> application.setApplicationStatus(target);
+            }
+            applicationsByStatus.get(target).put(application.getId(), application);
+            changed(application);
+            return true;
         }
+    }
 
-        // Return the list of matching applications
-        return matchingApplications;
+    // Report a change after it was made, so a snapshot taken from the report sees it
+    private void changed(MortgageApplication application) {
+        if (changeTracker != null) {
+            changeTracker.applicationChanged(application.getId());
+        }
     }
 }
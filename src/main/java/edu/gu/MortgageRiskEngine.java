@@ -0,0 +1,199 @@
+package edu.gu;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Scores the risk of mortgage applications: loan-to-value, the fixed monthly payment of the loan over the
+ * term, and the debt service it puts on the property, combined into a score from 0 to 100. Also generates the
+ * amortization schedules of the loans and the cash-flow projection of a portfolio of them.
+ * <p>
+ * The inputs of an application never change, so its score is computed once and cached on it. Batches of
+ * applications, such as the submissions of a night, are scored on a {@link ForkJoinPool} by splitting them
+ * into leaves that run in parallel, and portfolios are projected the same way.
+ */
+public class MortgageRiskEngine {
+    // Term of the loans when none is specified, 30 years
+    static final int DEFAULT_TERM_MONTHS = 360;
+
+    // Number of applications a fork-join leaf scores on its own
+    private static final int LEAF_SIZE = 256;
+
+    // Number of loans a fork-join leaf projects on its own
+    private static final int PROJECTION_LEAF_SIZE = 4_096;
+
+    // Weights of loan-to-value and debt service in the score
+    private static final double LOAN_TO_VALUE_WEIGHT = 0.7;
+    private static final double DEBT_SERVICE_WEIGHT = 0.3;
+
+    // Annual debt service to value at which the debt service part of the score is maxed out
+    private static final double MAX_DEBT_SERVICE_TO_VALUE = 0.10;
+
+    // Pool batches are scored on
+    private final ForkJoinPool pool;
+
+    // Number of monthly payments of the loans
+    private final int termMonths;
+
+    /**
+     * Constructs a MortgageRiskEngine.
+     *
+     * @param pool       The pool batches are scored on.
+     * @param termMonths The number of monthly payments of the loans.
+     */
+    public MortgageRiskEngine(ForkJoinPool pool, int termMonths) {
+        if (termMonths <= 0) {
+            throw new IllegalArgumentException("Term must be greater than 0");
+        }
+        this.pool = pool;
+        this.termMonths = termMonths;
+    }
+
+    /**
+     * Retrieves the score of an application, computing and caching it the first time.
+     *
+     * @param application The application to score.
+     * @return The score of the application.
+     */
+    public MortgageRiskScore score(MortgageApplication application) {
+        MortgageRiskScore score = application.getRiskScore();
+        if (score == null) {
+            score = compute(application.getPropertyValue(), application.getLoanAmount(), application.getInterestRate());
+            application.setRiskScore(score);
+        }
+        return score;
+    }
+
+    /**
+     * Scores every application of a batch that has no score yet, in parallel.
+     *
+     * @param applications The applications to score.
+     * @return The number of applications scored, those scored before are not counted.
+     */
+    public int scoreAll(List<MortgageApplication> applications) {
+        MortgageApplication[] batch = applications.toArray(new MortgageApplication[0]);
+        return pool.invoke(new Leaves(batch, 0, batch.length));
+    }
+
+    /**
+     * Generates the amortization schedule of the loan of an application.
+     *
+     * @param application The application.
+     * @return The monthly schedule over the term.
+     */
+    public AmortizationSchedule schedule(MortgageApplication application) {
+        return AmortizationSchedule.of(application.getLoanAmount(), application.getInterestRate(), termMonths);
+    }
+
+    /**
+     * Projects the monthly cash flows of the loans of a set of applications, in parallel.
+     *
+     * @param applications The applications, usually the approved ones.
+     * @return The projection over the term.
+     */
+    public PortfolioProjection project(List<MortgageApplication> applications) {
+        int count = applications.size();
+        double[] loanAmounts = new double[count];
+        double[] ratesPercent = new double[count];
+        for (int loan = 0; loan < count; loan++) {
+            MortgageApplication application = applications.get(loan);
+            loanAmounts[loan] = application.getLoanAmount();
+            ratesPercent[loan] = application.getInterestRate();
+        }
+        return pool.invoke(new Projection(loanAmounts, ratesPercent, 0, count));
+    }
+
+    /**
+     * Computes the fixed monthly payment repaying a loan, with the closed form of an annuity.
+     *
+     * @param principal   The loan amount.
+     * @param ratePercent The annual interest rate in percent, compounded monthly.
+     * @param termMonths  The number of monthly payments.
+     * @return The monthly payment.
+     */
+    public static double monthlyPayment(double principal, double ratePercent, int termMonths) {
+        double monthlyRate = ratePercent / 100 / 12;
+        if (monthlyRate == 0) {
+            return principal / termMonths;
+        }
+        // P * r / (1 - (1 + r)^-n), with expm1 and log1p to keep precision for small rates
+        return principal * monthlyRate / -Math.expm1(-termMonths * Math.log1p(monthlyRate));
+    }
+
+    // Compute the metrics of an application and combine them into a score
+    private MortgageRiskScore compute(double propertyValue, double loanAmount, double ratePercent) {
+        double monthlyPayment = monthlyPayment(loanAmount, ratePercent, termMonths);
+        double loanToValue = loanAmount / propertyValue;
+        double debtServiceToValue = monthlyPayment * 12 / propertyValue;
+        double risk = LOAN_TO_VALUE_WEIGHT * Math.min(loanToValue, 1)
+                + DEBT_SERVICE_WEIGHT * Math.min(debtServiceToValue / MAX_DEBT_SERVICE_TO_VALUE, 1);
+        return new MortgageRiskScore(loanToValue, monthlyPayment, monthlyPayment * termMonths - loanAmount,
+                debtServiceToValue, termMonths, (int) Math.round(risk * 100));
+    }
+
+    /**
+     * Projects a range of loans, splitting it in halves down to leaves of {@link #PROJECTION_LEAF_SIZE} loans,
+     * and adds up the projections of the halves.
+     */
+    private final class Projection extends RecursiveTask<PortfolioProjection> {
+        private final double[] loanAmounts;
+        private final double[] ratesPercent;
+        private final int from;
+        private final int to;
+
+        Projection(double[] loanAmounts, double[] ratesPercent, int from, int to) {
+            this.loanAmounts = loanAmounts;
+            this.ratesPercent = ratesPercent;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected PortfolioProjection compute() {
+            if (to - from <= PROJECTION_LEAF_SIZE) {
+                return PortfolioProjection.of(loanAmounts, ratesPercent, from, to, termMonths);
+            }
+            int middle = (from + to) >>> 1;
+            Projection left = new Projection(loanAmounts, ratesPercent, from, middle);
+            left.fork();
+            PortfolioProjection right = new Projection(loanAmounts, ratesPercent, middle, to).compute();
+            return left.join().plus(right);
+        }
+    }
+
+    /**
+     * Scores a range of a batch, splitting it in halves down to leaves of {@link #LEAF_SIZE} applications,
+     * and counts the applications scored.
+     */
+    private final class Leaves extends RecursiveTask<Integer> {
+        private final MortgageApplication[] batch;
+        private final int from;
+        private final int to;
+
+        Leaves(MortgageApplication[] batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (to - from <= LEAF_SIZE) {
+                int scored = 0;
+                for (int index = from; index < to; index++) {
+                    if (batch[index].getRiskScore() == null) {
+                        score(batch[index]);
+                        scored++;
+                    }
+                }
+                return scored;
+            }
+            int middle = (from + to) >>> 1;
+            Leaves left = new Leaves(batch, from, middle);
+            left.fork();
+            int right = new Leaves(batch, middle, to).compute();
+            return left.join() + right;
+        }
+    }
+}
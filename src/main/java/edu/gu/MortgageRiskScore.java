@@ -0,0 +1,65 @@
+package edu.gu;
+
+/**
+ * Risk metrics of a mortgage application, computed once by the {@link MortgageRiskEngine} and cached on the
+ * application. Amounts are in the units of the application, millions.
+ */
+public final class MortgageRiskScore {
+    private final double loanToValue;
+    private final double monthlyPayment;
+    private final double totalInterest;
+    private final double debtServiceToValue;
+    private final int termMonths;
+    private final int riskScore;
+
+    MortgageRiskScore(double loanToValue, double monthlyPayment, double totalInterest, double debtServiceToValue,
+                      int termMonths, int riskScore) {
+        this.loanToValue = loanToValue;
+        this.monthlyPayment = monthlyPayment;
+        this.totalInterest = totalInterest;
+        this.debtServiceToValue = debtServiceToValue;
+        this.termMonths = termMonths;
+        this.riskScore = riskScore;
+    }
+
+    // Loan amount as a fraction of the property value
+    public double getLoanToValue() {
+        return loanToValue;
+    }
+
+    // Fixed monthly payment repaying the loan over the term
+    public double getMonthlyPayment() {
+        return monthlyPayment;
+    }
+
+    // Payments of a year, twelve monthly payments
+    public double getAnnualDebtService() {
+        return monthlyPayment * 12;
+    }
+
+    // Interest paid over the whole term
+    public double getTotalInterest() {
+        return totalInterest;
+    }
+
+    // Annual debt service as a fraction of the property value
+    public double getDebtServiceToValue() {
+        return debtServiceToValue;
+    }
+
+    // Number of monthly payments the metrics assume
+    public int getTermMonths() {
+        return termMonths;
+    }
+
+    // Risk score from 0, safest, to 100, riskiest
+    public int getRiskScore() {
+        return riskScore;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("risk %d/100, LTV %.1f%%, monthly payment %.6f, debt service %.2f%% of value per year",
+                riskScore, loanToValue * 100, monthlyPayment, debtServiceToValue * 100);
+    }
+}
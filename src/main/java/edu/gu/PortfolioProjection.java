@@ -0,0 +1,119 @@
+package edu.gu;
+
+/**
+ * Monthly cash flows of a portfolio of fixed-payment loans, as primitive columns summing the interest,
+ * principal and remaining balance of every loan month by month. Month 0 is the first payment of every loan,
+ * applications carry no origination date. Amounts are in the units of the loans, millions for mortgages.
+ */
+public final class PortfolioProjection {
+    private final int loans;
+    private final double[] interest;
+    private final double[] principal;
+    private final double[] balance;
+
+    PortfolioProjection(int loans, double[] interest, double[] principal, double[] balance) {
+        this.loans = loans;
+        this.interest = interest;
+        this.principal = principal;
+        this.balance = balance;
+    }
+
+    /**
+     * Projects the cash flows of a range of loans given as columns. The loans are advanced month by month
+     * together, so the inner loops run over the loan columns with no dependency between loans and the JIT
+     * can vectorize them.
+     *
+     * @param loanAmounts  The amounts borrowed.
+     * @param ratesPercent The annual interest rates in percent, compounded monthly.
+     * @param from         The index of the first loan, inclusive.
+     * @param to           The index of the last loan, exclusive.
+     * @param termMonths   The number of monthly payments of every loan.
+     * @return The projection of the loans of the range.
+     */
+    static PortfolioProjection of(double[] loanAmounts, double[] ratesPercent, int from, int to, int termMonths) {
+        int count = to - from;
+        double[] remaining = new double[count];
+        double[] rates = new double[count];
+        double[] payments = new double[count];
+        double[] accrued = new double[count];
+        for (int loan = 0; loan < count; loan++) {
+            remaining[loan] = loanAmounts[from + loan];
+            rates[loan] = ratesPercent[from + loan] / 100 / 12;
+            payments[loan] = MortgageRiskEngine.monthlyPayment(loanAmounts[from + loan], ratesPercent[from + loan], termMonths);
+        }
+
+        double[] interest = new double[termMonths];
+        double[] principal = new double[termMonths];
+        double[] balance = new double[termMonths];
+        for (int month = 0; month < termMonths; month++) {
+            for (int loan = 0; loan < count; loan++) {
+                accrued[loan] = remaining[loan] * rates[loan];
+            }
+            for (int loan = 0; loan < count; loan++) {
+                remaining[loan] = remaining[loan] + accrued[loan] - payments[loan];
+            }
+            double monthInterest = 0;
+            double monthBalance = 0;
+            for (int loan = 0; loan < count; loan++) {
+                monthInterest += accrued[loan];
+                monthBalance += remaining[loan];
+            }
+            interest[month] = monthInterest;
+            balance[month] = monthBalance;
+        }
+        double totalPayment = 0;
+        for (double payment : payments) {
+            totalPayment += payment;
+        }
+        for (int month = 0; month < termMonths; month++) {
+            principal[month] = totalPayment - interest[month];
+        }
+        // The last payments clear every loan, whatever the rounding of the columns
+        balance[termMonths - 1] = 0;
+        return new PortfolioProjection(count, interest, principal, balance);
+    }
+
+    /**
+     * Adds the cash flows of two projections of the same term, for projections computed in parts.
+     *
+     * @param other The other projection.
+     * @return The projection of the loans of both.
+     */
+    PortfolioProjection plus(PortfolioProjection other) {
+        int termMonths = balance.length;
+        double[] sumInterest = new double[termMonths];
+        double[] sumPrincipal = new double[termMonths];
+        double[] sumBalance = new double[termMonths];
+        for (int month = 0; month < termMonths; month++) {
+            sumInterest[month] = interest[month] + other.interest[month];
+            sumPrincipal[month] = principal[month] + other.principal[month];
+            sumBalance[month] = balance[month] + other.balance[month];
+        }
+        return new PortfolioProjection(loans + other.loans, sumInterest, sumPrincipal, sumBalance);
+    }
+
+    // Number of loans of the portfolio
+    public int getLoanCount() {
+        return loans;
+    }
+
+    // Number of months projected
+    public int getTermMonths() {
+        return balance.length;
+    }
+
+    // Interest received from every loan in a month, counted from 0
+    public double getInterest(int month) {
+        return interest[month];
+    }
+
+    // Principal repaid by every loan in a month, counted from 0
+    public double getPrincipal(int month) {
+        return principal[month];
+    }
+
+    // Balance outstanding over every loan after the payments of a month, counted from 0
+    public double getBalance(int month) {
+        return balance[month];
+    }
+}
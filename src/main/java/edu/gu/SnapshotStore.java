@@ -0,0 +1,539 @@
+package edu.gu;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental snapshots of the bank state, written as a chain of checkpoint files with a streaming
+ * {@link JsonGenerator}. Each checkpoint holds the users registered, the accounts changed, the transactions
+ * recorded and the mortgage applications submitted or whose status changed since the previous one, together with
+ * the number of journal records it covers. Restoring applies the chain in order, and replaying the journal past
+ * the covered records completes it. A cut without any change writes no checkpoint.
+ * <p>
+ * Once more than {@code compactionThreshold} checkpoints follow the base, the chain is folded into a new base
+ * holding every user and the last version of every account and mortgage application, and the folded files are
+ * deleted. Transactions are not carried from base to base: those of the folded checkpoints are appended to the
+ * transaction run, one object per line, and the base records the length of the run it covers. A compaction
+ * therefore copies the transactions it folds, not every transaction ever recorded. Restoring starts from the
+ * latest base, then the run up to that length, and ignores the checkpoints the base folded.
+ * <p>
+ * Checkpoints and bases are written to a temporary file, forced and atomically renamed, so a crash never leaves
+ * a partial one. A crash during a compaction can leave transactions appended to the run past the length the
+ * base covers; they are dropped when the run is next restored or appended to.
+ */
+public class SnapshotStore {
+    // Pattern of the checkpoint file names, ordered by their sequence number
+    private static final String CHECKPOINT_FILE_FORMAT = "checkpoint-%08d.json";
+    private static final String CHECKPOINT_FILE_GLOB = "checkpoint-*.json";
+
+    // Pattern of the base file names, numbered after the last checkpoint they fold
+    private static final String BASE_FILE_FORMAT = "base-%08d.json";
+    private static final String BASE_FILE_GLOB = "base-*.json";
+
+    // File the transactions of the folded checkpoints are appended to
+    private static final String TRANSACTION_RUN_FILE = "transactions.jsonl";
+
+    // Number of checkpoints after the base the chain is folded past when none is specified
+    static final int DEFAULT_COMPACTION_THRESHOLD = 16;
+
+    // Directory of the checkpoint files
+    private final Path directory;
+
+    // Number of checkpoints after the base the chain is folded past
+    private final int compactionThreshold;
+
+    private final JsonFactory jsonFactory;
+    private final ObjectReader userReader;
+    private final ObjectReader accountReader;
+
+    // Sequence number of the last checkpoint written or found, guarded by this
+    private long lastSequence;
+
+    // Sequence number of the last checkpoint folded into the base, 0 without a base, guarded by this
+    private long baseSequence;
+
+    // Number of journal records covered by the last checkpoint written or restored, guarded by this
+    private long lastJournalRecords;
+
+    /**
+     * Opens a snapshot store with the default compaction threshold, creating its directory if needed.
+     *
+     * @param directory Directory of the checkpoint files.
+     * @throws IOException If the directory cannot be created or listed.
+     */
+    public SnapshotStore(Path directory) throws IOException {
+        this(directory, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * Opens a snapshot store, creating its directory if needed.
+     *
+     * @param directory           Directory of the checkpoint files.
+     * @param compactionThreshold Number of checkpoints after the base the chain is folded into a new base past.
+     * @throws IOException If the directory cannot be created or listed.
+     */
+    public SnapshotStore(Path directory, int compactionThreshold) throws IOException {
+        if (compactionThreshold <= 0) {
+            throw new IllegalArgumentException("Compaction threshold must be greater than 0");
+        }
+        this.directory = directory;
+        this.compactionThreshold = compactionThreshold;
+        // Amounts read into trees keep their exact decimal value, so folding the chain never rounds them
+        ObjectMapper mapper = new ObjectMapper().enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+        this.jsonFactory = mapper.getFactory();
+        this.userReader = mapper.readerFor(User.class);
+        this.accountReader = mapper.readerFor(Account.class);
+        Files.createDirectories(directory);
+        Path base = findBase();
+        this.baseSequence = base == null ? 0 : sequenceOf(base);
+        List<Path> checkpoints = listCheckpoints();
+        this.lastSequence = checkpoints.isEmpty() ? baseSequence : sequenceOf(checkpoints.get(checkpoints.size() - 1));
+    }
+
+    /**
+     * Writes the changes of a cut as the next checkpoint of the chain, unless nothing changed. If this throws,
+     * no checkpoint was published and the cut can be merged back into the tracker.
+     *
+     * @param cut The changes since the previous checkpoint.
+     * @return The path of the checkpoint written, or null if nothing changed.
+     * @throws IOException If the checkpoint cannot be written.
+     */
+    public synchronized Path write(ChangeTracker.Cut cut) throws IOException {
+        if (cut.getUsers().isEmpty() && cut.getAccounts().isEmpty() && !cut.hasTransactions()
+                && cut.getMortgageApplications().isEmpty() && cut.getJournalRecords() == lastJournalRecords) {
+            return null;
+        }
+
+        long sequence = lastSequence + 1;
+        Path checkpoint = directory.resolve(String.format(CHECKPOINT_FILE_FORMAT, sequence));
+        Path temporary = directory.resolve(checkpoint.getFileName() + ".tmp");
+
+        try (OutputStream out = Files.newOutputStream(temporary);
+             JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", sequence);
+            generator.writeNumberField("journalRecords", cut.getJournalRecords());
+
+            generator.writeArrayFieldStart("users");
+            for (User user : cut.getUsers()) {
+                generator.writeStartObject();
+                generator.writeStringField("id", user.getId());
+                generator.writeStringField("username", user.getUsername());
+                generator.writeStringField("password", user.getPassword());
+                generator.writeStringField("email", user.getEmail());
+                generator.writeStringField("role", user.getRole().name());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("accounts");
+            for (Account account : cut.getAccounts()) {
+                generator.writeStartObject();
+                generator.writeStringField("id", account.getId());
+                generator.writeStringField("accountNumber", account.getAccountNumber());
+                generator.writeStringField("accountName", account.getAccountName());
+                generator.writeStringField("accountType", account.getAccountType().name());
+                generator.writeStringField("ownerId", account.getOwnerId());
+                generator.writeNumberField("balance", Money.toDecimal(account.getBalance()));
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("transactions");
+            try {
+                cut.forEachTransaction(transaction -> writeTransaction(generator, transaction));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+
+            generator.writeArrayFieldStart("mortgageApplications");
+            for (MortgageApplication application : cut.getMortgageApplications()) {
+                generator.writeStartObject();
+                generator.writeStringField("id", application.getId());
+                generator.writeStringField("applicantId", application.getApplicant().getId());
+                generator.writeNumberField("propertyValue", application.getPropertyValue());
+                generator.writeNumberField("loanAmount", application.getLoanAmount());
+                generator.writeNumberField("interestRate", application.getInterestRate());
+                generator.writeStringField("status", application.getApplicationStatus().name());
+                generator.writeNumberField("submittedMillis", application.getSubmittedMillis());
+                generator.writeBooleanField("referred", application.isReferred());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+
+            generator.writeEndObject();
+        }
+
+        publish(temporary, checkpoint);
+        lastSequence = sequence;
+        lastJournalRecords = cut.getJournalRecords();
+        return checkpoint;
+    }
+
+    /**
+     * Folds the chain into a new base once it grew past the compaction threshold.
+     *
+     * @throws IOException If the base cannot be written or the folded files cannot be deleted.
+     */
+    public synchronized void compactIfDue() throws IOException {
+        if (lastSequence - baseSequence > compactionThreshold) {
+            compact();
+        }
+    }
+
+    // Fold the base and the checkpoints after it into a new base, then delete the folded files.
+    // Users, accounts and mortgage applications are merged in memory, the last version winning,
+    // while the transactions of the folded files are appended to the run without being bound.
+    private void compact() throws IOException {
+        List<Path> chain = new ArrayList<>();
+        Path base = findBase();
+        if (base != null) {
+            chain.add(base);
+        }
+        for (Path checkpoint : listCheckpoints()) {
+            if (sequenceOf(checkpoint) > baseSequence) {
+                chain.add(checkpoint);
+            }
+        }
+        long coveredBytes = base == null ? 0 : readHeader(base).transactionBytes;
+
+        Map<String, JsonNode> users = new LinkedHashMap<>();
+        Map<String, JsonNode> accounts = new LinkedHashMap<>();
+        Map<String, JsonNode> applications = new LinkedHashMap<>();
+        long runBytes;
+        try (FileChannel run = openTransactionRun(coveredBytes);
+             JsonGenerator generator = jsonFactory.createGenerator(Channels.newOutputStream(run), JsonEncoding.UTF8)) {
+            // The run is forced below, closing the generator must leave its channel open
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            for (Path file : chain) {
+                readSections(file, (section, parser) -> {
+                    switch (section) {
+                        case "users" -> putById(users, parser.readValueAsTree());
+                        case "accounts" -> putById(accounts, parser.readValueAsTree());
+                        case "mortgageApplications" -> putById(applications, parser.readValueAsTree());
+                        case "transactions" -> {
+                            generator.writeTree(parser.readValueAsTree());
+                            generator.writeRaw('\n');
+                        }
+                        default -> parser.skipChildren();
+                    }
+                });
+            }
+            generator.flush();
+            run.force(true);
+            runBytes = run.position();
+        }
+
+        long sequence = lastSequence;
+        Path compacted = directory.resolve(String.format(BASE_FILE_FORMAT, sequence));
+        Path temporary = directory.resolve(compacted.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporary);
+             JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeNumberField("sequence", sequence);
+            generator.writeNumberField("journalRecords", lastJournalRecords);
+            generator.writeNumberField("transactionBytes", runBytes);
+            writeNodes(generator, "users", users.values());
+            writeNodes(generator, "accounts", accounts.values());
+            writeNodes(generator, "mortgageApplications", applications.values());
+            generator.writeEndObject();
+        }
+        publish(temporary, compacted);
+        baseSequence = sequence;
+
+        // The new base is durable, restoring no longer reads the files it folded, nor those a crash during an
+        // earlier compaction left behind
+        for (Path checkpoint : listCheckpoints()) {
+            if (sequenceOf(checkpoint) <= sequence) {
+                Files.delete(checkpoint);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, BASE_FILE_GLOB)) {
+            for (Path stale : stream) {
+                if (sequenceOf(stale) < sequence) {
+                    Files.delete(stale);
+                }
+            }
+        }
+    }
+
+    // Open the transaction run positioned after the part the base covers, dropping what an interrupted
+    // compaction appended past it
+    private FileChannel openTransactionRun(long coveredBytes) throws IOException {
+        FileChannel run = FileChannel.open(directory.resolve(TRANSACTION_RUN_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (run.size() < coveredBytes) {
+                throw new IOException(String.format("The base covers %d bytes of the transaction run but it holds %d",
+                        coveredBytes, run.size()));
+            }
+            run.truncate(coveredBytes);
+            run.position(coveredBytes);
+            return run;
+        } catch (IOException e) {
+            run.close();
+            throw e;
+        }
+    }
+
+    // Keep the latest version of a record by its identifier, in the order records first appeared
+    private static void putById(Map<String, JsonNode> records, JsonNode record) {
+        records.put(record.get("id").asText(), record);
+    }
+
+    // Write a named array of records
+    private static void writeNodes(JsonGenerator generator, String name, Collection<JsonNode> nodes) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (JsonNode node : nodes) {
+            generator.writeTree(node);
+        }
+        generator.writeEndArray();
+    }
+
+    // Force a temporary file and atomically rename it to its final name
+    private static void publish(Path temporary, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Write one transaction object, the view is only valid during the call
+    private static void writeTransaction(JsonGenerator generator, TransactionView transaction) {
+        try {
+            generator.writeStartObject();
+            generator.writeStringField("id", transaction.getId());
+            generator.writeStringField("type", transaction.getType().name());
+            generator.writeNumberField("amount", Money.toDecimal(transaction.getAmount()));
+            generator.writeNumberField("timestamp", transaction.getTimestampMillis());
+            generator.writeStringField("accountId", transaction.getAccountId());
+            if (transaction.getType() == TransactionType.TRANSFER) {
+                generator.writeStringField("recipientAccountId", transaction.getRecipientAccountId());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Applies the latest base, if any, and then every checkpoint after it, in order.
+     *
+     * @param restorer Receives the restored records.
+     * @return The number of journal records covered by the last checkpoint, 0 if there is none.
+     * @throws IOException If a checkpoint cannot be read.
+     */
+    public synchronized long restore(Restorer restorer) throws IOException {
+        long journalRecords = 0;
+        Path base = findBase();
+        if (base != null) {
+            Header header = restore(base, restorer);
+            if (header.transactionBytes > 0) {
+                restoreTransactionRun(header.transactionBytes, restorer);
+            }
+            journalRecords = header.journalRecords;
+        }
+        for (Path checkpoint : listCheckpoints()) {
+            // Checkpoints folded into the base are left behind only by a crash during compaction
+            if (sequenceOf(checkpoint) > baseSequence) {
+                journalRecords = restore(checkpoint, restorer).journalRecords;
+            }
+        }
+        lastJournalRecords = journalRecords;
+        return journalRecords;
+    }
+
+    // Apply one checkpoint and return its header
+    private Header restore(Path checkpoint, Restorer restorer) throws IOException {
+        return readSections(checkpoint, (section, parser) -> {
+            switch (section) {
+                case "users" -> restorer.user(userReader.readValue(parser, User.class));
+                case "accounts" -> restorer.account(accountReader.readValue(parser, Account.class));
+                case "transactions" -> restorer.transaction(toTransaction(parser.readValueAsTree()));
+                case "mortgageApplications" -> {
+                    JsonNode node = parser.readValueAsTree();
+                    restorer.mortgageApplication(node.get("id").asText(), node.get("applicantId").asText(),
+                            node.get("propertyValue").asDouble(), node.get("loanAmount").asDouble(),
+                            node.get("interestRate").asDouble(),
+                            MortgageApplicationStatus.valueOf(node.get("status").asText()),
+                            // Checkpoints written before these fields were kept restore as submitted now, not referred
+                            node.path("submittedMillis").asLong(System.currentTimeMillis()),
+                            node.path("referred").asBoolean(false));
+                }
+                default -> parser.skipChildren();
+            }
+        });
+    }
+
+    // Apply the transactions of the run the base covers, in the order they were folded
+    private void restoreTransactionRun(long coveredBytes, Restorer restorer) throws IOException {
+        try (FileChannel run = openTransactionRun(coveredBytes);
+             JsonParser parser = jsonFactory.createParser(Channels.newInputStream(run.position(0)))) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                restorer.transaction(toTransaction(parser.readValueAsTree()));
+            }
+        }
+    }
+
+    // Pass the parser positioned on every object of the arrays of a checkpoint to the reader, which must consume
+    // the object, and return the header of the checkpoint
+    private Header readSections(Path checkpoint, SectionReader reader) throws IOException {
+        Header header = new Header();
+        try (JsonParser parser = jsonFactory.createParser(checkpoint.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Checkpoint must start with an object: " + checkpoint);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (value != JsonToken.START_ARRAY) {
+                    header.read(field, parser);
+                } else if (reader == null) {
+                    // The header fields precede the arrays
+                    break;
+                } else {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        reader.read(field, parser);
+                    }
+                }
+            }
+        }
+        return header;
+    }
+
+    // Read the header of a checkpoint or base without reading its arrays
+    private Header readHeader(Path checkpoint) throws IOException {
+        return readSections(checkpoint, null);
+    }
+
+    // Rebuild a transaction with its original identifier and timestamp
+    private static Transaction toTransaction(JsonNode node) {
+        long id = TransactionIds.parse(node.get("id").asText());
+        long timestamp = node.get("timestamp").asLong();
+        String accountId = node.get("accountId").asText();
+        long amount = Money.fromDecimal(node.get("amount").decimalValue());
+        return switch (TransactionType.valueOf(node.get("type").asText())) {
+            case DEPOSIT -> new DepositTransaction(id, timestamp, accountId, amount);
+            case WITHDRAWAL -> new WithdrawalTransaction(id, timestamp, accountId, amount);
+            case TRANSFER -> new TransferTransaction(id, timestamp, accountId, node.get("recipientAccountId").asText(), amount);
+        };
+    }
+
+    // List the checkpoint files in sequence order
+    private List<Path> listCheckpoints() throws IOException {
+        List<Path> checkpoints = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, CHECKPOINT_FILE_GLOB)) {
+            stream.forEach(checkpoints::add);
+        }
+        checkpoints.sort(null);
+        return checkpoints;
+    }
+
+    // Find the base with the highest sequence number, or null if the chain was never folded
+    private Path findBase() throws IOException {
+        Path latest = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, BASE_FILE_GLOB)) {
+            for (Path base : stream) {
+                if (latest == null || sequenceOf(base) > sequenceOf(latest)) {
+                    latest = base;
+                }
+            }
+        }
+        return latest;
+    }
+
+    // Parse the sequence number out of a checkpoint or base file name
+    private static long sequenceOf(Path checkpoint) {
+        String name = checkpoint.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - ".json".length()));
+    }
+
+    // Receives the objects of the arrays of a checkpoint, one at a time
+    private interface SectionReader {
+        void read(String section, JsonParser parser) throws IOException;
+    }
+
+    // Scalar fields of a checkpoint or base
+    private static final class Header {
+        // Number of journal records the checkpoint covers
+        long journalRecords;
+
+        // Length of the transaction run a base covers, 0 for checkpoints
+        long transactionBytes;
+
+        void read(String field, JsonParser parser) throws IOException {
+            switch (field) {
+                case "journalRecords" -> journalRecords = parser.getLongValue();
+                case "transactionBytes" -> transactionBytes = parser.getLongValue();
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    /**
+     * Receives the records of the checkpoints being restored.
+     */
+    public interface Restorer {
+        /**
+         * Called for a user registered after the initial data was loaded.
+         *
+         * @param user The user.
+         */
+        void user(User user);
+
+        /**
+         * Called for an account with its balance at the checkpoint, later checkpoints override earlier ones.
+         *
+         * @param account The account.
+         */
+        void account(Account account);
+
+        /**
+         * Called for a transaction, in record order.
+         *
+         * @param transaction The transaction with its original identifier and timestamp.
+         */
+        void transaction(Transaction transaction);
+
+        /**
+         * Called for a mortgage application, later checkpoints override earlier ones.
+         *
+         * @param id              The unique identifier of the application.
+         * @param applicantId     The unique identifier of the applicant.
+         * @param propertyValue   The value of the property.
+         * @param loanAmount      The requested loan amount.
+         * @param interestRate    The interest rate.
+         * @param status          The status of the application at the checkpoint.
+         * @param submittedMillis The time the application was submitted in milliseconds since the Unix epoch.
+         * @param referred        Whether the automatic decisioning left the application to a credit employee.
+         */
+        void mortgageApplication(String id, String applicantId, double propertyValue, double loanAmount,
+                                 double interestRate, MortgageApplicationStatus status, long submittedMillis,
+                                 boolean referred);
+    }
+}
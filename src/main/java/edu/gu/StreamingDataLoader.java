@@ -0,0 +1,145 @@
+package edu.gu;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Loads a data snapshot in the layout of data.json, an object with a {@code users} and an {@code accounts}
+ * array, with Jackson's streaming token API.
+ * Users and accounts are bound one at a time and handed to their consumers straight away, so memory
+ * use does not depend on the snapshot size beyond what the consumers keep.
+ */
+public class StreamingDataLoader {
+    // Readers binding a single JSON object to a user or an account
+    private final ObjectReader userReader;
+    private final ObjectReader accountReader;
+
+    // Number of records between two progress reports
+    private final long progressInterval;
+
+    // Stream progress is reported to, or null for no reports
+    private final PrintStream progressOut;
+
+    /**
+     * Constructs a StreamingDataLoader.
+     *
+     * @param progressInterval Number of records between two progress reports.
+     * @param progressOut      Stream progress is reported to, or null for no reports.
+     */
+    public StreamingDataLoader(long progressInterval, PrintStream progressOut) {
+        if (progressInterval <= 0) {
+            throw new IllegalArgumentException("Progress interval must be greater than 0");
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        this.userReader = mapper.readerFor(User.class);
+        this.accountReader = mapper.readerFor(Account.class);
+        this.progressInterval = progressInterval;
+        this.progressOut = progressOut;
+    }
+
+    /**
+     * Streams the users and accounts of a snapshot file to their consumers, in file order.
+     *
+     * @param file     The snapshot file.
+     * @param users    Receives every user.
+     * @param accounts Receives every account.
+     * @return The number of records loaded and the load rate.
+     * @throws IOException If the file cannot be read or is not a valid snapshot.
+     */
+    public LoadReport load(Path file, Consumer<User> users, Consumer<Account> accounts) throws IOException {
+        long startNanos = System.nanoTime();
+        long[] counts = new long[2];
+
+        try (JsonParser parser = userReader.getFactory().createParser(file.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Snapshot must start with an object: " + file);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("users".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        users.accept(userReader.readValue(parser, User.class));
+                        counts[0]++;
+                        reportProgress(counts[0] + counts[1], startNanos);
+                    }
+                } else if ("accounts".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        accounts.accept(accountReader.readValue(parser, Account.class));
+                        counts[1]++;
+                        reportProgress(counts[0] + counts[1], startNanos);
+                    }
+                } else {
+                    // Unknown properties are ignored
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        LoadReport report = new LoadReport(counts[0], counts[1], System.nanoTime() - startNanos);
+        if (progressOut != null && report.getRecords() >= progressInterval) {
+            progressOut.println(report);
+        }
+        return report;
+    }
+
+    // Print the load progress every progressInterval records
+    private void reportProgress(long records, long startNanos) {
+        if (progressOut != null && records % progressInterval == 0) {
+            progressOut.printf("Loaded %d records (%.0f records/s)\n", records, LoadReport.rate(records, System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Summary of a completed load.
+     */
+    public static final class LoadReport {
+        private final long users;
+        private final long accounts;
+        private final long elapsedNanos;
+
+        LoadReport(long users, long accounts, long elapsedNanos) {
+            this.users = users;
+            this.accounts = accounts;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        // Records per second over the given elapsed time
+        static double rate(long records, long elapsedNanos) {
+            return elapsedNanos == 0 ? 0 : records * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        // Number of users loaded
+        public long getUsers() {
+            return users;
+        }
+
+        // Number of accounts loaded
+        public long getAccounts() {
+            return accounts;
+        }
+
+        // Number of users and accounts loaded
+        public long getRecords() {
+            return users + accounts;
+        }
+
+        // Load rate in records per second
+        public double getRecordsPerSecond() {
+            return rate(getRecords(), elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d users and %d accounts in %.1f s (%.0f records/s)",
+                    users, accounts, elapsedNanos / 1_000_000_000.0, getRecordsPerSecond());
+        }
+    }
+}
@@ -1,31 +1,29 @@
 package edu.gu;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Objects;
-import java.util.UUID;
-
 // Abstract class representing a financial transaction
 public abstract class Transaction {
-    // Unique identifier for the transaction
-    private final String ID;
+    // Unique, time-ordered identifier for the transaction, see TransactionIds
+    private final long ID;
 
-    // Timestamp indicating when the transaction occurred
-    private final String timestamp;
+    // Timestamp indicating when the transaction occurred, in milliseconds since the Unix epoch
+    private final long timestamp;
 
     // Type of the transaction (e.g., deposit, withdrawal, transfer)
     private final TransactionType type;
 
-    // Amount involved in the transaction
-    private final double amount;
+    // Amount involved in the transaction in minor units (cents)
+    private final long amount;
 
     // Account of the transaction
     private final String accountId;
 
     // Constructor to initialize common properties of transactions
-    Transaction(TransactionType type, double amount, String accountId) {
+    Transaction(TransactionType type, long amount, String accountId) {
+        // Read the clock once for both the identifier and the timestamp
+        long now = System.currentTimeMillis();
+
         // Generate a unique identifier for the transaction
-        this.ID = UUID.randomUUID().toString();
+        this.ID = TransactionIds.next(now);
 
         // Set the type of the transaction
         this.type = type;
@@ -33,20 +31,34 @@ public abstract class Transaction {
         // Set the amount involved in the transaction
         this.amount = amount;
 
-        // Set the timestamp to the current date and time
-        this.timestamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+        // Set the timestamp to the current date and time, it is only formatted when displayed
+        this.timestamp = now;
 
         // Set the accountId of the transaction
         this.accountId = accountId;
     }
 
-    // Getter method to retrieve the unique identifier of the transaction
+    // Constructor restoring a transaction read back from the journal with its original identifier and timestamp
+    Transaction(long id, long timestamp, TransactionType type, long amount, String accountId) {
+        this.ID = id;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.amount = amount;
+        this.accountId = accountId;
+    }
+
+    // Getter method to retrieve the unique identifier of the transaction in its display form
     public String getId() {
+        return TransactionIds.format(ID);
+    }
+
+    // Getter method to retrieve the unique identifier of the transaction as a number
+    public long getIdValue() {
         return ID;
     }
 
-    // Getter method to retrieve the amount involved in the transaction
-    public double getAmount() {
+    // Getter method to retrieve the amount involved in the transaction in minor units
+    public long getAmount() {
         return amount;
     }
 
@@ -55,8 +67,13 @@ public abstract class Transaction {
         return this.type;
     }
 
-    // Getter method to retrieve the timestamp of the transaction
+    // Getter method to retrieve the timestamp of the transaction in the yyyy.MM.dd.HH.mm.ss layout
     public String getTimestamp() {
+        return TransactionIds.formatTimestamp(timestamp);
+    }
+
+    // Getter method to retrieve the timestamp of the transaction in milliseconds since the Unix epoch
+    public long getTimestampMillis() {
         return timestamp;
     }
 
@@ -68,8 +85,8 @@ public abstract class Transaction {
     @Override
     public String toString() {
         return type + " Transaction { " + '\n' +
-                "   timestamp = " + timestamp + '\n' +
-                "   amount = " + amount + '\n' +
+                "   timestamp = " + getTimestamp() + '\n' +
+                "   amount = " + Money.format(amount) + '\n' +
                 "   account ID='" + accountId + '\n' +
                 "}";
     }
@@ -80,8 +97,8 @@ public abstract class Transaction {
         if (this == anotherTransaction) return true;
         if (anotherTransaction == null || getClass() != anotherTransaction.getClass()) return false;
         Transaction that = (Transaction) anotherTransaction;
-        return this.ID.equals(that.ID) && Double.compare(that.amount, this.amount) == 0 &&
-                Objects.equals(this.timestamp, that.timestamp) && this.type == that.type;
+        return this.ID == that.ID && that.amount == this.amount &&
+                this.timestamp == that.timestamp && this.type == that.type;
     }
 
 }
@@ -0,0 +1,466 @@
+package edu.gu;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold tier of the transaction history: finds the {@link TransactionLog} record of a transaction that is no
+ * longer held on the heap by its identifier, and holds the older entries of the account histories.
+ * <p>
+ * Transactions stay in the hot window of the {@link TransactionManager} while they are among the most recent
+ * ones and younger than the configured age. Older ones are spilled here as runs of {@code [long id][long address]}
+ * entries sorted by identifier, memory-mapped from files or allocated as direct buffers when no directory is
+ * given, and found with a binary search. Every spilled run is merged with the previous one while they are of a
+ * similar size, so the number of runs grows logarithmically with the number of archived transactions and the
+ * heap only holds a small descriptor per run.
+ * <p>
+ * Account histories move their entries here in chunks of {@link #HISTORY_CHUNK_ENTRIES}
+ * {@code [long address][long timestamp]} entries, appended to fixed-size segments and addressed by their number.
+ * <p>
+ * Like the history log, the archive is derived from the write-ahead journal, so the files of a previous run
+ * are discarded on open and rebuilt while the journal is replayed.
+ */
+public class TransactionArchive implements Closeable {
+    // Defaults of the hot window
+    static final int DEFAULT_HOT_TRANSACTIONS = 100_000;
+    static final long DEFAULT_HOT_AGE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    // Returned when an identifier is not archived
+    static final long NOT_FOUND = -1;
+
+    // Number of entries of an account history chunk
+    static final int HISTORY_CHUNK_ENTRIES = 1_024;
+
+    // Size in bytes of an entry, the identifier followed by the history log address, or the history log
+    // address followed by the timestamp in a history chunk
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    // Size in bytes of a history chunk, and number of chunks per history segment
+    private static final int HISTORY_CHUNK_SIZE = HISTORY_CHUNK_ENTRIES * ENTRY_SIZE;
+    private static final int HISTORY_CHUNKS_PER_SEGMENT = 1_024;
+
+    // Largest run merging produces, so a run fits a single mapping
+    private static final int MAX_RUN_ENTRIES = 1 << 26;
+
+    // Pattern of the run file names
+    private static final String RUN_FILE_FORMAT = "archive-%08d.idx";
+    private static final String RUN_FILE_GLOB = "archive-*.idx";
+
+    // Pattern of the history segment file names
+    private static final String HISTORY_FILE_FORMAT = "history-%08d.idx";
+    private static final String HISTORY_FILE_GLOB = "history-*.idx";
+
+    // Directory of the run and history segment files, or null when they are held in direct memory
+    private final Path directory;
+
+    // Number of most recent transactions kept on the heap
+    private final int hotTransactions;
+
+    // Age after which transactions are no longer kept on the heap
+    private final long hotAgeMillis;
+
+    // Runs from the oldest to the newest, replaced as a whole when runs are added or merged so readers never lock
+    private volatile Run[] runs = new Run[0];
+
+    // Number used in the name of the next run file, guarded by this
+    private int nextRunNumber;
+
+    // History segments in chunk order, replaced as a whole when a segment is added so readers never lock
+    private volatile ByteBuffer[] historySegments = new ByteBuffer[0];
+
+    // Number of history chunks stored, guarded by the history lock
+    private long historyChunks;
+
+    // Guards the history segments separately from the runs, so account histories never wait for a merge
+    private final Object historyLock = new Object();
+
+    /**
+     * Opens a transaction archive, discarding the files of a previous run.
+     *
+     * @param directory       Directory of the archive files, or null to keep the archive in direct memory.
+     * @param hotTransactions Number of most recent transactions kept on the heap.
+     * @param hotAgeMillis    Age after which transactions are no longer kept on the heap.
+     * @throws IOException If the directory cannot be created or cleaned.
+     */
+    public TransactionArchive(Path directory, int hotTransactions, long hotAgeMillis) throws IOException {
+        if (hotTransactions <= 0 || hotAgeMillis <= 0) {
+            throw new IllegalArgumentException("Hot transactions and hot age must be greater than 0");
+        }
+        this.directory = directory;
+        this.hotTransactions = hotTransactions;
+        this.hotAgeMillis = hotAgeMillis;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, RUN_FILE_GLOB)) {
+                for (Path run : stale) {
+                    Files.delete(run);
+                }
+            }
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, HISTORY_FILE_GLOB)) {
+                for (Path segment : stale) {
+                    Files.delete(segment);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a transaction archive held in direct memory, with the default hot window.
+     *
+     * @return The in-memory transaction archive.
+     */
+    public static TransactionArchive inMemory() {
+        try {
+            return new TransactionArchive(null, DEFAULT_HOT_TRANSACTIONS, DEFAULT_HOT_AGE_MILLIS);
+        } catch (IOException e) {
+            // Direct runs involve no file
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Retrieves the number of most recent transactions kept on the heap.
+     *
+     * @return The size of the hot window.
+     */
+    public int getHotTransactions() {
+        return hotTransactions;
+    }
+
+    /**
+     * Retrieves the age after which transactions are no longer kept on the heap.
+     *
+     * @return The age in milliseconds.
+     */
+    public long getHotAgeMillis() {
+        return hotAgeMillis;
+    }
+
+    /**
+     * Archives a batch of transactions. The arrays are sorted in place by identifier.
+     *
+     * @param ids       The identifiers of the transactions.
+     * @param addresses The history log addresses of the transactions, parallel to the identifiers.
+     * @param count     The number of transactions of the batch, from the start of the arrays.
+     * @throws UncheckedIOException If a run cannot be written.
+     */
+    public synchronized void spill(long[] ids, long[] addresses, int count) {
+        if (count == 0) {
+            return;
+        }
+        sortById(ids, addresses, count);
+        try {
+            Run run = newRun(count);
+            for (int i = 0; i < count; i++) {
+                run.buffer.putLong(i * ENTRY_SIZE, ids[i]);
+                run.buffer.putLong(i * ENTRY_SIZE + Long.BYTES, addresses[i]);
+            }
+            run.seal(ids[0], ids[count - 1]);
+            Run[] grown = Arrays.copyOf(runs, runs.length + 1);
+            grown[grown.length - 1] = run;
+            runs = grown;
+            compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write a transaction archive run", e);
+        }
+    }
+
+    /**
+     * Finds the history log address of an archived transaction.
+     *
+     * @param id The identifier of the transaction.
+     * @return The address of its record, or {@link #NOT_FOUND} if it is not archived.
+     */
+    public long find(long id) {
+        Run[] current = runs;
+        // Runs are spilled in time order, so recent identifiers are found first
+        for (int i = current.length - 1; i >= 0; i--) {
+            Run run = current[i];
+            if (id >= run.minId && id <= run.maxId) {
+                long address = run.find(id);
+                if (address != NOT_FOUND) {
+                    return address;
+                }
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Stores a full chunk of an account history.
+     *
+     * @param addresses  The history log addresses of the chunk, {@link #HISTORY_CHUNK_ENTRIES} of them.
+     * @param timestamps The timestamps of the chunk, parallel to the addresses.
+     * @return The number of the chunk.
+     * @throws UncheckedIOException If a new history segment cannot be mapped.
+     */
+    long storeHistoryChunk(long[] addresses, long[] timestamps) {
+        synchronized (historyLock) {
+            long chunk = historyChunks;
+            int segmentIndex = (int) (chunk / HISTORY_CHUNKS_PER_SEGMENT);
+            if (segmentIndex == historySegments.length) {
+                try {
+                    addHistorySegment();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to add a transaction archive history segment", e);
+                }
+            }
+            ByteBuffer segment = historySegments[segmentIndex];
+            int offset = (int) (chunk % HISTORY_CHUNKS_PER_SEGMENT) * HISTORY_CHUNK_SIZE;
+            for (int i = 0; i < HISTORY_CHUNK_ENTRIES; i++) {
+                segment.putLong(offset + i * ENTRY_SIZE, addresses[i]);
+                segment.putLong(offset + i * ENTRY_SIZE + Long.BYTES, timestamps[i]);
+            }
+            historyChunks = chunk + 1;
+            return chunk;
+        }
+    }
+
+    /**
+     * Retrieves a history log address of a history chunk.
+     *
+     * @param chunk The number of the chunk.
+     * @param index The index of the entry in the chunk.
+     * @return The history log address.
+     */
+    long historyAddress(long chunk, int index) {
+        return historySegments[(int) (chunk / HISTORY_CHUNKS_PER_SEGMENT)].getLong(historyOffset(chunk, index));
+    }
+
+    /**
+     * Retrieves a timestamp of a history chunk.
+     *
+     * @param chunk The number of the chunk.
+     * @param index The index of the entry in the chunk.
+     * @return The timestamp in milliseconds since the Unix epoch.
+     */
+    long historyTimestamp(long chunk, int index) {
+        return historySegments[(int) (chunk / HISTORY_CHUNKS_PER_SEGMENT)]
+                .getLong(historyOffset(chunk, index) + Long.BYTES);
+    }
+
+    private static int historyOffset(long chunk, int index) {
+        return (int) (chunk % HISTORY_CHUNKS_PER_SEGMENT) * HISTORY_CHUNK_SIZE + index * ENTRY_SIZE;
+    }
+
+    // Map or allocate a new history segment, the caller holds the history lock
+    private void addHistorySegment() throws IOException {
+        int size = HISTORY_CHUNKS_PER_SEGMENT * HISTORY_CHUNK_SIZE;
+        ByteBuffer segment;
+        if (directory == null) {
+            segment = ByteBuffer.allocateDirect(size);
+        } else {
+            Path file = directory.resolve(String.format(HISTORY_FILE_FORMAT, historySegments.length));
+            // The mapping stays valid after its channel is closed
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+        ByteBuffer[] grown = Arrays.copyOf(historySegments, historySegments.length + 1);
+        grown[grown.length - 1] = segment;
+        historySegments = grown;
+    }
+
+    /**
+     * Retrieves the number of archived transactions.
+     *
+     * @return The number of transactions.
+     */
+    public long size() {
+        long size = 0;
+        for (Run run : runs) {
+            size += run.count;
+        }
+        return size;
+    }
+
+    /**
+     * Retrieves the number of runs the archived transactions are stored in.
+     *
+     * @return The number of runs.
+     */
+    public int getRunCount() {
+        return runs.length;
+    }
+
+    /**
+     * Releases the runs, their files are discarded when the archive is next opened.
+     */
+    @Override
+    public synchronized void close() {
+        runs = new Run[0];
+        synchronized (historyLock) {
+            historySegments = new ByteBuffer[0];
+        }
+    }
+
+    // Merge the newest run into the previous one while they are of a similar size
+    private void compact() throws IOException {
+        Run[] current = runs;
+        while (current.length >= 2) {
+            Run older = current[current.length - 2];
+            Run newer = current[current.length - 1];
+            if (newer.count * 2L < older.count || (long) older.count + newer.count > MAX_RUN_ENTRIES) {
+                return;
+            }
+            Run merged = merge(older, newer);
+            Run[] shrunk = Arrays.copyOf(current, current.length - 1);
+            shrunk[shrunk.length - 1] = merged;
+            runs = shrunk;
+            current = shrunk;
+            older.discard();
+            newer.discard();
+        }
+    }
+
+    // Write the entries of two runs into a new run, in identifier order
+    private Run merge(Run older, Run newer) throws IOException {
+        Run merged = newRun(older.count + newer.count);
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < older.count || j < newer.count) {
+            Run source;
+            int index;
+            if (j == newer.count || (i < older.count && older.idAt(i) <= newer.idAt(j))) {
+                source = older;
+                index = i++;
+            } else {
+                source = newer;
+                index = j++;
+            }
+            merged.buffer.putLong(k * ENTRY_SIZE, source.idAt(index));
+            merged.buffer.putLong(k * ENTRY_SIZE + Long.BYTES, source.addressAt(index));
+            k++;
+        }
+        merged.seal(Math.min(older.minId, newer.minId), Math.max(older.maxId, newer.maxId));
+        return merged;
+    }
+
+    // Map or allocate a run of the given number of entries
+    private Run newRun(int count) throws IOException {
+        int size = count * ENTRY_SIZE;
+        if (directory == null) {
+            return new Run(ByteBuffer.allocateDirect(size), count, null);
+        }
+        Path file = directory.resolve(String.format(RUN_FILE_FORMAT, nextRunNumber++));
+        // The mapping stays valid after its channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return new Run(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), count, file);
+        }
+    }
+
+    // Sort the first count identifiers and the addresses parallel to them by identifier, with a merge sort
+    // that is linear on the almost sorted batches the hot window spills
+    static void sortById(long[] ids, long[] addresses, int count) {
+        long[] idBuffer = new long[count];
+        long[] addressBuffer = new long[count];
+        long[] sourceIds = ids;
+        long[] sourceAddresses = addresses;
+        long[] targetIds = idBuffer;
+        long[] targetAddresses = addressBuffer;
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                if (middle == end || sourceIds[middle - 1] <= sourceIds[middle]) {
+                    // Already in order, copy the two halves as they are
+                    System.arraycopy(sourceIds, start, targetIds, start, end - start);
+                    System.arraycopy(sourceAddresses, start, targetAddresses, start, end - start);
+                    continue;
+                }
+                int i = start;
+                int j = middle;
+                for (int k = start; k < end; k++) {
+                    if (j == end || (i < middle && sourceIds[i] <= sourceIds[j])) {
+                        targetIds[k] = sourceIds[i];
+                        targetAddresses[k] = sourceAddresses[i++];
+                    } else {
+                        targetIds[k] = sourceIds[j];
+                        targetAddresses[k] = sourceAddresses[j++];
+                    }
+                }
+            }
+            long[] swap = sourceIds;
+            sourceIds = targetIds;
+            targetIds = swap;
+            swap = sourceAddresses;
+            sourceAddresses = targetAddresses;
+            targetAddresses = swap;
+        }
+        if (sourceIds != ids) {
+            System.arraycopy(sourceIds, 0, ids, 0, count);
+            System.arraycopy(sourceAddresses, 0, addresses, 0, count);
+        }
+    }
+
+    // Entries sorted by identifier, immutable once sealed
+    private static final class Run {
+        private final ByteBuffer buffer;
+        private final int count;
+        private final Path file;
+        private long minId;
+        private long maxId;
+
+        Run(ByteBuffer buffer, int count, Path file) {
+            this.buffer = buffer;
+            this.count = count;
+            this.file = file;
+        }
+
+        // Record the identifier range once the entries are written, before the run is published
+        void seal(long minId, long maxId) {
+            this.minId = minId;
+            this.maxId = maxId;
+        }
+
+        long idAt(int index) {
+            return buffer.getLong(index * ENTRY_SIZE);
+        }
+
+        long addressAt(int index) {
+            return buffer.getLong(index * ENTRY_SIZE + Long.BYTES);
+        }
+
+        // Binary search the entries for the identifier
+        long find(long id) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleId = idAt(middle);
+                if (middleId < id) {
+                    low = middle + 1;
+                } else if (middleId > id) {
+                    high = middle - 1;
+                } else {
+                    return addressAt(middle);
+                }
+            }
+            return NOT_FOUND;
+        }
+
+        // Delete the file of a run merged into another, readers still holding the mapping keep reading it
+        void discard() {
+            if (file == null) {
+                return;
+            }
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Left behind, the file is discarded when the archive is next opened
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package edu.gu;
+
+import java.lang.ref.Cleaner;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates time-ordered 64-bit transaction identifiers, in the style of Snowflake ids, and formats
+ * identifiers and timestamps for display.
+ * <p>
+ * An identifier packs, from the high bits down, 41 bits of milliseconds since 2024-01-01T00:00Z, a 10-bit
+ * slot and a 12-bit sequence. Every thread claims a slot of its own the first time it generates an identifier
+ * and counts its sequence without any synchronization. Once the thread has died and been collected, its slot
+ * returns to a pool with the last millisecond and sequence it used, and the next thread claiming it continues
+ * from there, so short-lived threads do not use up the slots. The last slot is shared by the threads that come
+ * while all others are held by live threads, and is advanced with a compare-and-set. When a thread generates
+ * more than 4096 identifiers in a millisecond it borrows the next millisecond, so identifiers never repeat and
+ * stay ordered per thread.
+ * <p>
+ * Identifiers are displayed as 13 Crockford base-32 characters, which sort in the same order as the numbers.
+ */
+public final class TransactionIds {
+    // Start of the identifier clock, 2024-01-01T00:00:00Z
+    static final long EPOCH_MILLIS = 1_704_067_200_000L;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int SLOT_BITS = 10;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int SHARED_SLOT = (1 << SLOT_BITS) - 1;
+
+    // Number of characters of the display form, 5 bits each
+    private static final int ID_CHARS = 13;
+    private static final char[] CROCKFORD_BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    // Formatter of the display timestamps, in the layout transactions always used
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy.MM.dd.HH.mm.ss").withZone(ZoneId.systemDefault());
+
+    // Next slot never handed to a thread
+    private static final AtomicInteger nextSlot = new AtomicInteger();
+
+    // States of the slots released by dead threads, handed out before new slots
+    private static final Queue<long[]> freeSlots = new ConcurrentLinkedQueue<>();
+
+    // Releases the slot of a thread once the thread is unreachable
+    private static final Cleaner slotCleaner = Cleaner.create();
+
+    // Last millisecond and sequence of the shared slot, packed as millis << SEQUENCE_BITS | sequence
+    private static final AtomicLong sharedState = new AtomicLong();
+
+    // State of the current thread as {slot, last millisecond, sequence}
+    private static final ThreadLocal<long[]> threadState = ThreadLocal.withInitial(TransactionIds::claimSlot);
+
+    private TransactionIds() {
+    }
+
+    /**
+     * Generates a new identifier.
+     *
+     * @param nowMillis The current time in milliseconds since the Unix epoch.
+     * @return The identifier, greater than any generated before by the current thread.
+     */
+    static long next(long nowMillis) {
+        long millis = Math.max(nowMillis - EPOCH_MILLIS, 0);
+        long[] state = threadState.get();
+        if (state[0] == SHARED_SLOT) {
+            return nextShared(millis);
+        }
+
+        if (millis > state[1]) {
+            state[1] = millis;
+            state[2] = 0;
+        } else if (++state[2] > SEQUENCE_MASK) {
+            // The sequence of this millisecond is used up, borrow the next one
+            state[1]++;
+            state[2] = 0;
+        }
+        return pack(state[1], state[0], state[2]);
+    }
+
+    // Claim a released slot or a new one for the current thread, falling back to the shared slot
+    private static long[] claimSlot() {
+        long[] state = freeSlots.poll();
+        if (state == null) {
+            int slot = nextSlot.getAndIncrement();
+            if (slot >= SHARED_SLOT) {
+                // Keep the counter from wrapping around when threads keep coming while every slot is held
+                nextSlot.set(SHARED_SLOT);
+                return new long[]{SHARED_SLOT, -1, 0};
+            }
+            state = new long[]{slot, -1, 0};
+        }
+        // The action must only reach the state, a reference to the thread would keep it reachable
+        long[] released = state;
+        slotCleaner.register(Thread.currentThread(), () -> freeSlots.offer(released));
+        return state;
+    }
+
+    // Generate an identifier in the shared slot
+    private static long nextShared(long millis) {
+        long current;
+        long updated;
+        do {
+            current = sharedState.get();
+            updated = Math.max(millis << SEQUENCE_BITS, current + 1);
+        } while (!sharedState.compareAndSet(current, updated));
+        return pack(updated >>> SEQUENCE_BITS, SHARED_SLOT, updated & SEQUENCE_MASK);
+    }
+
+    private static long pack(long millis, long slot, long sequence) {
+        return millis << (SLOT_BITS + SEQUENCE_BITS) | slot << SEQUENCE_BITS | sequence;
+    }
+
+    /**
+     * Formats an identifier as 13 Crockford base-32 characters.
+     *
+     * @param id The identifier.
+     * @return The display form of the identifier.
+     */
+    public static String format(long id) {
+        char[] chars = new char[ID_CHARS];
+        long remaining = id;
+        for (int i = ID_CHARS - 1; i >= 0; i--) {
+            chars[i] = CROCKFORD_BASE32[(int) (remaining & 31)];
+            remaining >>>= 5;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Parses the display form of an identifier, ignoring case.
+     *
+     * @param text The display form.
+     * @return The identifier.
+     * @throws IllegalArgumentException If the text is not the display form of an identifier.
+     */
+    public static long parse(String text) {
+        if (text == null || text.length() != ID_CHARS) {
+            throw new IllegalArgumentException("Invalid transaction id: " + text);
+        }
+        long id = 0;
+        for (int i = 0; i < ID_CHARS; i++) {
+            int digit = digitOf(Character.toUpperCase(text.charAt(i)));
+            // The first character only holds the top 4 bits
+            if (digit < 0 || (i == 0 && digit > 15)) {
+                throw new IllegalArgumentException("Invalid transaction id: " + text);
+            }
+            id = id << 5 | digit;
+        }
+        return id;
+    }
+
+    private static int digitOf(char c) {
+        for (int digit = 0; digit < CROCKFORD_BASE32.length; digit++) {
+            if (CROCKFORD_BASE32[digit] == c) {
+                return digit;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Formats a timestamp in the {@code yyyy.MM.dd.HH.mm.ss} layout, in the system time zone.
+     *
+     * @param epochMillis The timestamp in milliseconds since the Unix epoch.
+     * @return The display form of the timestamp.
+     */
+    public static String formatTimestamp(long epochMillis) {
+        return TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+}
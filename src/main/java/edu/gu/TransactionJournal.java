@@ -0,0 +1,782 @@
+package edu.gu;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary write-ahead journal of the ledger.
+ * Every transaction is appended before any balance is mutated, and every account opened at runtime is
+ * appended once it exists, so replaying the journal on top of the loaded data rebuilds balances and history.
+ * <p>
+ * Each record is laid out as {@code [int payloadLength][int crc32][payload]}. A torn or corrupt tail left by
+ * a crash is detected through its length or checksum and truncated when the journal is opened.
+ * <p>
+ * With the GROUP_COMMIT policy, appends are queued to a single writer thread that writes them in batches
+ * of at most {@code groupCommitMaxBatch} records with one fsync per batch, waiting at most
+ * {@code groupCommitMaxWaitMicros} for a batch to fill. Callers are released when their batch is durable.
+ * <p>
+ * The journal is fail-stop: by the time a write or force fails, the ledger may already hold the changes of the
+ * failed records, and a partial write may have left a torn record. After the first failure every further append
+ * is rejected, so nothing is ever written behind a torn record, and the failure handler is called once so the
+ * program can stop before serving from a ledger that the journal no longer matches.
+ */
+public class TransactionJournal implements Closeable {
+    // File header: magic number "BKWL" followed by the format version
+    private static final int MAGIC = 0x424B574C;
+    // Version 2 stores transaction identifiers and timestamps as longs
+    private static final short VERSION = 2;
+    private static final int FILE_HEADER_SIZE = Integer.BYTES + Short.BYTES;
+
+    // Record header: payload length and payload checksum
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+    // Defaults of the group-commit writer
+    static final int DEFAULT_GROUP_COMMIT_MAX_BATCH = 256;
+    static final long DEFAULT_GROUP_COMMIT_MAX_WAIT_MICROS = 500;
+
+    // Number of records that may be queued for the group-commit writer before appends block
+    private static final int GROUP_COMMIT_QUEUE_CAPACITY = 65_536;
+
+    // Future returned by appends that are already as durable as the policy requires
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+
+    // Queued by close to stop the group-commit writer
+    private static final PendingRecord CLOSE_MARKER = new PendingRecord(null, 0);
+
+    // Record kinds
+    private static final byte TRANSACTION_RECORD = 1;
+    private static final byte ACCOUNT_OPENED_RECORD = 2;
+
+    // Channel of the journal file
+    private final FileChannel channel;
+
+    // Policy deciding when appended records are forced to disk
+    private final FsyncPolicy fsyncPolicy;
+
+    // Background thread forcing the journal when the INTERVAL policy is used
+    private final ScheduledExecutorService intervalSyncer;
+
+    // Records waiting for the group-commit writer, in append order
+    private final BlockingQueue<PendingRecord> pendingRecords;
+
+    // Group-commit writer thread, or null for the other policies
+    private final Thread groupCommitWriter;
+
+    // Maximum number of records written per group commit
+    private final int groupCommitMaxBatch;
+
+    // Maximum time the group-commit writer waits for a batch to fill
+    private final long groupCommitMaxWaitNanos;
+
+    // Batch size and commit latency metrics of the group-commit writer
+    private final JournalMetrics metrics = new JournalMetrics();
+
+    // Reusable buffer records are encoded into, guarded by this
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(256);
+
+    // Set once the journal is closed, guarded by this
+    private boolean closed;
+
+    // First write or force failure, after which no record is accepted any more
+    private final AtomicReference<UncheckedIOException> failure = new AtomicReference<>();
+
+    // Called once with the first failure
+    private volatile Consumer<IOException> failureHandler = cause -> { };
+
+    // Number of records in the journal, including those still queued for the group-commit writer, guarded by this
+    private long recordCount;
+
+    /**
+     * Opens or creates a journal file with the default group-commit settings.
+     *
+     * @param path               Path of the journal file.
+     * @param fsyncPolicy        Policy deciding when appended records are forced to disk.
+     * @param syncIntervalMillis Interval between forces when the INTERVAL policy is used.
+     * @throws IOException If the journal cannot be opened or is not a journal file.
+     */
+    public TransactionJournal(Path path, FsyncPolicy fsyncPolicy, long syncIntervalMillis) throws IOException {
+        this(path, fsyncPolicy, syncIntervalMillis, DEFAULT_GROUP_COMMIT_MAX_BATCH, DEFAULT_GROUP_COMMIT_MAX_WAIT_MICROS);
+    }
+
+    /**
+     * Opens or creates a journal file.
+     *
+     * @param path                     Path of the journal file.
+     * @param fsyncPolicy              Policy deciding when appended records are forced to disk.
+     * @param syncIntervalMillis       Interval between forces when the INTERVAL policy is used.
+     * @param groupCommitMaxBatch      Maximum number of records written per fsync with the GROUP_COMMIT policy.
+     * @param groupCommitMaxWaitMicros Maximum time the GROUP_COMMIT writer waits for a batch to fill.
+     * @throws IOException If the journal cannot be opened or is not a journal file.
+     */
+    public TransactionJournal(Path path, FsyncPolicy fsyncPolicy, long syncIntervalMillis,
+                              int groupCommitMaxBatch, long groupCommitMaxWaitMicros) throws IOException {
+        if (groupCommitMaxBatch <= 0 || groupCommitMaxWaitMicros < 0) {
+            throw new IllegalArgumentException("Invalid group commit settings");
+        }
+        this.groupCommitMaxBatch = groupCommitMaxBatch;
+        this.groupCommitMaxWaitNanos = TimeUnit.MICROSECONDS.toNanos(groupCommitMaxWaitMicros);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.fsyncPolicy = fsyncPolicy;
+
+        if (channel.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE).putInt(MAGIC).putShort(VERSION).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < FILE_HEADER_SIZE || header.getInt() != MAGIC) {
+                channel.close();
+                throw new IOException("Not a Bankea transaction journal: " + path);
+            }
+            short version = header.getShort();
+            if (version != VERSION) {
+                channel.close();
+                throw new IOException("Unsupported transaction journal version " + version + ": " + path);
+            }
+        }
+
+        // Drop a torn tail so new records are appended right after the last intact one
+        long[] intactRecords = new long[1];
+        long end = scan(null, 0, intactRecords);
+        this.recordCount = intactRecords[0];
+        if (end < channel.size()) {
+            channel.truncate(end);
+            channel.force(true);
+        }
+        channel.position(end);
+
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            this.intervalSyncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            intervalSyncer.scheduleWithFixedDelay(this::forceQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.intervalSyncer = null;
+        }
+
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            this.pendingRecords = new LinkedBlockingQueue<>(GROUP_COMMIT_QUEUE_CAPACITY);
+            this.groupCommitWriter = new Thread(this::runGroupCommitWriter, "journal-group-commit");
+            groupCommitWriter.setDaemon(true);
+            groupCommitWriter.start();
+        } else {
+            this.pendingRecords = null;
+            this.groupCommitWriter = null;
+        }
+    }
+
+    /**
+     * Appends a transaction. The append order is fixed when this method returns, but with the GROUP_COMMIT
+     * policy the record only becomes durable when the returned future completes, see {@link #await(CompletableFuture)}.
+     *
+     * @param transaction The transaction to append.
+     * @return A future completed once the record is as durable as the fsync policy requires.
+     * @throws UncheckedIOException If the record cannot be written.
+     */
+    public CompletableFuture<Void> append(Transaction transaction) {
+        synchronized (this) {
+            return submit(encode(transaction));
+        }
+    }
+
+    /**
+     * Appends several transactions as consecutive records with a single write, and a single fsync or group
+     * commit. A crash may still keep only a prefix of them, like for separate appends.
+     *
+     * @param transactions The transactions to append, in order.
+     * @return A future completed once all the records are as durable as the fsync policy requires.
+     * @throws UncheckedIOException If the records cannot be written.
+     */
+    public CompletableFuture<Void> appendAll(List<Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return COMPLETED;
+        }
+        synchronized (this) {
+            long firstRecord = recordCount;
+            ByteBuffer records = ByteBuffer.allocate(transactions.size() * 64);
+            try {
+                for (Transaction transaction : transactions) {
+                    records = putRecord(records, seal(encode(transaction)));
+                }
+            } catch (RuntimeException e) {
+                // None of the records is written, none is counted
+                recordCount = firstRecord;
+                throw e;
+            }
+            return write(records.flip(), transactions.size());
+        }
+    }
+
+    // Copy a sealed record into a buffer of consecutive records, growing it when needed
+    private static ByteBuffer putRecord(ByteBuffer records, ByteBuffer record) {
+        if (records.remaining() < record.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(records.capacity() * 2, records.position() + record.remaining()));
+            records.flip();
+            records = grown.put(records);
+        }
+        return records.put(record);
+    }
+
+    // Encode a transaction record into the encode buffer
+    private ByteBuffer encode(Transaction transaction) {
+        ByteBuffer payload = startRecord(TRANSACTION_RECORD);
+        payload.put((byte) transaction.getType().ordinal());
+        payload.putLong(transaction.getAmount());
+        payload = ensureCapacity(payload, 2 * Long.BYTES);
+        payload.putLong(transaction.getIdValue());
+        payload.putLong(transaction.getTimestampMillis());
+        payload = putString(payload, transaction.getAccountId());
+        payload = putString(payload, transaction instanceof TransferTransaction
+                ? ((TransferTransaction) transaction).getRecipientAccountId() : null);
+        return payload;
+    }
+
+    /**
+     * Appends the opening of an account.
+     *
+     * @param account The newly opened account.
+     * @return A future completed once the record is as durable as the fsync policy requires.
+     * @throws UncheckedIOException If the record cannot be written.
+     */
+    public CompletableFuture<Void> appendAccountOpened(Account account) {
+        synchronized (this) {
+            return submit(encode(account));
+        }
+    }
+
+    /**
+     * Appends the opening of several accounts, such as a batch of imported ones, as consecutive records with a
+     * single write, and a single fsync or group commit.
+     *
+     * @param accounts The newly opened accounts, with their opening balances.
+     * @return A future completed once all the records are as durable as the fsync policy requires.
+     * @throws UncheckedIOException If the records cannot be written.
+     */
+    public CompletableFuture<Void> appendAccountsOpened(List<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return COMPLETED;
+        }
+        synchronized (this) {
+            long firstRecord = recordCount;
+            ByteBuffer records = ByteBuffer.allocate(accounts.size() * 128);
+            try {
+                for (Account account : accounts) {
+                    records = putRecord(records, seal(encode(account)));
+                }
+            } catch (RuntimeException e) {
+                // None of the records is written, none is counted
+                recordCount = firstRecord;
+                throw e;
+            }
+            return write(records.flip(), accounts.size());
+        }
+    }
+
+    // Encode an account opened record into the encode buffer
+    private ByteBuffer encode(Account account) {
+        ByteBuffer payload = startRecord(ACCOUNT_OPENED_RECORD);
+        payload = putString(payload, account.getId());
+        payload = putString(payload, account.getAccountNumber());
+        payload = putString(payload, account.getAccountName());
+        payload = putString(payload, account.getAccountType().name());
+        payload = putString(payload, account.getOwnerId());
+        payload = ensureCapacity(payload, Long.BYTES);
+        payload.putLong(account.getBalance());
+        return payload;
+    }
+
+    /**
+     * Sets the handler called once when the journal fails to write or force records. The journal rejects every
+     * append from then on, the handler decides whether the program goes on.
+     *
+     * @param failureHandler Receives the first failure.
+     */
+    public void setFailureHandler(Consumer<IOException> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * Waits until an appended record is durable.
+     *
+     * @param commit The future returned when the record was appended.
+     * @throws UncheckedIOException If the record could not be written.
+     */
+    public static void await(CompletableFuture<Void> commit) {
+        try {
+            commit.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until every record appended so far is durable, whatever the fsync policy.
+     * A snapshot calls this before claiming to cover the records counted by {@link #getRecordCount()}.
+     *
+     * @throws IOException If the records cannot be forced to disk.
+     */
+    public void sync() throws IOException {
+        UncheckedIOException failed = failure.get();
+        if (failed != null) {
+            throw failed.getCause();
+        }
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            // An empty record is committed behind every record already queued
+            CompletableFuture<Void> barrier;
+            synchronized (this) {
+                if (closed) {
+                    throw new IllegalStateException("The transaction journal is closed");
+                }
+                barrier = write(ByteBuffer.allocate(0), 0);
+            }
+            try {
+                await(barrier);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+        synchronized (this) {
+            // Records are written before append returns with the other policies, forcing the channel covers them
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw fail("Failed to force the transaction journal", e).getCause();
+            }
+        }
+    }
+
+    /**
+     * Retrieves the metrics of the group-commit writer.
+     *
+     * @return The journal metrics.
+     */
+    public JournalMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads every intact record of the journal in append order.
+     *
+     * @param listener Receives the accounts and transactions read back.
+     * @return The number of records replayed.
+     * @throws IOException If the journal cannot be read.
+     */
+    public long replay(Listener listener) throws IOException {
+        return replay(listener, 0);
+    }
+
+    /**
+     * Reads the intact records of the journal in append order, skipping those already covered by a snapshot.
+     *
+     * @param listener    Receives the accounts and transactions read back.
+     * @param skipRecords Number of leading records to skip.
+     * @return The number of records replayed.
+     * @throws IOException If the journal cannot be read, or the listener fails on a record, named by its index.
+     */
+    public long replay(Listener listener, long skipRecords) throws IOException {
+        long[] records = new long[1];
+        scan(listener, skipRecords, records);
+        return Math.max(0, records[0] - skipRecords);
+    }
+
+    /**
+     * Retrieves the number of records appended so far, a position snapshots use to tell which records they cover.
+     * The count includes records that are not durable yet, see {@link #sync()}.
+     *
+     * @return The number of records in the journal.
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Forces all appended records to disk and closes the journal.
+     *
+     * @throws IOException If the journal cannot be forced or closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (intervalSyncer != null) {
+            intervalSyncer.shutdown();
+        }
+        synchronized (this) {
+            closed = true;
+        }
+        if (groupCommitWriter != null) {
+            // The marker is queued behind every accepted record, so the writer commits them all before it stops
+            try {
+                pendingRecords.put(CLOSE_MARKER);
+                groupCommitWriter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        }
+    }
+
+    // Reset the encode buffer, leaving room for the record header, and write the record kind
+    private ByteBuffer startRecord(byte kind) {
+        encodeBuffer.clear();
+        encodeBuffer.position(RECORD_HEADER_SIZE);
+        ByteBuffer payload = ensureCapacity(encodeBuffer, 1 + 1 + Long.BYTES);
+        payload.put(kind);
+        return payload;
+    }
+
+    // Seal the record and either write it or queue it for the group-commit writer
+    private CompletableFuture<Void> submit(ByteBuffer record) {
+        return write(seal(record), 1);
+    }
+
+    // Fill in the record header, count the record and flip the buffer for writing
+    private ByteBuffer seal(ByteBuffer record) {
+        if (closed) {
+            throw new IllegalStateException("The transaction journal is closed");
+        }
+        UncheckedIOException failed = failure.get();
+        if (failed != null) {
+            throw new IllegalStateException("The transaction journal failed and accepts no more records", failed);
+        }
+        recordCount++;
+        int payloadLength = record.position() - RECORD_HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_SIZE, payloadLength);
+        record.putInt(0, payloadLength);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.flip();
+    }
+
+    // Write sealed records, the given number of them, or queue them for the group-commit writer
+    private CompletableFuture<Void> write(ByteBuffer record, int recordCount) {
+        if (fsyncPolicy == FsyncPolicy.GROUP_COMMIT) {
+            PendingRecord pending = new PendingRecord(ByteBuffer.allocate(record.remaining()).put(record).flip(),
+                    recordCount);
+            try {
+                pendingRecords.put(pending);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while appending to the transaction journal");
+            }
+            return pending.durable;
+        }
+
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            if (fsyncPolicy == FsyncPolicy.PER_TRANSACTION) {
+                channel.force(false);
+            }
+            return COMPLETED;
+        } catch (IOException e) {
+            throw fail("Failed to append to the transaction journal", e);
+        }
+    }
+
+    // Body of the group-commit writer: collect a batch, write it, force once and release its callers
+    private void runGroupCommitWriter() {
+        List<PendingRecord> batch = new ArrayList<>(groupCommitMaxBatch);
+        ByteBuffer[] buffers = new ByteBuffer[groupCommitMaxBatch];
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                PendingRecord next = pendingRecords.take();
+                long deadline = System.nanoTime() + groupCommitMaxWaitNanos;
+                while (next != CLOSE_MARKER) {
+                    batch.add(next);
+                    if (batch.size() >= groupCommitMaxBatch) {
+                        break;
+                    }
+                    // Take what is already queued, then wait for stragglers until the deadline
+                    next = pendingRecords.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        next = remaining > 0 ? pendingRecords.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                }
+                stopping = next == CLOSE_MARKER;
+            } catch (InterruptedException e) {
+                stopping = true;
+            }
+            if (!batch.isEmpty()) {
+                commit(batch, buffers);
+                batch.clear();
+            }
+        }
+    }
+
+    // Write a batch with a single gathering write and a single force, then complete its futures
+    private void commit(List<PendingRecord> batch, ByteBuffer[] buffers) {
+        UncheckedIOException earlierFailure = failure.get();
+        if (earlierFailure != null) {
+            // Records queued before the failure was noticed are never written behind the failed batch
+            for (PendingRecord pending : batch) {
+                pending.durable.completeExceptionally(earlierFailure);
+            }
+            return;
+        }
+        int size = batch.size();
+        for (int i = 0; i < size; i++) {
+            buffers[i] = batch.get(i).record;
+        }
+        try {
+            long remaining = 0;
+            for (int i = 0; i < size; i++) {
+                remaining += buffers[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(buffers, 0, size);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            UncheckedIOException failed = fail("Failed to commit to the transaction journal", e);
+            for (PendingRecord pending : batch) {
+                pending.durable.completeExceptionally(failed);
+            }
+            return;
+        } finally {
+            for (int i = 0; i < size; i++) {
+                buffers[i] = null;
+            }
+        }
+
+        long now = System.nanoTime();
+        int records = 0;
+        for (PendingRecord pending : batch) {
+            // Barriers queued by sync hold no record, appends of several records count each of them
+            if (pending.recordCount > 0) {
+                records += pending.recordCount;
+                metrics.recordCommitLatency(now - pending.enqueuedNanos, pending.recordCount);
+            }
+        }
+        if (records > 0) {
+            metrics.recordBatch(records);
+        }
+        for (PendingRecord pending : batch) {
+            pending.durable.complete(null);
+        }
+    }
+
+    // Force the journal from the interval syncer, failing the journal rather than propagating failures
+    private void forceQuietly() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            fail("Failed to force the transaction journal", e);
+        }
+    }
+
+    // Record the first failure and call the failure handler once, returning the failure to report
+    private UncheckedIOException fail(String message, IOException cause) {
+        UncheckedIOException failed = new UncheckedIOException(message, cause);
+        if (failure.compareAndSet(null, failed)) {
+            failureHandler.accept(failed.getCause());
+            return failed;
+        }
+        return failure.get();
+    }
+
+    // Walk the records from the start, passing those after the skipped ones to the listener,
+    // count the intact records and return the end of the last intact one
+    private long scan(Listener listener, long skipRecords, long[] records) throws IOException {
+        long size = channel.size();
+        long position = FILE_HEADER_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            int payloadLength = header.getInt(0);
+            int checksum = header.getInt(Integer.BYTES);
+            if (payloadLength <= 0 || position + RECORD_HEADER_SIZE + payloadLength > size) {
+                break;
+            }
+
+            ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+            readFully(payload, position + RECORD_HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(payload.array(), 0, payloadLength);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            if (listener != null && records[0] >= skipRecords) {
+                payload.flip();
+                try {
+                    decode(payload, listener);
+                } catch (RuntimeException e) {
+                    throw new IOException(String.format("Failed to replay journal record %d: %s", records[0],
+                            e.getMessage()), e);
+                }
+            }
+            records[0]++;
+            position += RECORD_HEADER_SIZE + payloadLength;
+        }
+        return position;
+    }
+
+    // Read until the buffer is full or the end of the file is reached
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    // Decode one record payload and hand it to the listener
+    private static void decode(ByteBuffer payload, Listener listener) {
+        byte kind = payload.get();
+        switch (kind) {
+            case TRANSACTION_RECORD -> {
+                TransactionType type = TransactionType.values()[payload.get()];
+                long amount = payload.getLong();
+                long id = payload.getLong();
+                long timestamp = payload.getLong();
+                String accountId = getString(payload);
+                String recipientAccountId = getString(payload);
+                Transaction transaction = switch (type) {
+                    case DEPOSIT -> new DepositTransaction(id, timestamp, accountId, amount);
+                    case WITHDRAWAL -> new WithdrawalTransaction(id, timestamp, accountId, amount);
+                    case TRANSFER -> new TransferTransaction(id, timestamp, accountId, recipientAccountId, amount);
+                };
+                listener.transactionRecorded(transaction);
+            }
+            case ACCOUNT_OPENED_RECORD -> {
+                String id = getString(payload);
+                String accountNumber = getString(payload);
+                String accountName = getString(payload);
+                AccountType accountType = AccountType.valueOf(getString(payload));
+                String ownerId = getString(payload);
+                long balance = payload.getLong();
+                listener.accountOpened(new Account(id, accountNumber, accountName, accountType, ownerId, balance));
+            }
+            default -> throw new IllegalStateException("Unknown journal record kind: " + kind);
+        }
+    }
+
+    // Whether a string fits the short length prefix of a journaled string, so callers can reject it before
+    // changing any state
+    static boolean isJournalable(String value) {
+        // Every char encodes to at most 3 UTF-8 bytes, only long strings need encoding
+        return value == null || value.length() * 3 <= Short.MAX_VALUE
+                || value.getBytes(StandardCharsets.UTF_8).length <= Short.MAX_VALUE;
+    }
+
+    // Write a length-prefixed UTF-8 string, a length of -1 standing for null. The length is a short, longer
+    // strings are rejected rather than wrapping to a length replay would misread
+    private ByteBuffer putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            return ensureCapacity(buffer, Short.BYTES).putShort((short) -1);
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Journaled strings are limited to %d UTF-8 bytes, got %d",
+                    Short.MAX_VALUE, bytes.length));
+        }
+        return ensureCapacity(buffer, Short.BYTES + bytes.length).putShort((short) bytes.length).put(bytes);
+    }
+
+    // Read a string written by putString
+    private static String getString(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Grow the encode buffer when the next write would not fit
+    private ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        grown.put(buffer);
+        encodeBuffer = grown;
+        return grown;
+    }
+
+    // Encoded records waiting for the group-commit writer, one for a single append, several for a batch append
+    // and none for a sync barrier
+    private static final class PendingRecord {
+        private final ByteBuffer record;
+        private final int recordCount;
+        private final long enqueuedNanos = System.nanoTime();
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        private PendingRecord(ByteBuffer record, int recordCount) {
+            this.record = record;
+            this.recordCount = recordCount;
+        }
+    }
+
+    /**
+     * Policies deciding when appended records are forced to disk.
+     */
+    public enum FsyncPolicy {
+        // Force after every record, before the caller continues
+        PER_TRANSACTION,
+        // A single writer thread forces batches of records, callers wait for the batch holding their record
+        GROUP_COMMIT,
+        // A background thread forces periodically, callers never wait
+        INTERVAL
+    }
+
+    /**
+     * Receives the records read back by {@link #replay(Listener)}.
+     */
+    public interface Listener {
+        /**
+         * Called for an account opened at runtime.
+         *
+         * @param account The account as it was opened.
+         */
+        void accountOpened(Account account);
+
+        /**
+         * Called for a recorded transaction.
+         *
+         * @param transaction The transaction with its original identifier and timestamp.
+         */
+        void transactionRecorded(Transaction transaction);
+    }
+}
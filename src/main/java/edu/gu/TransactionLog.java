@@ -0,0 +1,237 @@
+package edu.gu;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Transaction history stored off-heap in fixed-size segments, memory-mapped from files with
+ * {@link FileChannel#map} or allocated as direct buffers when no directory is given.
+ * <p>
+ * Records are addressed by a long packing the segment index in the high 32 bits and the offset in the
+ * low 32 bits, and are read back through a {@link TransactionView} without deserializing them. A record is
+ * laid out as {@code [short length][byte type][long amount][long id][long timestamp]} followed by the
+ * length-prefixed UTF-8 strings account id and recipient account id.
+ * <p>
+ * The history is derived from the write-ahead journal, so the segment files of a previous run are discarded
+ * on open and rebuilt while the journal is replayed.
+ */
+public class TransactionLog implements Closeable {
+    // Size of a segment when none is specified
+    static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    // Pattern of the segment file names
+    private static final String SEGMENT_FILE_FORMAT = "segment-%08d.log";
+    private static final String SEGMENT_FILE_GLOB = "segment-*.log";
+
+    // Directory of the segment files, or null when the segments are held in direct memory
+    private final Path directory;
+
+    // Size in bytes of every segment
+    private final int segmentSize;
+
+    // Segments in address order, replaced as a whole when a segment is added so readers never lock
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+    // Offset of the next record in the last segment, guarded by this
+    private int writeOffset;
+
+    /**
+     * Opens a transaction log, discarding the segment files of a previous run.
+     *
+     * @param directory   Directory of the segment files, or null to keep the segments in direct memory.
+     * @param segmentSize Size in bytes of every segment.
+     * @throws IOException If the directory or the first segment cannot be created.
+     */
+    public TransactionLog(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= TransactionView.STRINGS_OFFSET) {
+            throw new IllegalArgumentException("Segment size is too small");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_FILE_GLOB)) {
+                for (Path segment : stale) {
+                    Files.delete(segment);
+                }
+            }
+        }
+        addSegment();
+    }
+
+    /**
+     * Creates a transaction log held in direct memory.
+     *
+     * @return The in-memory transaction log.
+     */
+    public static TransactionLog inMemory() {
+        try {
+            return new TransactionLog(null, DEFAULT_SEGMENT_SIZE);
+        } catch (IOException e) {
+            // Direct segments involve no file
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends a transaction to the log.
+     *
+     * @param transaction The transaction to append.
+     * @return The address of the record.
+     * @throws UncheckedIOException If a new segment cannot be mapped.
+     */
+    public long append(Transaction transaction) {
+        byte[] accountId = encode(transaction.getAccountId());
+        byte[] recipientAccountId = transaction instanceof TransferTransaction
+                ? encode(((TransferTransaction) transaction).getRecipientAccountId()) : null;
+        int length = TransactionView.STRINGS_OFFSET + 2 * Short.BYTES
+                + lengthOf(accountId) + lengthOf(recipientAccountId);
+        if (length > Short.MAX_VALUE || length > segmentSize) {
+            throw new IllegalArgumentException("Transaction record is too large: " + length + " bytes");
+        }
+
+        synchronized (this) {
+            if (writeOffset + length > segmentSize) {
+                try {
+                    addSegment();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to add a transaction log segment", e);
+                }
+            }
+            ByteBuffer[] current = segments;
+            int segmentIndex = current.length - 1;
+            ByteBuffer segment = current[segmentIndex];
+            int offset = writeOffset;
+
+            segment.putShort(offset + TransactionView.LENGTH_OFFSET, (short) length);
+            segment.put(offset + TransactionView.TYPE_OFFSET, (byte) transaction.getType().ordinal());
+            segment.putLong(offset + TransactionView.AMOUNT_OFFSET, transaction.getAmount());
+            segment.putLong(offset + TransactionView.ID_OFFSET, transaction.getIdValue());
+            segment.putLong(offset + TransactionView.TIMESTAMP_OFFSET, transaction.getTimestampMillis());
+            int position = offset + TransactionView.STRINGS_OFFSET;
+            position = putString(segment, position, accountId);
+            putString(segment, position, recipientAccountId);
+
+            writeOffset = offset + length;
+            return ((long) segmentIndex << 32) | offset;
+        }
+    }
+
+    /**
+     * Points a view at the record with the given address.
+     *
+     * @param address The address returned when the record was appended.
+     * @param view    The view to re-point.
+     * @return The view, now reading the record.
+     */
+    public TransactionView read(long address, TransactionView view) {
+        return view.wrap(segments[(int) (address >>> 32)], (int) address);
+    }
+
+    /**
+     * Retrieves the address the next record will be appended at, so the records appended from now on can be
+     * told from those appended before.
+     *
+     * @return The end address of the log.
+     */
+    public synchronized long getEndAddress() {
+        return ((long) (segments.length - 1) << 32) | writeOffset;
+    }
+
+    /**
+     * Walks the records appended between two end addresses, in append order, through a single view.
+     *
+     * @param fromAddress The end address before the first record to walk.
+     * @param toAddress   The end address after the last record to walk.
+     * @param action      Receives the view pointed at each record in turn.
+     */
+    public void forEach(long fromAddress, long toAddress, Consumer<TransactionView> action) {
+        ByteBuffer[] current = segments;
+        TransactionView view = new TransactionView();
+        long address = fromAddress;
+        while (address != toAddress) {
+            int segmentIndex = (int) (address >>> 32);
+            int offset = (int) address;
+            ByteBuffer segment = current[segmentIndex];
+            // The unused tail of a segment is zeroed, a record that did not fit was appended to the next one
+            short length = offset + Short.BYTES <= segmentSize ? segment.getShort(offset + TransactionView.LENGTH_OFFSET) : 0;
+            if (length == 0) {
+                address = (long) (segmentIndex + 1) << 32;
+                continue;
+            }
+            action.accept(view.wrap(segment, offset));
+            address += length;
+        }
+    }
+
+    /**
+     * Retrieves the number of segments in use.
+     *
+     * @return The number of segments.
+     */
+    public int getSegmentCount() {
+        return segments.length;
+    }
+
+    /**
+     * Flushes the mapped segments to their files and releases them.
+     */
+    @Override
+    public synchronized void close() {
+        for (ByteBuffer segment : segments) {
+            if (segment instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) segment).force();
+            }
+        }
+        segments = new ByteBuffer[0];
+    }
+
+    // Map or allocate a new segment and make it the one records are appended to
+    private void addSegment() throws IOException {
+        ByteBuffer segment;
+        if (directory == null) {
+            segment = ByteBuffer.allocateDirect(segmentSize);
+        } else {
+            Path file = directory.resolve(String.format(SEGMENT_FILE_FORMAT, segments.length));
+            // The mapping stays valid after its channel is closed
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            }
+        }
+        ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+        grown[grown.length - 1] = segment;
+        segments = grown;
+        writeOffset = 0;
+    }
+
+    // Write a length-prefixed string at the given position and return the position after it
+    private static int putString(ByteBuffer segment, int position, byte[] value) {
+        if (value == null) {
+            segment.putShort(position, (short) -1);
+            return position + Short.BYTES;
+        }
+        segment.putShort(position, (short) value.length);
+        segment.put(position + Short.BYTES, value);
+        return position + Short.BYTES + value.length;
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int lengthOf(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+}
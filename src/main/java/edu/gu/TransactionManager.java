@@ -5,67 +5,602 @@ import edu.gu.exceptions.InsufficientFundsException;
 import edu.gu.exceptions.InvalidTransactionException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 // Class responsible for managing financial transactions
 public class TransactionManager implements ITransactionManager {
 
-    // List to store recorded transactions
-    private final ArrayList<Transaction> transactions = new ArrayList<>();
+    // Commit returned when there is no journal to wait for
+    private static final CompletableFuture<Void> NOT_JOURNALED = CompletableFuture.completedFuture(null);
 
-    // Record a transaction involving a single account
-    public void recordTransaction(Account targetAccount, TransactionType transactionType, double amount)
+    // Number of transactions moved from the hot window to the archive at a time
+    private static final int SPILL_BATCH_SIZE = 65_536;
+
+    // Hot window of the most recently recorded transactions
+    private final TransactionWindow transactions = new TransactionWindow();
+
+    // Index of the transactions in the hot window keyed by their numeric identifier
+    private final Map<Long, Transaction> transactionsById = new ConcurrentHashMap<>();
+
+    // Cold tier finding the history log records of the transactions spilled from the hot window
+    private final TransactionArchive archive;
+
+    // Held while transactions are spilled from the hot window to the archive
+    private final ReentrantLock spillLock = new ReentrantLock();
+
+    // Append-only, time-indexed history per account, keyed by account ID, as addresses of records in the history log
+    private final Map<String, AccountHistory> transactionsByAccount = new ConcurrentHashMap<>();
+
+    // Off-heap log the account histories are read back from
+    private final TransactionLog historyLog;
+
+    // Striped locks serializing balance mutations and history appends per account
+    private final AccountLocks accountLocks;
+
+    // Write-ahead journal every transaction is appended to before balances change, or null when not journaling
+    private final TransactionJournal journal;
+
+    // Tracker of the changes the next snapshot has to write, or null when not snapshotting
+    private final ChangeTracker changeTracker;
+
+    // Constructor using the default number of lock stripes, an in-memory history log and an in-memory archive
+    public TransactionManager() {
+        this(new AccountLocks(), null, TransactionLog.inMemory());
+    }
+
+    // Constructor sharing the given lock stripes, journaling to the given journal, which may be null,
+    // and storing account histories in the given log
+    public TransactionManager(AccountLocks accountLocks, TransactionJournal journal, TransactionLog historyLog) {
+        this(accountLocks, journal, historyLog, null);
+    }
+
+    // Constructor additionally reporting every change to the given snapshot change tracker, which may be null
+    public TransactionManager(AccountLocks accountLocks, TransactionJournal journal, TransactionLog historyLog,
+                              ChangeTracker changeTracker) {
+        this(accountLocks, journal, historyLog, changeTracker, TransactionArchive.inMemory());
+    }
+
+    // Constructor additionally spilling the transactions that leave the hot window to the given archive
+    public TransactionManager(AccountLocks accountLocks, TransactionJournal journal, TransactionLog historyLog,
+                              ChangeTracker changeTracker, TransactionArchive archive) {
+        this.accountLocks = accountLocks;
+        this.journal = journal;
+        this.historyLog = historyLog;
+        this.changeTracker = changeTracker;
+        this.archive = archive;
+    }
+
+    // Record a transaction involving a single account and return it
+    public Transaction recordTransaction(Account targetAccount, TransactionType transactionType, long amount)
             throws InsufficientFundsException, AccountInactiveException {
-        // Create a transaction based on the specified type
-        Transaction transaction = switch (transactionType) {
+        switch (transactionType) {
             case DEPOSIT -> {
-                Transaction transactionUnderProcessing = new DepositTransaction(targetAccount.getId(), amount);
-                // @TODO AccountManager should handle such parts
-                targetAccount.deposit(amount);
-                yield transactionUnderProcessing;
+                requirePositive(amount, "Deposit");
+                Transaction transaction = new DepositTransaction(targetAccount.getId(), amount);
+                CompletableFuture<Void> commit;
+                enterUpdate();
+                try {
+                    // A deposit cannot fail once validated, so it is journaled and its balance updated without
+                    // the stripe. The history append below still takes the stripe and the monitors of the history
+                    // log and of the hot window, so deposits to one account remain serialized there.
+                    commit = journal(transaction);
+                    // @TODO AccountManager should handle such parts
+                    targetAccount.deposit(amount);
+
+                    accountLocks.lock(targetAccount.getId());
+                    try {
+                        addTransaction(transaction, targetAccount, null);
+                    } finally {
+                        accountLocks.unlock(targetAccount.getId());
+                    }
+                } finally {
+                    exitUpdate();
+                }
+                TransactionJournal.await(commit);
+                spillIfOverflowing();
+                return transaction;
             }
             case WITHDRAWAL -> {
-                Transaction transactionUnderProcessing = new WithdrawalTransaction(targetAccount.getId(), amount);
-                // @TODO AccountManager should handle such parts
-                targetAccount.withdraw(amount);
-                yield transactionUnderProcessing;
+                requirePositive(amount, "Withdrawal");
+                // The stripe keeps the funds check, the journal append and the withdrawal atomic
+                CompletableFuture<Void> commit;
+                Transaction transaction;
+                enterUpdate();
+                accountLocks.lock(targetAccount.getId());
+                try {
+                    requireFunds(targetAccount, amount);
+                    transaction = new WithdrawalTransaction(targetAccount.getId(), amount);
+                    commit = journal(transaction);
+                    // @TODO AccountManager should handle such parts
+                    targetAccount.withdraw(amount);
+                    addTransaction(transaction, targetAccount, null);
+                } finally {
+                    accountLocks.unlock(targetAccount.getId());
+                    exitUpdate();
+                }
+                // Wait for durability outside the stripe so other callers can join the same group commit
+                TransactionJournal.await(commit);
+                spillIfOverflowing();
+                return transaction;
             }
             default -> throw new IllegalArgumentException("Unsupported transaction type: " + transactionType);
-        };
+        }
+    }
+
+    // Record a transaction involving two accounts (transfer) and return it
+    public Transaction recordTransaction(Account senderAccount, Account recipientAccount, TransactionType transactionType, long amount)
+            throws InsufficientFundsException, AccountInactiveException {
+        requirePositive(amount, "Transfer");
+        // Both accounts are locked in a global order, so opposite transfers cannot deadlock
+        CompletableFuture<Void> commit;
+        Transaction transaction;
+        enterUpdate();
+        accountLocks.lockBoth(senderAccount.getId(), recipientAccount.getId());
+        try {
+            requireFunds(senderAccount, amount);
+
+            // Create a transfer transaction
+            transaction = new TransferTransaction(senderAccount.getId(), recipientAccount.getId(), amount);
+            commit = journal(transaction);
+
+            // @TODO AccountManager should handle such parts
+            senderAccount.withdraw(amount);
+            recipientAccount.deposit(amount);
+
+            addTransaction(transaction, senderAccount, recipientAccount);
+        } finally {
+            accountLocks.unlockBoth(senderAccount.getId(), recipientAccount.getId());
+            exitUpdate();
+        }
+        TransactionJournal.await(commit);
+        spillIfOverflowing();
+        return transaction;
+    }
+
+    // Record a batch of transfers under one acquisition of all the accounts' locks, taken in stripe order.
+    // Legs whose failure is already set, for instance because an account could not be resolved, are not executed.
+    // The balances are checked against the running balances of the batch before anything is journaled, the
+    // transfers of the executed legs are journaled with a single append, and the call waits for one commit.
+    public BatchTransfer.Result recordTransfers(Account[] senderAccounts, Account[] recipientAccounts, long[] amounts,
+                                                String[] failures, BatchTransfer.Mode mode) {
+        int legs = amounts.length;
+        Transaction[] transactions = new Transaction[legs];
+        Set<String> accountIds = new HashSet<>();
+        for (int leg = 0; leg < legs; leg++) {
+            if (failures[leg] == null && amounts[leg] <= 0) {
+                failures[leg] = "Transfer amount must be greater than 0";
+            }
+            if (failures[leg] == null) {
+                accountIds.add(senderAccounts[leg].getId());
+                accountIds.add(recipientAccounts[leg].getId());
+            }
+        }
+        if (mode == BatchTransfer.Mode.ALL_OR_NOTHING && abortOnFailure(failures)) {
+            return new BatchTransfer.Result(transactions, failures);
+        }
+
+        CompletableFuture<Void> commit;
+        int[] stripes = accountLocks.stripesOf(accountIds);
+        enterUpdate();
+        accountLocks.lockAll(stripes);
+        try {
+            // Check every leg against the balances the previous legs of the batch leave
+            Map<Account, long[]> balances = new IdentityHashMap<>();
+            for (int leg = 0; leg < legs; leg++) {
+                if (failures[leg] != null) {
+                    continue;
+                }
+                long[] senderBalance = balances.computeIfAbsent(senderAccounts[leg], account -> new long[]{account.getBalance()});
+                if (amounts[leg] > senderBalance[0]) {
+                    failures[leg] = "Insufficient funds";
+                    if (mode == BatchTransfer.Mode.ALL_OR_NOTHING) {
+                        abortOnFailure(failures);
+                        return new BatchTransfer.Result(new Transaction[legs], failures);
+                    }
+                    continue;
+                }
+                senderBalance[0] -= amounts[leg];
+                balances.computeIfAbsent(recipientAccounts[leg], account -> new long[]{account.getBalance()})[0] += amounts[leg];
+                transactions[leg] = new TransferTransaction(senderAccounts[leg].getId(), recipientAccounts[leg].getId(), amounts[leg]);
+            }
+
+            List<Transaction> executed = new ArrayList<>(legs);
+            for (Transaction transaction : transactions) {
+                if (transaction != null) {
+                    executed.add(transaction);
+                }
+            }
+            commit = this.journal == null ? NOT_JOURNALED : this.journal.appendAll(executed);
 
-        // Add the transaction to the list
-        this.transactions.add(transaction);
+            for (int leg = 0; leg < legs; leg++) {
+                if (transactions[leg] == null) {
+                    continue;
+                }
+                try {
+                    // @TODO AccountManager should handle such parts
+                    senderAccounts[leg].withdraw(amounts[leg]);
+                    recipientAccounts[leg].deposit(amounts[leg]);
+                } catch (InsufficientFundsException | AccountInactiveException e) {
+                    // The running balances were checked under the same locks
+                    throw new IllegalStateException("Batch transfer leg failed after it was journaled", e);
+                }
+                addTransaction(transactions[leg], senderAccounts[leg], recipientAccounts[leg]);
+            }
+        } finally {
+            accountLocks.unlockAll(stripes);
+            exitUpdate();
+        }
+        TransactionJournal.await(commit);
+        spillIfOverflowing();
+        return new BatchTransfer.Result(transactions, failures);
     }
 
-    // Record a transaction involving two accounts (transfer)
-    public void recordTransaction(Account senderAccount, Account recipientAccount, TransactionType transactionType, double amount)
+    // Record a batch of deposits created by the caller, such as interest credits, journaled with a single append
+    // and committed with a single wait. Like single deposits, their balances are updated without the stripes,
+    // and the history appends take the accounts' stripes one at a time.
+    public void recordDeposits(Account[] accounts, DepositTransaction[] deposits, int count) {
+        for (int i = 0; i < count; i++) {
+            requirePositive(deposits[i].getAmount(), "Deposit");
+            if (!deposits[i].getAccountId().equals(accounts[i].getId())) {
+                throw new IllegalArgumentException("Deposit " + deposits[i].getId() + " does not credit account " + accounts[i].getId());
+            }
+        }
+        CompletableFuture<Void> commit;
+        enterUpdate();
+        try {
+            commit = this.journal == null ? NOT_JOURNALED : this.journal.appendAll(Arrays.<Transaction>asList(deposits).subList(0, count));
+            for (int i = 0; i < count; i++) {
+                try {
+                    // @TODO AccountManager should handle such parts
+                    accounts[i].deposit(deposits[i].getAmount());
+                } catch (AccountInactiveException e) {
+                    throw new IllegalStateException("Deposit failed after it was journaled", e);
+                }
+                accountLocks.lock(accounts[i].getId());
+                try {
+                    addTransaction(deposits[i], accounts[i], null);
+                } finally {
+                    accountLocks.unlock(accounts[i].getId());
+                }
+            }
+        } finally {
+            exitUpdate();
+        }
+        TransactionJournal.await(commit);
+        spillIfOverflowing();
+    }
+
+    // Mark every leg without a failure as aborted because of the first failing leg, return whether any leg failed
+    private static boolean abortOnFailure(String[] failures) {
+        int failed = -1;
+        for (int leg = 0; leg < failures.length && failed < 0; leg++) {
+            if (failures[leg] != null) {
+                failed = leg;
+            }
+        }
+        if (failed < 0) {
+            return false;
+        }
+        for (int leg = 0; leg < failures.length; leg++) {
+            if (failures[leg] == null) {
+                failures[leg] = "Batch aborted, leg " + failed + " failed: " + failures[failed];
+            }
+        }
+        return true;
+    }
+
+    // Re-apply a transaction read back from the journal without journaling it again, only used during recovery
+    void replayTransaction(Transaction transaction, Account account, Account recipientAccount)
             throws InsufficientFundsException, AccountInactiveException {
-        // Create a transfer transaction
-        Transaction transaction = new TransferTransaction(senderAccount.getId(), recipientAccount.getId(), amount);
+        switch (transaction.getType()) {
+            case DEPOSIT -> account.deposit(transaction.getAmount());
+            case WITHDRAWAL -> account.withdraw(transaction.getAmount());
+            case TRANSFER -> {
+                account.withdraw(transaction.getAmount());
+                recipientAccount.deposit(transaction.getAmount());
+            }
+        }
+        addTransaction(transaction, account, recipientAccount);
+        spillIfOverflowing();
+    }
+
+    // Add a transaction restored from a snapshot to the histories without touching balances, only used during recovery
+    void restoreTransaction(Transaction transaction) {
+        String recipientAccountId = transaction instanceof TransferTransaction
+                ? ((TransferTransaction) transaction).getRecipientAccountId() : null;
+        long address = this.historyLog.append(transaction);
+        this.transactionsById.put(transaction.getIdValue(), transaction);
+        this.transactions.add(transaction, address);
+        indexTransaction(transaction.getAccountId(), address, transaction.getTimestampMillis());
+        if (recipientAccountId != null) {
+            indexTransaction(recipientAccountId, address, transaction.getTimestampMillis());
+        }
+        spillIfOverflowing();
+    }
 
-        // @TODO AccountManager should handle such parts
-        senderAccount.withdraw(amount);
-        recipientAccount.deposit(amount);
+    // Spill the transactions that left the hot window, by number or by age, to the archive and return how many
+    // were spilled. Run in the background by the compactor, and inline by writers when the window overflows.
+    public int compactHistory() {
+        spillLock.lock();
+        try {
+            return spill();
+        } finally {
+            spillLock.unlock();
+        }
+    }
 
-        // Add the transaction to the list
-        this.transactions.add(transaction);
+    // Spill inline once the window holds twice its size, unless the compactor is already spilling
+    private void spillIfOverflowing() {
+        if (this.transactions.size() > 2 * this.archive.getHotTransactions() && spillLock.tryLock()) {
+            try {
+                spill();
+            } finally {
+                spillLock.unlock();
+            }
+        }
     }
 
-    // Get details of a specific transaction based on its ID
-    public Transaction getTransactionDetails(String TransactionID) throws InvalidTransactionException {
-        Transaction requestedTransaction = null;
+    // Move transactions from the hot window to the archive in batches, the caller holds the spill lock.
+    // A transaction is archived before it leaves the id index, so a lookup always finds it in one of the tiers.
+    private int spill() {
+        long cutoffMillis = System.currentTimeMillis() - this.archive.getHotAgeMillis();
+        long[] ids = new long[SPILL_BATCH_SIZE];
+        long[] addresses = new long[SPILL_BATCH_SIZE];
+        int spilled = 0;
+        int drained;
+        do {
+            drained = this.transactions.drain(this.archive.getHotTransactions(), cutoffMillis, ids, addresses);
+            this.archive.spill(ids, addresses, drained);
+            for (int i = 0; i < drained; i++) {
+                this.transactionsById.remove(ids[i]);
+            }
+            spilled += drained;
+        } while (drained == SPILL_BATCH_SIZE);
+        return spilled;
+    }
 
-        // Loop through transactions to find the requested one
-        for (Transaction transaction : transactions) {
-            if (transaction.getId().equals(TransactionID)) {
-                requestedTransaction = transaction;
-            } else throw new InvalidTransactionException("Transaction ID is invalid");
+    // Enter a ledger update a snapshot cut will not split
+    private void enterUpdate() {
+        if (this.changeTracker != null) {
+            this.changeTracker.enter();
+        }
+    }
+
+    // Exit a ledger update
+    private void exitUpdate() {
+        if (this.changeTracker != null) {
+            this.changeTracker.exit();
+        }
+    }
+
+    // Reject amounts the accounts would reject, before anything is journaled
+    private static void requirePositive(long amount, String operation) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException(operation + " amount must be greater than 0");
+        }
+    }
+
+    // Reject withdrawals the account would reject, before anything is journaled
+    private static void requireFunds(Account account, long amount) throws InsufficientFundsException {
+        if (amount > account.getBalance()) {
+            throw new InsufficientFundsException("Insufficient funds");
+        }
+    }
+
+    // Append the transaction to the journal, if any, returning a future completed once it is durable
+    private CompletableFuture<Void> journal(Transaction transaction) {
+        if (this.journal == null) {
+            return NOT_JOURNALED;
+        }
+        return this.journal.append(transaction);
+    }
+
+    // Add the transaction to the ledger and to the history of the accounts involved
+    private void addTransaction(Transaction transaction, Account account, Account recipientAccount) {
+        long address = this.historyLog.append(transaction);
+        this.transactionsById.put(transaction.getIdValue(), transaction);
+        this.transactions.add(transaction, address);
+        indexTransaction(account.getId(), address, transaction.getTimestampMillis());
+        if (recipientAccount != null) {
+            indexTransaction(recipientAccount.getId(), address, transaction.getTimestampMillis());
+        }
+        if (this.changeTracker != null) {
+            this.changeTracker.accountChanged(account.getId());
+            if (recipientAccount != null) {
+                this.changeTracker.accountChanged(recipientAccount.getId());
+            }
+        }
+    }
+
+    // Append a history log address to the history of the given account, the caller holds the account's lock
+    private void indexTransaction(String accountId, long address, long timestampMillis) {
+        this.transactionsByAccount.computeIfAbsent(accountId, id -> new AccountHistory(this.archive)).add(address, timestampMillis);
+    }
+
+    // Copy the history log addresses of an account under its lock
+    private long[] accountAddresses(String accountId) {
+        accountLocks.lock(accountId);
+        try {
+            AccountHistory history = this.transactionsByAccount.get(accountId);
+            return history == null ? new long[0] : history.addresses();
+        } finally {
+            accountLocks.unlock(accountId);
+        }
+    }
+
+    // Get the transactions of a specific account in the order they were recorded, as views over the history log
+    public List<TransactionView> getAccountTransactions(String accountId) {
+        long[] addresses = accountAddresses(accountId);
+        List<TransactionView> accountTransactions = new ArrayList<>(addresses.length);
+        for (long address : addresses) {
+            accountTransactions.add(this.historyLog.read(address, new TransactionView()));
+        }
+        return accountTransactions;
+    }
+
+    // Number of history log addresses a history stream copies under the account's lock at a time
+    private static final int STREAM_CHUNK_SIZE = 256;
+
+    // Copy the history log addresses of the transactions at positions [from, to) of an account's history
+    // and its current size under its lock
+    private long[] accountAddresses(String accountId, int from, int to, int[] size) {
+        accountLocks.lock(accountId);
+        try {
+            AccountHistory history = this.transactionsByAccount.get(accountId);
+            if (history == null) {
+                size[0] = 0;
+                return new long[0];
+            }
+            size[0] = history.size();
+            return history.addresses(from, to);
+        } finally {
+            accountLocks.unlock(accountId);
+        }
+    }
+
+    // Get the page of an account's transactions starting at the given cursor, which is the position in the
+    // account's history where the page starts, 0 for the first page. Histories are append-only, so a cursor
+    // stays valid however many transactions are recorded meanwhile.
+    public TransactionPage getAccountTransactionPage(String accountId, long cursor, int pageSize) {
+        if (cursor < 0 || cursor > Integer.MAX_VALUE || pageSize <= 0) {
+            throw new IllegalArgumentException("Cursor must not be negative and page size must be greater than 0");
+        }
+        int from = (int) cursor;
+        int[] size = new int[1];
+        long[] addresses = accountAddresses(accountId, from, (int) Math.min((long) from + pageSize, Integer.MAX_VALUE), size);
+        List<TransactionView> transactions = new ArrayList<>(addresses.length);
+        for (long address : addresses) {
+            transactions.add(this.historyLog.read(address, new TransactionView()));
+        }
+        long next = from + addresses.length;
+        return new TransactionPage(transactions, next < size[0] ? next : TransactionPage.END, size[0]);
+    }
+
+    // Stream the transactions of a specific account in the order they were recorded. The stream walks the
+    // history log lazily, copying a chunk of addresses under the account's lock at a time, and ends with the
+    // transactions recorded by the time it reaches the end.
+    public Stream<TransactionView> streamAccountTransactions(String accountId) {
+        Iterator<TransactionView> iterator = new Iterator<>() {
+            private long[] chunk = new long[0];
+            private int chunkIndex;
+            private int position;
+            private boolean exhausted;
+
+            @Override
+            public boolean hasNext() {
+                if (chunkIndex < chunk.length) {
+                    return true;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                chunk = accountAddresses(accountId, position, position + STREAM_CHUNK_SIZE, new int[1]);
+                chunkIndex = 0;
+                position += chunk.length;
+                exhausted = chunk.length < STREAM_CHUNK_SIZE;
+                return chunk.length > 0;
+            }
+
+            @Override
+            public TransactionView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return historyLog.read(chunk[chunkIndex++], new TransactionView());
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // Read the timestamp a transaction was recorded with from the history log, through a single view
+    private LongUnaryOperator recordedTimestamps() {
+        TransactionView view = new TransactionView();
+        return address -> this.historyLog.read(address, view).getTimestampMillis();
+    }
+
+    // Copy the history log addresses of a page of an account's transactions within a time range under its lock
+    private long[] accountAddresses(String accountId, long fromMillis, long toMillis, int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        accountLocks.lock(accountId);
+        try {
+            AccountHistory history = this.transactionsByAccount.get(accountId);
+            return history == null ? new long[0]
+                    : history.addresses(fromMillis, toMillis, offset, limit, recordedTimestamps());
+        } finally {
+            accountLocks.unlock(accountId);
+        }
+    }
+
+    // Get a page of the transactions of a specific account within the time range [fromMillis, toMillis),
+    // in the order they were recorded, as views over the history log
+    public List<TransactionView> getAccountTransactions(String accountId, long fromMillis, long toMillis,
+                                                        int offset, int limit) {
+        long[] addresses = accountAddresses(accountId, fromMillis, toMillis, offset, limit);
+        List<TransactionView> accountTransactions = new ArrayList<>(addresses.length);
+        for (long address : addresses) {
+            accountTransactions.add(this.historyLog.read(address, new TransactionView()));
+        }
+        return accountTransactions;
+    }
+
+    // Count the transactions of a specific account within the time range [fromMillis, toMillis)
+    public int countAccountTransactions(String accountId, long fromMillis, long toMillis) {
+        accountLocks.lock(accountId);
+        try {
+            AccountHistory history = this.transactionsByAccount.get(accountId);
+            return history == null ? 0 : history.count(fromMillis, toMillis, recordedTimestamps());
+        } finally {
+            accountLocks.unlock(accountId);
+        }
+    }
+
+    // Walk the transactions of a specific account in the order they were recorded through a single reused view,
+    // the view must not be kept once the action returns
+    public void forEachAccountTransaction(String accountId, Consumer<TransactionView> action) {
+        TransactionView view = new TransactionView();
+        for (long address : accountAddresses(accountId)) {
+            action.accept(this.historyLog.read(address, view));
+        }
+    }
+
+    // Get details of a specific transaction based on its ID, from the hot window or else from the archive
+    public Transaction getTransactionDetails(String TransactionID) throws InvalidTransactionException {
+        Transaction requestedTransaction;
+        try {
+            requestedTransaction = findTransaction(TransactionIds.parse(TransactionID));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidTransactionException("Transaction ID is invalid");
+        }
+        if (requestedTransaction == null) {
+            throw new InvalidTransactionException("Transaction ID is invalid");
         }
         return requestedTransaction;
     }
 
-    // Validate if a transaction is present in the list of transactions for a given account
+    // Validate if a transaction was recorded and involves the given account, if any
     public boolean validateTransaction(Transaction transaction, Account account) throws InvalidTransactionException {
-        boolean isValid = this.getTransactions().contains(transaction);
+        Transaction recorded = transaction == null ? null : findTransaction(transaction.getIdValue());
+        boolean isValid = recorded != null && (recorded == transaction || recorded.equals(transaction))
+                && (account == null || involves(recorded, account.getId()));
         if (!isValid) {
             throw new InvalidTransactionException("Transaction object is Invalid");
         } else {
@@ -73,9 +608,26 @@ public class TransactionManager implements ITransactionManager {
         }
     }
 
-    // Get the list of recorded transactions
-    public ArrayList<Transaction> getTransactions() {
-        return this.transactions;
+    // Find a transaction in the hot window or else in the archive, null if it was never recorded
+    Transaction findTransaction(long id) {
+        Transaction transaction = this.transactionsById.get(id);
+        if (transaction != null) {
+            return transaction;
+        }
+        long address = this.archive.find(id);
+        return address == TransactionArchive.NOT_FOUND ? null
+                : this.historyLog.read(address, new TransactionView()).toTransaction();
+    }
+
+    // Check whether a transaction debits or credits the given account
+    private static boolean involves(Transaction transaction, String accountId) {
+        return transaction.getAccountId().equals(accountId) || (transaction instanceof TransferTransaction
+                && ((TransferTransaction) transaction).getRecipientAccountId().equals(accountId));
+    }
+
+    // Get a copy of the recently recorded transactions still held in the hot window, older ones are archived
+    public List<Transaction> getTransactions() {
+        return this.transactions.toList();
     }
 
 }
@@ -0,0 +1,59 @@
+package edu.gu;
+
+import java.util.List;
+
+/**
+ * A page of an account's transaction history, with the cursor of the page that follows it.
+ */
+public final class TransactionPage {
+    /**
+     * Cursor returned when there is no further page.
+     */
+    public static final long END = -1;
+
+    private final List<TransactionView> transactions;
+    private final long nextCursor;
+    private final int totalTransactions;
+
+    TransactionPage(List<TransactionView> transactions, long nextCursor, int totalTransactions) {
+        this.transactions = transactions;
+        this.nextCursor = nextCursor;
+        this.totalTransactions = totalTransactions;
+    }
+
+    /**
+     * Retrieves the transactions of the page in the order they were recorded.
+     *
+     * @return The transactions, as views over the history log.
+     */
+    public List<TransactionView> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * Retrieves the cursor of the next page.
+     *
+     * @return The cursor of the next page, or {@link #END} if this is the last page.
+     */
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Checks whether a further page follows this one.
+     *
+     * @return True if there is a next page; false otherwise.
+     */
+    public boolean hasNext() {
+        return nextCursor != END;
+    }
+
+    /**
+     * Retrieves the number of transactions in the account's history when the page was read.
+     *
+     * @return The total number of transactions.
+     */
+    public int getTotalTransactions() {
+        return totalTransactions;
+    }
+}
@@ -0,0 +1,168 @@
+package edu.gu;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Flyweight view of a transaction record stored in a {@link TransactionLog} segment.
+ * Fields are decoded straight from the segment buffer when they are read, and a single view can be
+ * re-pointed at any number of records, so walking a history does not create a transaction object per entry.
+ */
+public final class TransactionView {
+    // Offsets of the fixed-size fields of a record
+    static final int LENGTH_OFFSET = 0;
+    static final int TYPE_OFFSET = LENGTH_OFFSET + Short.BYTES;
+    static final int AMOUNT_OFFSET = TYPE_OFFSET + Byte.BYTES;
+    static final int ID_OFFSET = AMOUNT_OFFSET + Long.BYTES;
+    static final int TIMESTAMP_OFFSET = ID_OFFSET + Long.BYTES;
+    static final int STRINGS_OFFSET = TIMESTAMP_OFFSET + Long.BYTES;
+
+    // Indexes of the length-prefixed strings following the fixed-size fields
+    private static final int ACCOUNT_ID = 0;
+    private static final int RECIPIENT_ACCOUNT_ID = 1;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+
+    // Segment buffer holding the record
+    private ByteBuffer buffer;
+
+    // Offset of the record in the segment buffer
+    private int offset;
+
+    /**
+     * Points the view at a record.
+     *
+     * @param buffer The segment buffer holding the record.
+     * @param offset The offset of the record in the buffer.
+     * @return This view.
+     */
+    TransactionView wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Retrieves the unique identifier of the transaction.
+     *
+     * @return The transaction identifier in its display form.
+     */
+    public String getId() {
+        return TransactionIds.format(getIdValue());
+    }
+
+    /**
+     * Retrieves the unique identifier of the transaction as a number.
+     *
+     * @return The transaction identifier.
+     */
+    public long getIdValue() {
+        return buffer.getLong(offset + ID_OFFSET);
+    }
+
+    /**
+     * Retrieves the type of the transaction.
+     *
+     * @return The transaction type.
+     */
+    public TransactionType getType() {
+        return TYPES[buffer.get(offset + TYPE_OFFSET)];
+    }
+
+    /**
+     * Retrieves the amount involved in the transaction.
+     *
+     * @return The amount in minor units.
+     */
+    public long getAmount() {
+        return buffer.getLong(offset + AMOUNT_OFFSET);
+    }
+
+    /**
+     * Retrieves the timestamp of the transaction.
+     *
+     * @return The timestamp in the yyyy.MM.dd.HH.mm.ss layout.
+     */
+    public String getTimestamp() {
+        return TransactionIds.formatTimestamp(getTimestampMillis());
+    }
+
+    /**
+     * Retrieves the timestamp of the transaction.
+     *
+     * @return The timestamp in milliseconds since the Unix epoch.
+     */
+    public long getTimestampMillis() {
+        return buffer.getLong(offset + TIMESTAMP_OFFSET);
+    }
+
+    /**
+     * Retrieves the account of the transaction, the sender for transfers.
+     *
+     * @return The account identifier.
+     */
+    public String getAccountId() {
+        return getString(ACCOUNT_ID);
+    }
+
+    /**
+     * Retrieves the recipient account of a transfer.
+     *
+     * @return The recipient account identifier, or null if the transaction is not a transfer.
+     */
+    public String getRecipientAccountId() {
+        return getString(RECIPIENT_ACCOUNT_ID);
+    }
+
+    /**
+     * Copies the record into a transaction object, which stays valid once the view is re-pointed.
+     *
+     * @return The transaction this record was written from.
+     */
+    public Transaction toTransaction() {
+        long id = getIdValue();
+        long timestamp = getTimestampMillis();
+        return switch (getType()) {
+            case DEPOSIT -> new DepositTransaction(id, timestamp, getAccountId(), getAmount());
+            case WITHDRAWAL -> new WithdrawalTransaction(id, timestamp, getAccountId(), getAmount());
+            case TRANSFER -> new TransferTransaction(id, timestamp, getAccountId(), getRecipientAccountId(), getAmount());
+        };
+    }
+
+    /**
+     * Generates the same representation as the transaction this record was written from.
+     *
+     * @return A string containing the transaction details.
+     */
+    @Override
+    public String toString() {
+        if (getType() == TransactionType.TRANSFER) {
+            return getType() + " Transaction { " + '\n' +
+                    "   timestamp = " + getTimestamp() + '\n' +
+                    "   amount = " + Money.format(getAmount()) + '\n' +
+                    "   sender account ID='" + getAccountId() + '\n' +
+                    "   recipient account ID='" + getRecipientAccountId() + '\n' +
+                    "}";
+        }
+        return getType() + " Transaction { " + '\n' +
+                "   timestamp = " + getTimestamp() + '\n' +
+                "   amount = " + Money.format(getAmount()) + '\n' +
+                "   account ID='" + getAccountId() + '\n' +
+                "}";
+    }
+
+    // Decode the n-th length-prefixed string of the record, a length of -1 standing for null
+    private String getString(int index) {
+        int position = offset + STRINGS_OFFSET;
+        for (int i = 0; i < index; i++) {
+            position += Short.BYTES + Math.max(0, buffer.getShort(position));
+        }
+        short length = buffer.getShort(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
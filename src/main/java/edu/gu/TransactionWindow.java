@@ -0,0 +1,94 @@
+package edu.gu;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hot tier of the transaction history: the most recently recorded transactions in record order, with the
+ * history log address of each, in a growable ring. Transactions leave it from the oldest end when they are
+ * spilled to the {@link TransactionArchive}.
+ */
+final class TransactionWindow {
+    // Ring of transactions and their addresses, only the size entries from head are in use
+    private Transaction[] transactions = new Transaction[16];
+    private long[] addresses = new long[16];
+    private int head;
+    private int size;
+
+    /**
+     * Appends a transaction to the newest end of the window.
+     *
+     * @param transaction The transaction.
+     * @param address     The address of its record in the history log.
+     */
+    synchronized void add(Transaction transaction, long address) {
+        if (size == transactions.length) {
+            grow();
+        }
+        int tail = (head + size) & (transactions.length - 1);
+        transactions[tail] = transaction;
+        addresses[tail] = address;
+        size++;
+    }
+
+    /**
+     * Retrieves the number of transactions in the window.
+     *
+     * @return The number of transactions.
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Removes transactions from the oldest end of the window while more than the given number are held or the
+     * oldest one was recorded before the cutoff.
+     *
+     * @param keep         Number of most recent transactions to keep.
+     * @param cutoffMillis Timestamp before which transactions are removed whatever their number.
+     * @param ids          Receives the identifiers of the removed transactions, its length caps their number.
+     * @param addresses    Receives the addresses of the removed transactions.
+     * @return The number of transactions removed.
+     */
+    synchronized int drain(int keep, long cutoffMillis, long[] ids, long[] addresses) {
+        int drained = 0;
+        while (drained < ids.length && size > 0
+                && (size > keep || transactions[head].getTimestampMillis() < cutoffMillis)) {
+            ids[drained] = transactions[head].getIdValue();
+            addresses[drained] = this.addresses[head];
+            transactions[head] = null;
+            head = (head + 1) & (transactions.length - 1);
+            size--;
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Copies the transactions of the window.
+     *
+     * @return The transactions in record order.
+     */
+    synchronized List<Transaction> toList() {
+        List<Transaction> copy = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            copy.add(transactions[(head + i) & (transactions.length - 1)]);
+        }
+        return copy;
+    }
+
+    // Double the ring, unwrapping it so the oldest entry is first
+    private void grow() {
+        int capacity = transactions.length;
+        Transaction[] grownTransactions = new Transaction[capacity * 2];
+        long[] grownAddresses = new long[capacity * 2];
+        int firstPart = capacity - head;
+        System.arraycopy(transactions, head, grownTransactions, 0, firstPart);
+        System.arraycopy(transactions, 0, grownTransactions, firstPart, head);
+        System.arraycopy(addresses, head, grownAddresses, 0, firstPart);
+        System.arraycopy(addresses, 0, grownAddresses, firstPart, head);
+        transactions = grownTransactions;
+        addresses = grownAddresses;
+        head = 0;
+    }
+}
@@ -6,13 +6,19 @@ public class TransferTransaction extends Transaction {
     private final String recipientAccountId;
 
     // Constructor to initialize a transfer transaction with sender, recipient, and amount
-    public TransferTransaction(String senderAccountId, String recipientAccountId, double amount) {
+    public TransferTransaction(String senderAccountId, String recipientAccountId, long amount) {
         // Call the superclass constructor to set transaction type and amount
         super(TransactionType.TRANSFER, amount, senderAccountId);
         // Initialize sender and recipient account IDs
         this.recipientAccountId = recipientAccountId;
     }
 
+    // Constructor restoring a transfer transaction read back from the journal
+    TransferTransaction(long id, long timestamp, String senderAccountId, String recipientAccountId, long amount) {
+        super(id, timestamp, TransactionType.TRANSFER, amount, senderAccountId);
+        this.recipientAccountId = recipientAccountId;
+    }
+
     // Getter for the recipient account ID
     public String getRecipientAccountId() {
         return recipientAccountId;
@@ -22,7 +28,7 @@ public class TransferTransaction extends Transaction {
     public String toString() {
         return this.getType() + " Transaction { " + '\n' +
                 "   timestamp = " + getTimestamp() + '\n' +
-                "   amount = " + getAmount() + '\n' +
+                "   amount = " + Money.format(getAmount()) + '\n' +
                 "   sender account ID='" + getAccountId() + '\n' +
                 "   recipient account ID='" + recipientAccountId + '\n' +
                 "}";
@@ -6,13 +6,19 @@ public class WithdrawalTransaction extends Transaction {
     private final String accountId;
 
     // Constructor for creating a withdrawal transaction
-    public WithdrawalTransaction(String accountId, double amount) {
+    public WithdrawalTransaction(String accountId, long amount) {
         // Calls the constructor of the superclass (Transaction) with the withdrawal transaction type and amount
         super(TransactionType.WITHDRAWAL, amount, accountId);
         // Initializes the account ID
         this.accountId = accountId;
     }
 
+    // Constructor restoring a withdrawal transaction read back from the journal
+    WithdrawalTransaction(long id, long timestamp, String accountId, long amount) {
+        super(id, timestamp, TransactionType.WITHDRAWAL, amount, accountId);
+        this.accountId = accountId;
+    }
+
     // Getter for the account ID associated with the withdrawal
     public String getAccountId() {
         return this.accountId;
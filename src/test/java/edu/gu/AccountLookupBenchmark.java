@@ -0,0 +1,111 @@
+package edu.gu;
+
+import edu.gu.exceptions.InvalidAccountNumberException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the cost of {@link AccountManager#getAccount(String)} and
+ * {@link AccountManager#getAccountByNumber(String)} with 10K, 100K and 1M managed accounts, looking up random
+ * existing accounts. With the hash indexes the time per lookup stays flat as the account count grows; a linear
+ * scan of the account list, what both lookups did before, is measured next to them for comparison.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes:<jackson jars> edu.gu.AccountLookupBenchmark}.
+ */
+public class AccountLookupBenchmark {
+    // Account counts measured
+    private static final int[] ACCOUNT_COUNTS = {10_000, 100_000, 1_000_000};
+
+    // Lookups per measured round of the indexed lookups, and rounds measured after as many warm-up rounds
+    private static final int LOOKUPS = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    // Lookups measured for the linear scan, which is far slower
+    private static final int SCAN_LOOKUPS = 200;
+
+    public static void main(String[] args) throws InvalidAccountNumberException {
+        System.out.printf("%10s %16s %16s %16s%n", "accounts", "by id ns", "by number ns", "scan ns");
+        for (int count : ACCOUNT_COUNTS) {
+            List<Account> accounts = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                accounts.add(new Account("lookup-" + i, String.valueOf(100_000_000 + i), "Lookup", AccountType.SAVINGS,
+                        "lookup-owner", 0));
+            }
+            AccountManager manager = new AccountManager(accounts);
+
+            // Random keys drawn up front, so the measured loops only look up
+            Random random = new Random(count);
+            String[] ids = new String[LOOKUPS];
+            String[] numbers = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                Account account = accounts.get(random.nextInt(count));
+                ids[i] = account.getId();
+                numbers[i] = account.getAccountNumber();
+            }
+
+            double byId = Double.MAX_VALUE;
+            double byNumber = Double.MAX_VALUE;
+            for (int round = 0; round < 2 * ROUNDS; round++) {
+                double idNanos = lookUpById(manager, ids);
+                double numberNanos = lookUpByNumber(manager, numbers);
+                if (round >= ROUNDS) {
+                    byId = Math.min(byId, idNanos);
+                    byNumber = Math.min(byNumber, numberNanos);
+                }
+            }
+            double scan = scan(accounts, numbers);
+            System.out.printf("%10d %16.1f %16.1f %16.1f%n", count, byId, byNumber, scan);
+        }
+    }
+
+    // Look up every identifier and return the nanoseconds per lookup
+    private static double lookUpById(AccountManager manager, String[] ids) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (String id : ids) {
+            if (manager.getAccount(id) != null) {
+                found++;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != ids.length) {
+            throw new IllegalStateException("Found " + found + " of " + ids.length + " accounts by id");
+        }
+        return (double) elapsed / ids.length;
+    }
+
+    // Look up every account number and return the nanoseconds per lookup
+    private static double lookUpByNumber(AccountManager manager, String[] numbers) throws InvalidAccountNumberException {
+        long balances = 0;
+        long start = System.nanoTime();
+        for (String number : numbers) {
+            balances += manager.getAccountByNumber(number).getBalance();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (balances != 0) {
+            throw new IllegalStateException("Unexpected balances: " + balances);
+        }
+        return (double) elapsed / numbers.length;
+    }
+
+    // Find the first account numbers by scanning the account list and return the nanoseconds per lookup
+    private static double scan(List<Account> accounts, String[] numbers) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < SCAN_LOOKUPS; i++) {
+            for (Account account : accounts) {
+                if (account.getAccountNumber().equals(numbers[i])) {
+                    found++;
+                    break;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != SCAN_LOOKUPS) {
+            throw new IllegalStateException("Found " + found + " of " + SCAN_LOOKUPS + " accounts by scanning");
+        }
+        return (double) elapsed / SCAN_LOOKUPS;
+    }
+}
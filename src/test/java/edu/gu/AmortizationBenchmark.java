@@ -0,0 +1,152 @@
+package edu.gu;
+
+import edu.gu.exceptions.IncompleteApplicationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures the generation of 30-year monthly amortization schedules for 100K loans, as primitive columns with
+ * {@link AmortizationSchedule} and, for comparison, as one object per row computed with the balance recurrence.
+ * It also measures the projection of the 100K loans as a portfolio, on one thread with
+ * {@link PortfolioProjection} and on the common pool through {@link MortgageRiskEngine#project(List)}.
+ * <p>
+ * Before measuring, it checks that the closed-form balance of the columns matches the recurrence, and that the
+ * projection of a portfolio matches the sum of the schedules of its loans.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes:<jackson jars> edu.gu.AmortizationBenchmark [rounds]}.
+ */
+public class AmortizationBenchmark {
+    private static final int LOANS = 100_000;
+    private static final int TERM_MONTHS = 360;
+
+    // Loans of the portfolio checked against the sum of their schedules
+    private static final int CHECKED_LOANS = 1_000;
+
+    // Largest difference tolerated between two computations of the same amount, in millions
+    private static final double TOLERANCE = 1e-6;
+
+    public static void main(String[] args) throws IncompleteApplicationException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        Random random = new Random(5);
+        double[] loanAmounts = new double[LOANS];
+        double[] ratesPercent = new double[LOANS];
+        for (int i = 0; i < LOANS; i++) {
+            loanAmounts[i] = 0.1 + random.nextDouble() * 4;
+            ratesPercent[i] = 1 + random.nextDouble() * 8;
+        }
+        checkClosedForm();
+        checkProjection(loanAmounts, ratesPercent);
+
+        MortgageRiskEngine engine = new MortgageRiskEngine(ForkJoinPool.commonPool(), TERM_MONTHS);
+        List<MortgageApplication> applications = applications(loanAmounts, ratesPercent, LOANS);
+        System.out.printf("%d loans, %d months, %d available processors%n", LOANS, TERM_MONTHS,
+                Runtime.getRuntime().availableProcessors());
+        System.out.printf("%6s %14s %14s %14s %14s%n", "round", "columns us", "rows us", "projection ms", "parallel ms");
+        // Folds every result, so the generation cannot be optimized away
+        double sink = 0;
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < LOANS; i++) {
+                sink += AmortizationSchedule.of(loanAmounts[i], ratesPercent[i], TERM_MONTHS).getBalance(100);
+            }
+            long columns = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < LOANS; i++) {
+                sink += rows(loanAmounts[i], ratesPercent[i], TERM_MONTHS).get(100).balance;
+            }
+            long rows = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += PortfolioProjection.of(loanAmounts, ratesPercent, 0, LOANS, TERM_MONTHS).getBalance(5);
+            long projection = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sink += engine.project(applications).getBalance(5);
+            long parallel = System.nanoTime() - start;
+
+            // The first round warms the JIT
+            System.out.printf("%6s %14.2f %14.2f %14.0f %14.0f%n", round == 1 ? "warmup" : String.valueOf(round),
+                    columns / 1e3 / LOANS, rows / 1e3 / LOANS, projection / 1e6, parallel / 1e6);
+        }
+        if (Double.isNaN(sink)) {
+            throw new IllegalStateException("A schedule produced NaN");
+        }
+    }
+
+    // Check the closed-form balance of a schedule against the recurrence
+    private static void checkClosedForm() {
+        AmortizationSchedule schedule = AmortizationSchedule.of(0.3, 6, TERM_MONTHS);
+        List<Row> rows = rows(0.3, 6, TERM_MONTHS);
+        for (int month = 0; month < TERM_MONTHS; month++) {
+            if (Math.abs(rows.get(month).balance - schedule.getBalance(month)) > TOLERANCE) {
+                throw new IllegalStateException(String.format("Balance of month %d is %f, the recurrence gives %f",
+                        month, schedule.getBalance(month), rows.get(month).balance));
+            }
+        }
+    }
+
+    // Check the projection of a portfolio against the sum of the schedules of its loans
+    private static void checkProjection(double[] loanAmounts, double[] ratesPercent) throws IncompleteApplicationException {
+        MortgageRiskEngine engine = new MortgageRiskEngine(ForkJoinPool.commonPool(), TERM_MONTHS);
+        List<MortgageApplication> applications = applications(loanAmounts, ratesPercent, CHECKED_LOANS);
+        double[] balance = new double[TERM_MONTHS];
+        double[] interest = new double[TERM_MONTHS];
+        for (MortgageApplication application : applications) {
+            AmortizationSchedule schedule = engine.schedule(application);
+            for (int month = 0; month < TERM_MONTHS; month++) {
+                balance[month] += schedule.getBalance(month);
+                interest[month] += schedule.getInterest(month);
+            }
+        }
+        PortfolioProjection projection = engine.project(applications);
+        for (int month = 0; month < TERM_MONTHS; month++) {
+            if (Math.abs(balance[month] - projection.getBalance(month)) > TOLERANCE
+                    || Math.abs(interest[month] - projection.getInterest(month)) > TOLERANCE) {
+                throw new IllegalStateException("Projection of month " + month + " does not match the schedules");
+            }
+        }
+    }
+
+    // Submit an application for each of the first loans
+    private static List<MortgageApplication> applications(double[] loanAmounts, double[] ratesPercent, int count)
+            throws IncompleteApplicationException {
+        MortgageManager manager = new MortgageManager();
+        User applicant = new User("benchmark-applicant", "applicant", "password", "applicant@bankea.se", User.Role.CLIENT);
+        List<MortgageApplication> applications = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            applications.add(manager.submitApplication(applicant, 10, loanAmounts[i], ratesPercent[i]));
+        }
+        return applications;
+    }
+
+    // Generate a schedule as one object per row, each balance computed from the previous one
+    private static List<Row> rows(double loanAmount, double ratePercent, int termMonths) {
+        double rate = ratePercent / 100 / 12;
+        double payment = MortgageRiskEngine.monthlyPayment(loanAmount, ratePercent, termMonths);
+        double balance = loanAmount;
+        List<Row> rows = new ArrayList<>(termMonths);
+        for (int month = 0; month < termMonths; month++) {
+            double interest = balance * rate;
+            balance -= payment - interest;
+            rows.add(new Row(interest, payment - interest, balance));
+        }
+        return rows;
+    }
+
+    // One month of a schedule generated as objects
+    private static final class Row {
+        final double interest;
+        final double principal;
+        final double balance;
+
+        Row(double interest, double principal, double balance) {
+            this.interest = interest;
+            this.principal = principal;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package edu.gu;
+
+import edu.gu.exceptions.AccountInactiveException;
+import edu.gu.exceptions.InsufficientFundsException;
+import edu.gu.exceptions.InvalidAccountNumberException;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures a payroll run, transfers from one company account to every employee account, executed either as
+ * one {@link Bank#transferBatch(List, BatchTransfer.Mode)} or as a loop resolving both account numbers and calling
+ * {@link Bank#transfer(Account, Account, long)} for every leg, the per-call path.
+ * <p>
+ * Both are measured without a journal, where only the lookups and locking differ, and with a group-commit
+ * journal, where the per-call path waits for a commit per transfer and the batch for a single one. Every run
+ * checks that the payroll left the company account with the expected balance.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes:<jackson jars> edu.gu.BatchTransferBenchmark [legs]}.
+ */
+public class BatchTransferBenchmark {
+    // Employees paid by a payroll run when none is given
+    private static final int DEFAULT_LEGS = 5_000;
+
+    // Runs of each shape, the first one warms the JIT and is not reported
+    private static final int ROUNDS = 4;
+
+    private static final long SALARY = 2_500_000;
+
+    public static void main(String[] args) throws Exception {
+        int legs = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_LEGS;
+        System.out.printf("Payroll of %d legs%n", legs);
+        System.out.printf("%-10s %-10s %16s%n", "journal", "path", "transfers/s");
+        for (boolean journaled : new boolean[]{false, true}) {
+            double[] batch = new double[ROUNDS];
+            double[] perCall = new double[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                batch[round] = run(legs, journaled, true);
+                perCall[round] = run(legs, journaled, false);
+            }
+            System.out.printf("%-10s %-10s %16.0f%n", journaled ? "group" : "none", "batch", best(batch));
+            System.out.printf("%-10s %-10s %16.0f%n", journaled ? "group" : "none", "per-call", best(perCall));
+        }
+    }
+
+    // Pay every employee once and return the transfers per second
+    private static double run(int legs, boolean journaled, boolean batch) throws Exception {
+        Path directory = journaled ? Files.createTempDirectory("bankea-batch-benchmark") : null;
+        TransactionJournal journal = journaled
+                ? new TransactionJournal(directory.resolve("journal.wal"), TransactionJournal.FsyncPolicy.GROUP_COMMIT, 2)
+                : null;
+        List<Account> accounts = new ArrayList<>(legs + 1);
+        Account company = new Account("company", "900000000", "Payroll", AccountType.CHECKING, "company-owner",
+                SALARY * legs);
+        accounts.add(company);
+        List<BatchTransfer.Leg> payroll = new ArrayList<>(legs);
+        for (int i = 0; i < legs; i++) {
+            Account employee = new Account("employee-" + i, String.valueOf(100_000_000 + i), "Salary",
+                    AccountType.CHECKING, "employee-" + i, 0);
+            accounts.add(employee);
+            payroll.add(new BatchTransfer.Leg(company.getAccountNumber(), employee.getAccountNumber(), SALARY));
+        }
+        Bank bank = new Bank("Benchmark", "Benchmark", accounts, new ArrayList<>(), journal);
+
+        long start = System.nanoTime();
+        if (batch) {
+            BatchTransfer.Result result = bank.transferBatch(payroll, BatchTransfer.Mode.ALL_OR_NOTHING);
+            if (result.getExecutedCount() != legs) {
+                throw new IllegalStateException("Only " + result.getExecutedCount() + " of " + legs + " legs were executed");
+            }
+        } else {
+            for (BatchTransfer.Leg leg : payroll) {
+                transfer(bank, leg);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        if (company.getBalance() != 0) {
+            throw new IllegalStateException("The company account kept " + company.getBalance());
+        }
+        bank.shutdown();
+        if (journaled) {
+            deleteDirectory(directory);
+        }
+        return legs / seconds;
+    }
+
+    // Execute one leg the way a caller without the batch API does
+    private static void transfer(Bank bank, BatchTransfer.Leg leg)
+            throws InvalidAccountNumberException, InsufficientFundsException, AccountInactiveException {
+        Account sender = bank.getAccountByNumber(leg.getSenderAccountNumber());
+        Account recipient = bank.getAccountByNumber(leg.getRecipientAccountNumber());
+        bank.transfer(sender, recipient, leg.getAmount());
+    }
+
+    // Best rate of the measured rounds, after the warm-up one
+    private static double best(double[] rates) {
+        double best = 0;
+        for (int round = 1; round < rates.length; round++) {
+            best = Math.max(best, rates[round]);
+        }
+        return best;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
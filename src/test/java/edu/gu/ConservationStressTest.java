@@ -0,0 +1,153 @@
+package edu.gu;
+
+import edu.gu.exceptions.InsufficientFundsException;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stress test of the striped account locks: threads run random transfers and batch transfers between a small
+ * set of accounts, so stripes are contended and opposite transfers race, and the test then checks that
+ * <ul>
+ *     <li>no money was created or lost, the balances still add up to the initial total,</li>
+ *     <li>no balance went negative,</li>
+ *     <li>the history of every account replays to its balance.</li>
+ * </ul>
+ * The test method follows the plain-object convention Surefire runs without a test framework. The main method
+ * runs the same check with 1, 4, 16 and 64 threads and prints the transfer rate of each, showing how far
+ * throughput scales with the available cores: {@code java -cp <classes> edu.gu.ConservationStressTest [seconds]}.
+ */
+public class ConservationStressTest {
+    // Thread counts run by the main method
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    // Few accounts, so that transfers collide on them
+    private static final int ACCOUNTS = 16;
+
+    private static final long INITIAL_BALANCE = 10_000;
+
+    // Number of legs of a batch transfer
+    private static final int BATCH_LEGS = 4;
+
+    public void testTransfersConserveMoney() throws InterruptedException {
+        run(8, 2);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        System.out.printf("%d available processors, %d s per run%n", Runtime.getRuntime().availableProcessors(), seconds);
+        System.out.printf("%8s %16s %16s%n", "threads", "transfers/s", "per thread/s");
+        for (int threads : THREAD_COUNTS) {
+            double rate = run(threads, seconds);
+            System.out.printf("%8d %16.0f %16.0f%n", threads, rate, rate / threads);
+        }
+    }
+
+    // Run random transfers from the given number of threads, check the invariants and return the transfers per second
+    private static double run(int threads, int seconds) throws InterruptedException {
+        TransactionManager manager = new TransactionManager(new AccountLocks(), null, TransactionLog.inMemory(),
+                new ChangeTracker(TransactionLog.inMemory()), TransactionArchive.inMemory());
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = new Account("stress-" + i, String.valueOf(200_000 + i), "Stress", AccountType.CHECKING,
+                    "stress-owner", INITIAL_BALANCE);
+        }
+
+        LongAdder transfers = new LongAdder();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    long count = 0;
+                    while (System.nanoTime() < deadline) {
+                        if (random.nextInt(8) == 0) {
+                            count += transferBatch(manager, accounts, random);
+                        } else {
+                            count += transfer(manager, accounts, random);
+                        }
+                    }
+                    transfers.add(count);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers[t].start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        if (failure.get() != null) {
+            throw new AssertionError("A transfer failed unexpectedly", failure.get());
+        }
+
+        long total = 0;
+        for (Account account : accounts) {
+            if (account.getBalance() < 0) {
+                throw new AssertionError(account.getId() + " went negative: " + account.getBalance());
+            }
+            total += account.getBalance();
+            long replayed = replay(manager.getAccountTransactions(account.getId()), account.getId());
+            if (replayed != account.getBalance()) {
+                throw new AssertionError(account.getId() + " history replays to " + replayed + " but the balance is "
+                        + account.getBalance());
+            }
+        }
+        if (total != ACCOUNTS * INITIAL_BALANCE) {
+            throw new AssertionError("Money was not conserved: " + total + " instead of " + ACCOUNTS * INITIAL_BALANCE);
+        }
+        return transfers.sum() / elapsedSeconds;
+    }
+
+    // Transfer a random amount between two distinct random accounts, return 1 if it was executed
+    private static int transfer(TransactionManager manager, Account[] accounts, ThreadLocalRandom random) throws Exception {
+        int sender = random.nextInt(ACCOUNTS);
+        int recipient = (sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        try {
+            manager.recordTransaction(accounts[sender], accounts[recipient], TransactionType.TRANSFER,
+                    1 + random.nextInt((int) INITIAL_BALANCE / 4));
+            return 1;
+        } catch (InsufficientFundsException e) {
+            return 0;
+        }
+    }
+
+    // Run a best-effort batch of random transfers, return the number of legs executed
+    private static int transferBatch(TransactionManager manager, Account[] accounts, ThreadLocalRandom random) {
+        Account[] senders = new Account[BATCH_LEGS];
+        Account[] recipients = new Account[BATCH_LEGS];
+        long[] amounts = new long[BATCH_LEGS];
+        for (int leg = 0; leg < BATCH_LEGS; leg++) {
+            int sender = random.nextInt(ACCOUNTS);
+            senders[leg] = accounts[sender];
+            recipients[leg] = accounts[(sender + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS];
+            amounts[leg] = 1 + random.nextInt((int) INITIAL_BALANCE / 4);
+        }
+        BatchTransfer.Result result = manager.recordTransfers(senders, recipients, amounts, new String[BATCH_LEGS],
+                BatchTransfer.Mode.BEST_EFFORT);
+        return result.getTransactions().size();
+    }
+
+    // Replay the history of an account from its initial balance
+    private static long replay(List<TransactionView> history, String accountId) {
+        long balance = INITIAL_BALANCE;
+        for (TransactionView transaction : history) {
+            if (accountId.equals(transaction.getAccountId())) {
+                balance -= transaction.getAmount();
+            } else {
+                balance += transaction.getAmount();
+            }
+        }
+        return balance;
+    }
+}
@@ -0,0 +1,186 @@
+package edu.gu;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures balance updates under contention, with 1, 4, 16 and 64 threads.
+ * <p>
+ * The first table compares the compare-and-set balance of {@link Account} with a synchronized baseline, a plain
+ * {@code long} guarded by the monitor of its holder, both alternating deposits and withdrawals on a single hot
+ * account. The second table measures whole deposits through the ledger, either to a single hot account or each
+ * to an account of its own. The hot case shows what the balance update saves and what the history append still
+ * serializes on the account stripe, the history log and the hot window; the spread case shows what those shared
+ * monitors cost without account contention.
+ * <p>
+ * The ledger is not journaled, so fsyncs do not hide the locking costs. Run with
+ * {@code java -cp target/classes:target/test-classes:<jackson jars> edu.gu.DepositContentionBenchmark [seconds]}.
+ */
+public class DepositContentionBenchmark {
+    // Thread counts measured
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    // Measured and warm-up time per run when none is given
+    private static final int DEFAULT_SECONDS = 3;
+
+    // End of the current run, in System.nanoTime units
+    private static volatile long deadline;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        System.out.printf("%d available processors, %d s per run%n", Runtime.getRuntime().availableProcessors(), seconds);
+
+        System.out.println("Balance updates on a single hot account");
+        System.out.printf("%8s %16s %16s %8s%n", "threads", "synchronized/s", "cas/s", "ratio");
+        for (int threads : THREAD_COUNTS) {
+            // The first run of each shape warms the JIT and is not reported
+            runSynchronized(threads, seconds);
+            double synchronizedRate = runSynchronized(threads, seconds);
+            runCas(threads, seconds);
+            double casRate = runCas(threads, seconds);
+            System.out.printf("%8d %16.0f %16.0f %8.2f%n", threads, synchronizedRate, casRate, casRate / synchronizedRate);
+        }
+
+        System.out.println("Deposits through the ledger");
+        System.out.printf("%-8s %8s %16s %16s%n", "account", "threads", "deposits/s", "per thread/s");
+        for (boolean hot : new boolean[]{true, false}) {
+            for (int threads : THREAD_COUNTS) {
+                runLedger(hot, threads, seconds);
+                double rate = runLedger(hot, threads, seconds);
+                System.out.printf("%-8s %8d %16.0f %16.0f%n", hot ? "hot" : "spread", threads, rate, rate / threads);
+            }
+        }
+    }
+
+    // Alternate deposits and withdrawals on a synchronized balance and return the updates per second
+    private static double runSynchronized(int threads, int seconds) throws Exception {
+        SynchronizedBalance balance = new SynchronizedBalance();
+        LongAdder updates = new LongAdder();
+        double rate = run(threads, seconds, updates, thread -> {
+            long count = 0;
+            while (running()) {
+                balance.deposit(2);
+                balance.withdraw(1);
+                count += 2;
+            }
+            updates.add(count);
+        });
+        // Every pair of updates leaves one unit behind
+        if (balance.get() != updates.sum() / 2) {
+            throw new IllegalStateException("Lost updates: balance " + balance.get() + ", updates " + updates.sum());
+        }
+        return rate;
+    }
+
+    // Alternate deposits and withdrawals on the compare-and-set balance of an account and return the updates per second
+    private static double runCas(int threads, int seconds) throws Exception {
+        Account account = newAccount(0);
+        LongAdder updates = new LongAdder();
+        double rate = run(threads, seconds, updates, thread -> {
+            long count = 0;
+            while (running()) {
+                account.deposit(2);
+                account.withdraw(1);
+                count += 2;
+            }
+            updates.add(count);
+        });
+        if (account.getBalance() != updates.sum() / 2) {
+            throw new IllegalStateException("Lost updates: balance " + account.getBalance() + ", updates " + updates.sum());
+        }
+        return rate;
+    }
+
+    // Deposit through the ledger and return the deposits per second
+    private static double runLedger(boolean hot, int threads, int seconds) throws Exception {
+        TransactionManager manager = new TransactionManager(new AccountLocks(), null, TransactionLog.inMemory(),
+                new ChangeTracker(TransactionLog.inMemory()), TransactionArchive.inMemory());
+        Account hotAccount = newAccount(0);
+        Account[] accounts = new Account[threads];
+        for (int t = 0; t < threads; t++) {
+            accounts[t] = hot ? hotAccount : newAccount(t + 1);
+        }
+        LongAdder deposits = new LongAdder();
+        double rate = run(threads, seconds, deposits, thread -> {
+            long count = 0;
+            while (running()) {
+                manager.recordTransaction(accounts[thread], TransactionType.DEPOSIT, 1);
+                count++;
+            }
+            deposits.add(count);
+        });
+        if (hot && hotAccount.getBalance() != deposits.sum()) {
+            throw new IllegalStateException("Lost deposits: balance " + hotAccount.getBalance() + ", deposits " + deposits.sum());
+        }
+        return rate;
+    }
+
+    // Whether the current run is still measuring
+    private static boolean running() {
+        return System.nanoTime() < deadline;
+    }
+
+    // Start the workers together, wait for them and return the operations counted per second
+    private static double run(int threads, int seconds, LongAdder operations, Worker worker) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Throwable[] failure = new Throwable[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    worker.run(thread);
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        long startNanos = System.nanoTime();
+        deadline = startNanos + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread thread : workers) {
+            thread.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new IllegalStateException("A worker failed", failure[0]);
+            }
+        }
+        return operations.sum() / elapsedSeconds;
+    }
+
+    private static Account newAccount(int index) {
+        return new Account("benchmark-" + index, String.valueOf(100_000 + index), "Benchmark", AccountType.SAVINGS,
+                "benchmark-owner", 0);
+    }
+
+    // Body of a worker thread, given its index
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    // Baseline balance, a plain long guarded by the monitor of its holder
+    private static final class SynchronizedBalance {
+        private long balance;
+
+        synchronized void deposit(long amount) {
+            balance += amount;
+        }
+
+        synchronized void withdraw(long amount) {
+            if (amount > balance) {
+                throw new IllegalStateException("Insufficient funds");
+            }
+            balance -= amount;
+        }
+
+        synchronized long get() {
+            return balance;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package edu.gu;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the rate of transaction constructions before and after the time-ordered identifiers, with 1, 4 and
+ * 16 threads:
+ * <ul>
+ *     <li>before: a random UUID string and a timestamp formatted by a new {@link SimpleDateFormat}, what every
+ *     transaction constructor did,</li>
+ *     <li>ids: a bare {@link TransactionIds#next(long)},</li>
+ *     <li>after: a whole {@link DepositTransaction}, identifier and epoch-millis timestamp included.</li>
+ * </ul>
+ * Run with {@code java -cp target/classes:target/test-classes:<jackson jars> edu.gu.TransactionConstructionBenchmark [seconds]}.
+ */
+public class TransactionConstructionBenchmark {
+    // Thread counts measured
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+
+    // Measured and warm-up time per run when none is given
+    private static final int DEFAULT_SECONDS = 2;
+
+    // End of the current run, in System.nanoTime units
+    private static volatile long deadline;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SECONDS;
+        System.out.printf("%d available processors, %d s per run%n", Runtime.getRuntime().availableProcessors(), seconds);
+        System.out.printf("%8s %14s %14s %14s%n", "threads", "before/s", "ids/s", "after/s");
+        for (int threads : THREAD_COUNTS) {
+            double[] rates = new double[3];
+            for (int variant = 0; variant < rates.length; variant++) {
+                // The first run of each variant warms the JIT and is not reported
+                run(variant, threads, seconds);
+                rates[variant] = run(variant, threads, seconds);
+            }
+            System.out.printf("%8d %14.0f %14.0f %14.0f%n", threads, rates[0], rates[1], rates[2]);
+        }
+    }
+
+    // Construct from the given number of threads and return the constructions per second of all of them
+    private static double run(int variant, int threads, int seconds) throws InterruptedException {
+        LongAdder constructed = new LongAdder();
+        // Folds every result, so the constructions cannot be optimized away
+        LongAdder checksum = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long count = 0;
+                long sum = 0;
+                while (System.nanoTime() < deadline) {
+                    sum += construct(variant);
+                    count++;
+                }
+                constructed.add(count);
+                checksum.add(sum);
+            });
+            workers[t].start();
+        }
+        long startNanos = System.nanoTime();
+        deadline = startNanos + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        if (checksum.sum() == 42) {
+            System.out.println();
+        }
+        return constructed.sum() / elapsedSeconds;
+    }
+
+    // Construct one transaction, or one identifier, and return a value depending on it
+    private static long construct(int variant) {
+        return switch (variant) {
+            case 0 -> new LegacyTransaction("benchmark-account", 100).hashCode();
+            case 1 -> TransactionIds.next(System.currentTimeMillis());
+            default -> new DepositTransaction("benchmark-account", 100).getIdValue();
+        };
+    }
+
+    // The fields a transaction constructor filled before the time-ordered identifiers
+    private static final class LegacyTransaction {
+        private final String id;
+        private final String timestamp;
+        private final String accountId;
+        private final long amount;
+
+        LegacyTransaction(String accountId, long amount) {
+            this.id = UUID.randomUUID().toString();
+            this.timestamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+            this.accountId = accountId;
+            this.amount = amount;
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() ^ timestamp.hashCode() ^ accountId.hashCode() ^ Long.hashCode(amount);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package edu.gu;
+
+import edu.gu.exceptions.InvalidCredentialsException;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers one million users through {@link AuthenticationManager#createUser(String, String, String, User.Role)}
+ * from concurrent sign-up threads, then logs every one of them in. Registration rates are reported per slice of
+ * 100K users, so a registration cost growing with the number of registered users would show as falling rates;
+ * with the username and email indexes they stay flat. Every registration must succeed and every login must find
+ * its user.
+ * <p>
+ * Run with {@code java -cp target/classes:target/test-classes:<jackson jars> edu.gu.UserRegistrationBenchmark [threads]}.
+ */
+public class UserRegistrationBenchmark {
+    private static final int USERS = 1_000_000;
+
+    // Users per reported registration slice
+    private static final int SLICE = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        AuthenticationManager manager = new AuthenticationManager(new ArrayList<>());
+
+        System.out.printf("Registering %d users from %d threads%n", USERS, threads);
+        System.out.printf("%12s %16s%n", "registered", "sign-ups/s");
+        long registrationStart = System.nanoTime();
+        for (int slice = 0; slice < USERS; slice += SLICE) {
+            int first = slice;
+            long start = System.nanoTime();
+            runConcurrently(threads, SLICE, i -> {
+                int user = first + i;
+                if (manager.createUser("user" + user, "password" + user, "user" + user + "@bankea.se",
+                        User.Role.CLIENT) == null) {
+                    throw new IllegalStateException("Registration of user" + user + " was rejected");
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            System.out.printf("%12d %16.0f%n", slice + SLICE, SLICE / seconds);
+        }
+        double registrationSeconds = (System.nanoTime() - registrationStart) / 1_000_000_000.0;
+        System.out.printf("Registered %d users in %.1f s (%.0f/s)%n", USERS, registrationSeconds, USERS / registrationSeconds);
+
+        long loginStart = System.nanoTime();
+        runConcurrently(threads, USERS, i -> {
+            // Spread the logins over the whole user base rather than in registration order
+            int user = (int) ((i * 7_919L) % USERS);
+            try {
+                manager.loginUser("user" + user, "password" + user);
+            } catch (InvalidCredentialsException e) {
+                throw new IllegalStateException("Login of user" + user + " failed", e);
+            }
+        });
+        double loginSeconds = (System.nanoTime() - loginStart) / 1_000_000_000.0;
+        System.out.printf("Logged in %d users in %.1f s (%.0f/s)%n", USERS, loginSeconds, USERS / loginSeconds);
+    }
+
+    // Run the task for every index below count, the indexes shared out among the threads
+    private static void runConcurrently(int threads, int count, IndexTask task) throws Exception {
+        AtomicInteger next = new AtomicInteger();
+        Throwable[] failure = new Throwable[1];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                        task.run(i);
+                    }
+                } catch (Throwable e) {
+                    synchronized (failure) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw new IllegalStateException("A worker failed", failure[0]);
+            }
+        }
+    }
+
+    // Work done for one index
+    private interface IndexTask {
+        void run(int index);
+    }
+}